@@ -0,0 +1,166 @@
+package com.example.amosh.inventoryapp;
+
+import android.app.Activity;
+import android.app.Application;
+import android.app.Instrumentation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the launch of {@link InventoryActivity}: the time to its first frame, and to the first
+ * page of units replacing the loading placeholder. The process is already running, so process
+ * start isn't included; use {@code adb shell am start -W} for that. Replaces the app's units with
+ * {@link #UNIT_COUNT} generated ones. Read the results from logcat under the StartupBenchmark tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+
+    private static final String LOG_TAG = StartupBenchmark.class.getSimpleName();
+
+    private static final int UNIT_COUNT = 5000;
+
+    /** Timed launches, the median is reported */
+    private static final int RUNS = 7;
+
+    /** Longest a launch may take before the benchmark fails, in milliseconds */
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private Instrumentation mInstrumentation;
+    private Context mContext;
+
+    /** Uptime of the first frame of the activity being launched, 0 until it is drawn */
+    private volatile long mFirstFrameMillis;
+
+    private final Application.ActivityLifecycleCallbacks mCallbacks =
+            new Application.ActivityLifecycleCallbacks() {
+                @Override
+                public void onActivityCreated(Activity activity, Bundle savedInstanceState) {}
+
+                @Override
+                public void onActivityStarted(Activity activity) {
+                    // The content view is set by now, and the first frame comes after onResume
+                    final View content = activity.getWindow().getDecorView();
+                    content.getViewTreeObserver().addOnPreDrawListener(
+                            new ViewTreeObserver.OnPreDrawListener() {
+                                @Override
+                                public boolean onPreDraw() {
+                                    content.getViewTreeObserver().removeOnPreDrawListener(this);
+                                    content.post(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            mFirstFrameMillis = SystemClock.uptimeMillis();
+                                        }
+                                    });
+                                    return true;
+                                }
+                            });
+                }
+
+                @Override
+                public void onActivityResumed(Activity activity) {}
+
+                @Override
+                public void onActivityPaused(Activity activity) {}
+
+                @Override
+                public void onActivityStopped(Activity activity) {}
+
+                @Override
+                public void onActivitySaveInstanceState(Activity activity, Bundle outState) {}
+
+                @Override
+                public void onActivityDestroyed(Activity activity) {}
+            };
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.getContentResolver().delete(UnitEntry.CONTENT_URI, null, null);
+        ContentValues[] units = new ContentValues[UNIT_COUNT];
+        for (int i = 0; i < UNIT_COUNT; i++) {
+            units[i] = new ContentValues();
+            units[i].put(UnitEntry.COLUMN_UNIT_NAME, "Unit " + i);
+            units[i].put(UnitEntry.COLUMN_UNIT_PRICE, 100 + i);
+            units[i].put(UnitEntry.COLUMN_UNIT_QUANTITY, i % 50);
+        }
+        mContext.getContentResolver().bulkInsert(UnitEntry.CONTENT_URI, units);
+        ((Application) mContext.getApplicationContext()).registerActivityLifecycleCallbacks(mCallbacks);
+    }
+
+    @After
+    public void tearDown() {
+        ((Application) mContext.getApplicationContext()).unregisterActivityLifecycleCallbacks(mCallbacks);
+        mContext.getContentResolver().delete(UnitEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void launchToFirstFrameAndFullList() throws Exception {
+        long[] firstFrame = new long[RUNS];
+        long[] fullList = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            mFirstFrameMillis = 0;
+            Intent intent = new Intent(Intent.ACTION_MAIN)
+                    .setClassName(mContext, InventoryActivity.class.getName())
+                    .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+            long start = SystemClock.uptimeMillis();
+            final Activity activity = mInstrumentation.startActivitySync(intent);
+            long listMillis = waitForList(activity);
+            assertTrue("No first frame", mFirstFrameMillis > 0);
+            firstFrame[run] = mFirstFrameMillis - start;
+            fullList[run] = listMillis - start;
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    activity.finish();
+                }
+            });
+            mInstrumentation.waitForIdleSync();
+        }
+        Arrays.sort(firstFrame);
+        Arrays.sort(fullList);
+        Log.i(LOG_TAG, "First frame " + firstFrame[RUNS / 2] + " ms, full list "
+                + fullList[RUNS / 2] + " ms (median of " + RUNS + ", " + UNIT_COUNT + " units)");
+    }
+
+    /**
+     * Wait until the activity hides its loading placeholder and return the uptime it did.
+     */
+    private long waitForList(Activity activity) throws InterruptedException {
+        final View loading = activity.findViewById(R.id.list_loading);
+        final boolean[] loaded = new boolean[1];
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+        while (SystemClock.uptimeMillis() < deadline) {
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    loaded[0] = loading.getVisibility() == View.GONE;
+                }
+            });
+            if (loaded[0]) {
+                return SystemClock.uptimeMillis();
+            }
+            Thread.sleep(2);
+        }
+        throw new AssertionError("The list didn't load in " + TIMEOUT_MILLIS + " ms");
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.amosh.inventoryapp;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+import com.example.amosh.inventoryapp.data.UnitDatabaseRule;
+import com.example.amosh.inventoryapp.data.UnitDbHelper;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that readers of the units database keep making progress while another thread holds a
+ * long write transaction.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UnitDbHelperConcurrencyTest {
+
+    /** Units committed before the long write starts */
+    private static final int COMMITTED_UNITS = 10;
+
+    /** Reads done while the write transaction is open */
+    private static final int READS = 50;
+
+    @Rule
+    public final UnitDatabaseRule mDatabase = new UnitDatabaseRule("concurrency_test.db");
+
+    private UnitDbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        mDbHelper = mDatabase.getDbHelper();
+        for (int i = 0; i < COMMITTED_UNITS; i++) {
+            mDatabase.insert(unit(i));
+        }
+    }
+
+    @Test
+    public void databaseUsesWriteAheadLog() {
+        String journalMode = DatabaseUtils.stringForQuery(mDbHelper.getReadableDatabase(),
+                "PRAGMA journal_mode", null);
+        assertEquals("wal", journalMode.toLowerCase());
+    }
+
+    @Test
+    public void readersProgressDuringLongWrite() throws InterruptedException {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch readsDone = new CountDownLatch(1);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteDatabase db = mDbHelper.getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    for (int i = 0; i < 1000; i++) {
+                        db.insert(UnitEntry.TABLE_NAME, null, unit(COMMITTED_UNITS + i));
+                    }
+                    writing.countDown();
+                    // Keep the write lock until the reader is done, or give up after a while
+                    readsDone.await(30, TimeUnit.SECONDS);
+                    db.setTransactionSuccessful();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        });
+        writer.start();
+        assertTrue(writing.await(30, TimeUnit.SECONDS));
+
+        // In rollback journal mode each of these would wait for the writer's 30 second timeout
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        long start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            assertEquals(COMMITTED_UNITS, DatabaseUtils.queryNumEntries(db, UnitEntry.TABLE_NAME));
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        readsDone.countDown();
+        writer.join();
+
+        assertTrue("Reads took " + elapsedMillis + " ms", elapsedMillis < 5000);
+        assertEquals(COMMITTED_UNITS + 1000, DatabaseUtils.queryNumEntries(db, UnitEntry.TABLE_NAME));
+    }
+
+    private static ContentValues unit(int i) {
+        return UnitDatabaseRule.unit("Unit " + i, 100 + i, i % 20);
+    }
+}
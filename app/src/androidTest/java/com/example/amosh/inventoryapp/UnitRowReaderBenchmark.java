@@ -0,0 +1,96 @@
+package com.example.amosh.inventoryapp;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+import com.example.amosh.inventoryapp.data.UnitRowReader;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares reading unit rows by looking up every column by name on every row and parsing the price
+ * from a String, as the list and editor used to, with {@link UnitRowReader}. Run it on a device and
+ * read the per-row cost from logcat under the UnitRowReaderBenchmark tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UnitRowReaderBenchmark {
+
+    private static final String LOG_TAG = UnitRowReaderBenchmark.class.getSimpleName();
+
+    private static final int ROWS = 10000;
+
+    /** Timed passes over the cursor, the median is reported */
+    private static final int RUNS = 9;
+
+    @Test
+    public void lookupByNameVersusRowReader() {
+        Cursor cursor = createCursor();
+        try {
+            // Warm up both paths before timing them
+            assertEquals(readByName(cursor), readWithRowReader(cursor), 0.001);
+
+            long[] byName = new long[RUNS];
+            long[] rowReader = new long[RUNS];
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                readByName(cursor);
+                byName[run] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                readWithRowReader(cursor);
+                rowReader[run] = System.nanoTime() - start;
+            }
+            Arrays.sort(byName);
+            Arrays.sort(rowReader);
+            Log.i(LOG_TAG, "Per row: by name " + byName[RUNS / 2] / ROWS + " ns, row reader "
+                    + rowReader[RUNS / 2] / ROWS + " ns");
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static Cursor createCursor() {
+        MatrixCursor cursor = new MatrixCursor(UnitEntry.PROJECTION, ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            cursor.addRow(new Object[]{(long) i + 1, "Unit " + i, i % 100, (i % 1000) * 10L,
+                    "content://images/" + i, null});
+        }
+        return cursor;
+    }
+
+    /** Reads every row the old way: column lookups by name and the price parsed from a String */
+    private static double readByName(Cursor cursor) {
+        double total = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            long id = cursor.getLong(cursor.getColumnIndex(UnitEntry._ID));
+            String name = cursor.getString(cursor.getColumnIndex(UnitEntry.COLUMN_UNIT_NAME));
+            int quantity = cursor.getInt(cursor.getColumnIndex(UnitEntry.COLUMN_UNIT_QUANTITY));
+            String price = cursor.getString(cursor.getColumnIndex(UnitEntry.COLUMN_UNIT_PRICE));
+            String image = cursor.getString(cursor.getColumnIndex(UnitEntry.COLUMN_UNIT_IMAGE_URI));
+            total += id + name.length() + quantity + Long.parseLong(price)
+                    + (image == null ? 0 : 1);
+        }
+        return total;
+    }
+
+    private static double readWithRowReader(Cursor cursor) {
+        double total = 0;
+        UnitRowReader row = new UnitRowReader(cursor);
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            String image = row.getImageUri();
+            total += row.getId() + row.getName().length() + row.getQuantity() + row.getPriceCents()
+                    + (image == null ? 0 : 1);
+        }
+        return total;
+    }
+}
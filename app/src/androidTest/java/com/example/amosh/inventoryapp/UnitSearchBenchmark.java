@@ -0,0 +1,137 @@
+package com.example.amosh.inventoryapp;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+import com.example.amosh.inventoryapp.data.UnitDbHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares a LIKE '%text%' scan of unit names with the full-text index at growing table sizes.
+ * Run it on a device and read the results from logcat under the UnitSearchBenchmark tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UnitSearchBenchmark {
+
+    private static final String LOG_TAG = UnitSearchBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "search_benchmark.db";
+
+    private static final String[] WORDS = {"green", "black", "jasmine", "earl", "grey", "mint",
+            "chamomile", "oolong", "rooibos", "chai", "organic", "loose", "leaf", "bag", "tin"};
+
+    /** Timed runs per query, the median is reported */
+    private static final int RUNS = 7;
+
+    private Context mContext;
+    private UnitDbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDbHelper = new UnitDbHelper(mContext, DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void likeVersusFullTextSearch() {
+        int rows = 0;
+        for (int target : new int[]{10000, 100000, 1000000}) {
+            insertUnits(rows, target);
+            rows = target;
+
+            SQLiteDatabase db = mDbHelper.getReadableDatabase();
+            long likeNanos = median(db, "SELECT " + UnitEntry._ID + " FROM " + UnitEntry.TABLE_NAME
+                    + " WHERE " + UnitEntry.COLUMN_UNIT_NAME + " LIKE ?", "%jasm%");
+            long ftsNanos = median(db, "SELECT " + UnitEntry._ID + " FROM " + UnitEntry.TABLE_NAME
+                    + " WHERE " + UnitEntry._ID + " IN (SELECT docid FROM "
+                    + UnitEntry.SEARCH_TABLE_NAME + " WHERE " + UnitEntry.SEARCH_TABLE_NAME
+                    + " MATCH ?)", "jasm*");
+            Log.i(LOG_TAG, rows + " rows: LIKE " + likeNanos / 1000 + " us, FTS "
+                    + ftsNanos / 1000 + " us");
+
+            // Both queries have to find the same units for the comparison to mean anything
+            assertEquals(count(db, "SELECT COUNT(*) FROM " + UnitEntry.TABLE_NAME + " WHERE "
+                            + UnitEntry.COLUMN_UNIT_NAME + " LIKE '%jasm%'"),
+                    count(db, "SELECT COUNT(*) FROM " + UnitEntry.SEARCH_TABLE_NAME + " WHERE "
+                            + UnitEntry.SEARCH_TABLE_NAME + " MATCH 'jasm*'"));
+        }
+    }
+
+    /**
+     * Insert units with random three word names until the table holds {@code to} rows.
+     */
+    private void insertUnits(int from, int to) {
+        Random random = new Random(from);
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + UnitEntry.TABLE_NAME + " ("
+                + UnitEntry.COLUMN_UNIT_NAME + ", " + UnitEntry.COLUMN_UNIT_PRICE + ", "
+                + UnitEntry.COLUMN_UNIT_QUANTITY + ") VALUES (?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (int i = from; i < to; i++) {
+                insert.bindString(1, WORDS[random.nextInt(WORDS.length)] + " "
+                        + WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]);
+                insert.bindLong(2, random.nextInt(10000));
+                insert.bindLong(3, random.nextInt(100));
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    /**
+     * Run the query {@link #RUNS} times, reading every row, and return the median time.
+     */
+    private static long median(SQLiteDatabase db, String sql, String arg) {
+        long[] nanos = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            Cursor cursor = db.rawQuery(sql, new String[]{arg});
+            try {
+                while (cursor.moveToNext()) {
+                    cursor.getLong(0);
+                }
+            } finally {
+                cursor.close();
+            }
+            nanos[run] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos[RUNS / 2];
+    }
+
+    private static long count(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.amosh.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitMovementEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the changes to many units at once, including selections larger than one statement can
+ * bind.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UnitBulkOperationsTest {
+
+    /** More units than {@link UnitDbHelper} binds to one statement */
+    private static final int UNIT_COUNT = 2500;
+
+    @Rule
+    public final UnitDatabaseRule mDatabase = new UnitDatabaseRule("bulk_test.db");
+
+    private UnitDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+    private long[] mIds;
+
+    @Before
+    public void setUp() {
+        mDbHelper = mDatabase.getDbHelper();
+        mDb = mDatabase.getDatabase();
+        mIds = new long[UNIT_COUNT];
+        mDb.beginTransaction();
+        try {
+            for (int i = 0; i < UNIT_COUNT; i++) {
+                ContentValues values = UnitDatabaseRule.unit("Unit " + i, 999, 1);
+                values.put(UnitEntry.COLUMN_UNIT_THUMBNAIL_PATH, i % 2 == 0 ? "/thumb" + i : null);
+                mIds[i] = mDatabase.insert(values);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    @Test
+    public void repriceRoundsToWholeCents() {
+        assertEquals(UNIT_COUNT, mDbHelper.repriceUnits(mIds, 1000));
+        // 9.99 + 10% is 10.989
+        assertEquals(UNIT_COUNT, count(UnitEntry.COLUMN_UNIT_PRICE + " = 1099"));
+
+        // A repeated id is only repriced once, 10.99 - 2.5% is 10.71525
+        assertEquals(1, mDbHelper.repriceUnits(new long[]{mIds[0], mIds[0]}, -250));
+        assertEquals(1072, DatabaseUtils.longForQuery(mDb, "SELECT " + UnitEntry.COLUMN_UNIT_PRICE
+                + " FROM " + UnitEntry.TABLE_NAME + " WHERE _id = " + mIds[0], null));
+    }
+
+    @Test
+    public void restockRecordsOneMovementPerUnit() {
+        assertEquals(UNIT_COUNT, mDbHelper.restockUnits(mIds, 4));
+        assertEquals(UNIT_COUNT, count(UnitEntry.COLUMN_UNIT_QUANTITY + " = 5"));
+        assertEquals(UNIT_COUNT, DatabaseUtils.longForQuery(mDb, "SELECT COUNT(*) FROM "
+                + UnitMovementEntry.TABLE_NAME + " WHERE " + UnitMovementEntry.COLUMN_KIND + " = "
+                + UnitMovementEntry.KIND_RESTOCK + " AND " + UnitMovementEntry.COLUMN_DELTA + " = 4",
+                null));
+    }
+
+    @Test
+    public void deleteReturnsThumbnails() {
+        List<String> thumbnailPaths = new ArrayList<>();
+        assertEquals(UNIT_COUNT - 1, mDbHelper.deleteUnits(
+                Arrays.copyOf(mIds, UNIT_COUNT - 1), thumbnailPaths));
+        assertEquals(UNIT_COUNT / 2, thumbnailPaths.size());
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDb, UnitEntry.TABLE_NAME));
+    }
+
+    private long count(String selection) {
+        return DatabaseUtils.queryNumEntries(mDb, UnitEntry.TABLE_NAME, selection);
+    }
+}
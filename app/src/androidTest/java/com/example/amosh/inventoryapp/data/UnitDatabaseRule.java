@@ -0,0 +1,74 @@
+package com.example.amosh.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+
+import org.junit.rules.ExternalResource;
+
+/**
+ * Gives each test a fresh units database under the given name, opened through
+ * {@link UnitDbHelper}, and deletes it again after the test.
+ */
+public class UnitDatabaseRule extends ExternalResource {
+
+    private final String mDatabaseName;
+
+    private Context mContext;
+    private UnitDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+
+    public UnitDatabaseRule(String databaseName) {
+        mDatabaseName = databaseName;
+    }
+
+    @Override
+    protected void before() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(mDatabaseName);
+        mDbHelper = new UnitDbHelper(mContext, mDatabaseName);
+        mDb = mDbHelper.getWritableDatabase();
+    }
+
+    @Override
+    protected void after() {
+        mDbHelper.close();
+        mContext.deleteDatabase(mDatabaseName);
+    }
+
+    public UnitDbHelper getDbHelper() {
+        return mDbHelper;
+    }
+
+    public SQLiteDatabase getDatabase() {
+        return mDb;
+    }
+
+    /**
+     * Return the values of a unit with the given name, price in cents and quantity.
+     */
+    public static ContentValues unit(String name, int price, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(UnitEntry.COLUMN_UNIT_NAME, name);
+        values.put(UnitEntry.COLUMN_UNIT_PRICE, price);
+        values.put(UnitEntry.COLUMN_UNIT_QUANTITY, quantity);
+        return values;
+    }
+
+    /**
+     * Insert a unit with the given name, price in cents and quantity, and return its _id.
+     */
+    public long insertUnit(String name, int price, int quantity) {
+        return insert(unit(name, price, quantity));
+    }
+
+    /**
+     * Insert a unit with the given values, and return its _id.
+     */
+    public long insert(ContentValues values) {
+        return mDb.insertOrThrow(UnitEntry.TABLE_NAME, null, values);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.amosh.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitMovementDayEntry;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitMovementEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the stock movement ledger adds up to the quantities of the units, before and after
+ * it is compacted.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UnitLedgerTest {
+
+    @Rule
+    public final UnitDatabaseRule mDatabase = new UnitDatabaseRule("ledger_test.db");
+
+    private UnitDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+    private long mUnitId;
+
+    @Before
+    public void setUp() {
+        mDbHelper = mDatabase.getDbHelper();
+        mDb = mDatabase.getDatabase();
+        mUnitId = mDatabase.insertUnit("Cheese", 700, 10);
+        UnitDbHelper.recordInsertedStock(mDb, mUnitId, 10);
+    }
+
+    @Test
+    public void salesAndEditsAddUpToQuantity() {
+        mDbHelper.buyOne(mUnitId, 3);
+        // Selling more than is left only records what was sold
+        setQuantity(2);
+        mDbHelper.buyOne(mUnitId, 5);
+        setQuantity(20);
+
+        assertEquals(20, ledgerTotal());
+        assertEquals(5, soldToday());
+    }
+
+    @Test
+    public void compactionKeepsTotalsAndSales() {
+        mDbHelper.buyOne(mUnitId, 4);
+        // Move the movements back in time, so they are old enough to be rolled up
+        mDb.execSQL("UPDATE " + UnitMovementEntry.TABLE_NAME + " SET " + UnitMovementEntry.COLUMN_TIME
+                + " = " + UnitMovementEntry.COLUMN_TIME + " - " + 200 * UnitMovementDayEntry.MILLIS_PER_DAY);
+        mDbHelper.buyOne(mUnitId, 1);
+
+        assertEquals(2, mDbHelper.compactMovements(90));
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDb, UnitMovementEntry.TABLE_NAME));
+        assertEquals(5, ledgerTotal());
+        assertEquals(4, soldOn(today() - 200));
+        assertEquals(1, soldToday());
+    }
+
+    private void setQuantity(int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(UnitEntry.COLUMN_UNIT_QUANTITY, quantity);
+        String selection = UnitEntry._ID + "=?";
+        String[] selectionArgs = {String.valueOf(mUnitId)};
+        UnitDbHelper.recordQuantityUpdate(mDb, quantity, selection, selectionArgs);
+        mDb.update(UnitEntry.TABLE_NAME, values, selection, selectionArgs);
+    }
+
+    /** Sum of every movement of the unit, rolled up or not */
+    private long ledgerTotal() {
+        return DatabaseUtils.longForQuery(mDb, "SELECT IFNULL(SUM(" + UnitMovementEntry.COLUMN_DELTA
+                + "), 0) + (SELECT IFNULL(SUM(" + UnitMovementDayEntry.COLUMN_DELTA + "), 0) FROM "
+                + UnitMovementDayEntry.TABLE_NAME + ") FROM " + UnitMovementEntry.TABLE_NAME, null);
+    }
+
+    private static long today() {
+        return System.currentTimeMillis() / UnitMovementDayEntry.MILLIS_PER_DAY;
+    }
+
+    private long soldToday() {
+        return soldOn(today());
+    }
+
+    private long soldOn(long day) {
+        Cursor cursor = mDbHelper.readSales(mUnitId, day, day);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(
+                    cursor.getColumnIndexOrThrow(UnitContract.UnitSales.COLUMN_UNITS_SOLD)) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+}
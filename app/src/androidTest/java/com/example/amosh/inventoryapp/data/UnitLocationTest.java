@@ -0,0 +1,143 @@
+package com.example.amosh.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.amosh.inventoryapp.data.UnitContract.LocationEntry;
+import com.example.amosh.inventoryapp.data.UnitContract.LocationTotals;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the stock per location: transfers, changes to a unit's total, deleting a location and
+ * the totals per location.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UnitLocationTest {
+
+    @Rule
+    public final UnitDatabaseRule mDatabase = new UnitDatabaseRule("location_test.db");
+
+    private UnitDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+    private long mBackRoomId;
+
+    @Before
+    public void setUp() {
+        mDbHelper = mDatabase.getDbHelper();
+        mDb = mDatabase.getDatabase();
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_NAME, "Back room");
+        mBackRoomId = mDb.insertOrThrow(LocationEntry.TABLE_NAME, null, values);
+    }
+
+    @Test
+    public void transferMovesStockOnlyWhenThereIsEnough() {
+        long id = insertUnit(10);
+
+        assertEquals(1, mDbHelper.transferStock(id, LocationEntry.MAIN_LOCATION_ID, mBackRoomId, 4));
+        assertEquals(6, stock(id, LocationEntry.MAIN_LOCATION_ID));
+        assertEquals(4, stock(id, mBackRoomId));
+
+        assertEquals(0, mDbHelper.transferStock(id, mBackRoomId, LocationEntry.MAIN_LOCATION_ID, 5));
+        assertEquals(4, stock(id, mBackRoomId));
+        assertEquals(10, quantity(id));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void transferToAMissingLocationIsRejected() {
+        long id = insertUnit(10);
+        mDbHelper.transferStock(id, LocationEntry.MAIN_LOCATION_ID, mBackRoomId + 1, 1);
+    }
+
+    @Test
+    public void totalChangesAndDeletesFollowTheUnit() {
+        long id = insertUnit(10);
+        mDbHelper.transferStock(id, LocationEntry.MAIN_LOCATION_ID, mBackRoomId, 4);
+
+        assertEquals(1, mDbHelper.buyOne(id, 2));
+        assertEquals(4, stock(id, LocationEntry.MAIN_LOCATION_ID));
+        assertEquals(4, stock(id, mBackRoomId));
+
+        mDb.delete(UnitEntry.TABLE_NAME, UnitEntry._ID + " = " + id, null);
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDb, LocationEntry.STOCK_TABLE_NAME));
+    }
+
+    @Test
+    public void saleAfterAFullTransferIsTakenFromTheOtherLocations() {
+        long id = insertUnit(10);
+        mDbHelper.transferStock(id, LocationEntry.MAIN_LOCATION_ID, mBackRoomId, 10);
+
+        assertEquals(1, mDbHelper.buyOne(id, 3));
+        assertEquals(0, stock(id, LocationEntry.MAIN_LOCATION_ID));
+        assertEquals(7, stock(id, mBackRoomId));
+
+        // An edit down to zero empties every location
+        ContentValues values = new ContentValues();
+        values.put(UnitEntry.COLUMN_UNIT_QUANTITY, 0);
+        mDb.update(UnitEntry.TABLE_NAME, values, UnitEntry._ID + " = " + id, null);
+        assertEquals(0, stock(id, mBackRoomId));
+        assertEquals(0, DatabaseUtils.longForQuery(mDb, "SELECT MIN(quantity) FROM "
+                + LocationEntry.STOCK_TABLE_NAME, null));
+    }
+
+    @Test
+    public void deletingALocationReturnsItsStockToMain() {
+        long id = insertUnit(10);
+        mDbHelper.transferStock(id, LocationEntry.MAIN_LOCATION_ID, mBackRoomId, 4);
+
+        assertEquals(1, mDbHelper.deleteLocation(mBackRoomId));
+        assertEquals(10, stock(id, LocationEntry.MAIN_LOCATION_ID));
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDb, LocationEntry.STOCK_TABLE_NAME));
+    }
+
+    @Test
+    public void totalsAddUpToTheSummary() {
+        long first = insertUnit(10);
+        insertUnit(3);
+        mDbHelper.transferStock(first, LocationEntry.MAIN_LOCATION_ID, mBackRoomId, 10);
+
+        Cursor totals = mDbHelper.readLocationTotals();
+        try {
+            assertEquals(2, totals.getCount());
+            assertTrue(totals.moveToFirst());
+            assertEquals(LocationEntry.MAIN_LOCATION_ID, totals.getLong(0));
+            // The first unit has a row at the main location but no stock there
+            assertEquals(1, totals.getLong(totals.getColumnIndexOrThrow(LocationTotals.COLUMN_UNIT_COUNT)));
+            assertEquals(3, totals.getLong(totals.getColumnIndexOrThrow(LocationTotals.COLUMN_TOTAL_QUANTITY)));
+            assertEquals(300, totals.getLong(totals.getColumnIndexOrThrow(LocationTotals.COLUMN_TOTAL_VALUE)));
+            assertTrue(totals.moveToNext());
+            assertEquals(10, totals.getLong(totals.getColumnIndexOrThrow(LocationTotals.COLUMN_TOTAL_QUANTITY)));
+            assertFalse(totals.moveToNext());
+        } finally {
+            totals.close();
+        }
+    }
+
+    private long insertUnit(int quantity) {
+        return mDatabase.insertUnit("Unit " + quantity, 100, quantity);
+    }
+
+    private long stock(long unitId, long locationId) {
+        return DatabaseUtils.longForQuery(mDb, "SELECT quantity FROM "
+                + LocationEntry.STOCK_TABLE_NAME + " WHERE unit_id = " + unitId
+                + " AND location_id = " + locationId, null);
+    }
+
+    private long quantity(long id) {
+        return DatabaseUtils.longForQuery(mDb, "SELECT "
+                + UnitEntry.COLUMN_UNIT_QUANTITY + " FROM " + UnitEntry.TABLE_NAME
+                + " WHERE _id = " + id, null);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.amosh.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks selling by SKU, including with an _id remembered from before the SKU moved.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UnitSkuTest {
+
+    @Rule
+    public final UnitDatabaseRule mDatabase = new UnitDatabaseRule("sku_test.db");
+
+    private UnitDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mDbHelper = mDatabase.getDbHelper();
+        mDb = mDatabase.getDatabase();
+    }
+
+    @Test
+    public void sellsTheUnitWithTheSku() {
+        long id = insertUnit("4006381333931", 2);
+
+        UnitDbHelper.SkuSale sale = mDbHelper.sellBySku("4006381333931", 1, -1);
+        assertEquals(id, sale.unitId);
+        assertEquals(1, sale.rowsUpdated);
+        mDbHelper.sellBySku("4006381333931", 1, id);
+
+        sale = mDbHelper.sellBySku("4006381333931", 1, id);
+        assertEquals(id, sale.unitId);
+        assertEquals(0, sale.rowsUpdated);
+        assertEquals(-1, mDbHelper.sellBySku("unknown", 1, -1).unitId);
+    }
+
+    @Test
+    public void staleIdFallsBackToTheIndex() {
+        long oldId = insertUnit("A-1", 5);
+        setSku(oldId, null);
+        long newId = insertUnit("A-1", 5);
+
+        UnitDbHelper.SkuSale sale = mDbHelper.sellBySku("A-1", 1, oldId);
+        assertEquals(newId, sale.unitId);
+        assertEquals(1, sale.rowsUpdated);
+        assertEquals(5, quantity(oldId));
+        assertEquals(4, quantity(newId));
+    }
+
+    @Test(expected = SQLiteConstraintException.class)
+    public void skusAreUnique() {
+        insertUnit("B-2", 1);
+        ContentValues values = UnitDatabaseRule.unit("Copy", 100, 0);
+        values.put(UnitEntry.COLUMN_UNIT_SKU, "B-2");
+        mDatabase.insert(values);
+    }
+
+    private long insertUnit(String sku, int quantity) {
+        ContentValues values = UnitDatabaseRule.unit("Unit " + sku, 100, quantity);
+        values.put(UnitEntry.COLUMN_UNIT_SKU, sku);
+        return mDatabase.insert(values);
+    }
+
+    private void setSku(long id, String sku) {
+        ContentValues values = new ContentValues();
+        values.put(UnitEntry.COLUMN_UNIT_SKU, sku);
+        mDb.update(UnitEntry.TABLE_NAME, values, UnitEntry._ID + "=" + id, null);
+    }
+
+    private long quantity(long id) {
+        return DatabaseUtils.longForQuery(mDb, "SELECT "
+                + UnitEntry.COLUMN_UNIT_QUANTITY + " FROM " + UnitEntry.TABLE_NAME
+                + " WHERE _id = " + id, null);
+    }
+}
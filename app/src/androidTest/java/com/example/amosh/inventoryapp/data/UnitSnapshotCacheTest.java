@@ -0,0 +1,112 @@
+package com.example.amosh.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that {@link UnitSnapshotCache} answers like SQLite as units change.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UnitSnapshotCacheTest {
+
+    @Rule
+    public final UnitDatabaseRule mDatabase = new UnitDatabaseRule("snapshot_cache_test.db");
+
+    private SQLiteDatabase mDb;
+    private UnitSnapshotCache mCache;
+
+    @Before
+    public void setUp() {
+        mDb = mDatabase.getDatabase();
+        for (int i = 1; i <= 10; i++) {
+            insert("Unit " + i, i);
+        }
+        mCache = new UnitSnapshotCache(1024 * 1024);
+    }
+
+    @Test
+    public void pagesFollowInsertsUpdatesAndDeletes() {
+        assertIds(mCache.queryUnits(mDb, UnitEntry.PROJECTION, 3, 0, 3), 4, 5, 6);
+
+        long id = insert("Unit 11", 11);
+        mCache.refreshUnit(mDb, id);
+        ContentValues values = new ContentValues();
+        values.put(UnitEntry.COLUMN_UNIT_QUANTITY, 99);
+        mDb.update(UnitEntry.TABLE_NAME, values, UnitEntry._ID + "=5", null);
+        mCache.refreshUnit(mDb, 5);
+        mDb.delete(UnitEntry.TABLE_NAME, UnitEntry._ID + "=4", null);
+        mCache.removeUnit(4);
+
+        Cursor cursor = mCache.queryUnits(mDb, UnitEntry.PROJECTION, 3, 0, -1);
+        assertIds(cursor, 5, 6, 7, 8, 9, 10, 11);
+        cursor.moveToFirst();
+        assertEquals(99, new UnitRowReader(cursor).getQuantity());
+        assertEquals(2, mCache.getHitCount());
+        assertEquals(0, mCache.getMissCount());
+    }
+
+    @Test
+    public void queryUnitReturnsOneOrNoRow() {
+        Cursor cursor = mCache.queryUnit(mDb, new String[]{UnitEntry.COLUMN_UNIT_NAME}, 7);
+        assertEquals(1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("Unit 7", cursor.getString(0));
+        assertEquals(0, mCache.queryUnit(mDb, UnitEntry.PROJECTION, 42).getCount());
+    }
+
+    @Test
+    public void fallsBackToSqliteAboveMemoryCap() {
+        UnitSnapshotCache small = new UnitSnapshotCache(100);
+        assertNull(small.queryUnits(mDb, UnitEntry.PROJECTION, Long.MIN_VALUE, 0, -1));
+        assertEquals(0, small.getHitCount());
+        assertEquals(1, small.getMissCount());
+    }
+
+    @Test
+    public void tooLargeTableIsOnlyReloadedAfterRemovals() {
+        // Rows of about 84 bytes, so the sixth one goes over the cap
+        UnitSnapshotCache small = new UnitSnapshotCache(500);
+        assertNull(small.queryUnits(mDb, UnitEntry.PROJECTION, Long.MIN_VALUE, 0, -1));
+
+        // Small enough now, but a bulk insert only invalidates, and the table isn't loaded again
+        mDb.delete(UnitEntry.TABLE_NAME, UnitEntry._ID + " > 4", null);
+        small.invalidate();
+        assertNull(small.queryUnits(mDb, UnitEntry.PROJECTION, Long.MIN_VALUE, 0, -1));
+
+        small.recordRowsRemoved();
+        small.invalidate();
+        assertIds(small.queryUnits(mDb, UnitEntry.PROJECTION, Long.MIN_VALUE, 0, -1), 1, 2, 3, 4);
+    }
+
+    @Test
+    public void unknownColumnsAreMisses() {
+        assertNull(mCache.queryUnits(mDb, null, Long.MIN_VALUE, 0, -1));
+        assertNull(mCache.queryUnit(mDb, new String[]{"COUNT(*)"}, 1));
+        assertEquals(2, mCache.getMissCount());
+    }
+
+    private long insert(String name, int quantity) {
+        return mDatabase.insertUnit(name, 100, quantity);
+    }
+
+    private static void assertIds(Cursor cursor, long... ids) {
+        assertEquals(ids.length, cursor.getCount());
+        UnitRowReader row = new UnitRowReader(cursor);
+        for (long id : ids) {
+            cursor.moveToNext();
+            assertEquals(id, row.getId());
+        }
+    }
+}
@@ -25,9 +25,10 @@ import android.widget.ImageView;
 import android.widget.Toast;
 
 import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
-import com.example.amosh.inventoryapp.data.UnitDbHelper;
+import com.example.amosh.inventoryapp.data.UnitPrice;
+import com.example.amosh.inventoryapp.data.UnitRowReader;
 
-import java.net.URI;
+import java.util.Arrays;
 
 public class EditorActivity extends AppCompatActivity implements
         LoaderManager.LoaderCallbacks<Cursor> {
@@ -39,6 +40,15 @@ public class EditorActivity extends AppCompatActivity implements
 
     private static final int PICK_IMAGE_REQUEST = 0;
 
+    /** Columns the editor shows: every unit column plus the reorder level and the SKU */
+    private static final String[] EDITOR_PROJECTION;
+
+    static {
+        EDITOR_PROJECTION = Arrays.copyOf(UnitEntry.PROJECTION, UnitEntry.PROJECTION.length + 2);
+        EDITOR_PROJECTION[UnitEntry.PROJECTION.length] = UnitEntry.COLUMN_UNIT_REORDER_LEVEL;
+        EDITOR_PROJECTION[UnitEntry.PROJECTION.length + 1] = UnitEntry.COLUMN_UNIT_SKU;
+    }
+
 
     /**
      * Content URI for the existing unit (null if it's a new unit)
@@ -60,6 +70,16 @@ public class EditorActivity extends AppCompatActivity implements
      */
     private EditText mPriceEditText;
 
+    /**
+     * EditText field to enter the quantity at which the unit needs reordering
+     */
+    private EditText mReorderLevelEditText;
+
+    /**
+     * EditText field to enter or scan the unit's SKU
+     */
+    private EditText mSkuEditText;
+
     private final static int PICK_IMAGE = 100;
     Uri imageUri;
     /**
@@ -68,7 +88,16 @@ public class EditorActivity extends AppCompatActivity implements
     private Button mAddImageButton;
     private String mImageUriString;
 
+    /** Path of the current unit's local thumbnail, or null */
+    private String mThumbnailPath;
+
     private ImageView mAddedImageView;
+
+    /** Decodes the unit image off the UI thread */
+    private UnitImageLoader mImageLoader;
+
+    /** Size in pixels that the unit image is decoded to */
+    private int mImageSize;
     /**
      * Boolean flag that keeps track of whether the unit has been edited (true) or not (false)
      */
@@ -97,9 +126,6 @@ public class EditorActivity extends AppCompatActivity implements
         Intent intent = getIntent();
         mCurrentUnitUri = intent.getData();
 
-        UnitDbHelper dbHelper = new UnitDbHelper(this);
-
-
         // If the Intent DOES NOT contain a unit content URI, then we know that we are
         // creating a new unit.
         if (mCurrentUnitUri == null) {
@@ -122,8 +148,12 @@ public class EditorActivity extends AppCompatActivity implements
         mNameEditText = findViewById(R.id.edit_supply_name);
         mQuantityEditText = findViewById(R.id.edit_supply_quntity);
         mPriceEditText = findViewById(R.id.edit_supply_price);
+        mReorderLevelEditText = findViewById(R.id.edit_supply_reorder_level);
+        mSkuEditText = findViewById(R.id.edit_supply_sku);
         mAddImageButton = findViewById(R.id.add_image);
         mAddedImageView = findViewById(R.id.added_image);
+        mImageLoader = UnitImageLoader.getInstance(this);
+        mImageSize = getResources().getDimensionPixelSize(R.dimen.editor_image_size);
         mAddImageButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
@@ -138,6 +168,8 @@ public class EditorActivity extends AppCompatActivity implements
         mNameEditText.setOnTouchListener(mTouchListener);
         mQuantityEditText.setOnTouchListener(mTouchListener);
         mPriceEditText.setOnTouchListener(mTouchListener);
+        mReorderLevelEditText.setOnTouchListener(mTouchListener);
+        mSkuEditText.setOnTouchListener(mTouchListener);
         mAddedImageView.setOnTouchListener(mTouchListener);
 
     }
@@ -161,23 +193,36 @@ public class EditorActivity extends AppCompatActivity implements
 
             if (resultData != null) {
                 imageUri = resultData.getData();
-                mAddedImageView.setImageURI(imageUri);
-                mAddedImageView.invalidate();
                 mImageUriString = imageUri.toString();
+                // Keep read access to the picked document, so the thumbnail can be made later
+                if (Build.VERSION.SDK_INT >= 19) {
+                    try {
+                        getContentResolver().takePersistableUriPermission(imageUri,
+                                Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                    } catch (SecurityException e) {
+                        // The picker didn't grant a persistable permission, the thumbnail is made
+                        // right after saving while the temporary grant still holds
+                    }
+                }
+                mImageLoader.load(mImageUriString, mAddedImageView, mImageSize, mImageSize);
             }
 
         }
     }
 
     /**
-     * Get user input from editor and save new unit into database.
+     * Get user input from editor and queue it to be saved to the database.
+     *
+     * @return false if the input was rejected and the editor should stay open
      */
-    private void saveUnit() {
+    private boolean saveUnit() {
         // Read from input fields
         // Use trim to eliminate leading or trailing white space
         String nameString = mNameEditText.getText().toString().trim();
         String quantityString = mQuantityEditText.getText().toString().trim();
         String priceString = mPriceEditText.getText().toString().trim();
+        String reorderLevelString = mReorderLevelEditText.getText().toString().trim();
+        String skuString = mSkuEditText.getText().toString().trim();
         String imageUriString = mImageUriString;
 
 
@@ -188,7 +233,7 @@ public class EditorActivity extends AppCompatActivity implements
                 TextUtils.isEmpty(priceString) && TextUtils.isEmpty(imageUriString)) {
             // Since no fields were modified, we can return early without creating a new unit.
             // No need to create ContentValues and no need to do any ContentProvider operations.
-            return;
+            return true;
         }
 
         // Create a ContentValues object where column names are the keys,
@@ -196,42 +241,34 @@ public class EditorActivity extends AppCompatActivity implements
         ContentValues values = new ContentValues();
         values.put(UnitEntry.COLUMN_UNIT_NAME, nameString);
         values.put(UnitEntry.COLUMN_UNIT_QUANTITY, quantityString);
-        values.put(UnitEntry.COLUMN_UNIT_PRICE, priceString);
+        if (!TextUtils.isEmpty(priceString)) {
+            values.put(UnitEntry.COLUMN_UNIT_PRICE, UnitPrice.parseCents(priceString));
+        }
+        // Without a reorder level new units get the default one and existing ones keep theirs
+        if (!TextUtils.isEmpty(reorderLevelString)) {
+            values.put(UnitEntry.COLUMN_UNIT_REORDER_LEVEL, reorderLevelString);
+        }
+        // An empty SKU field takes the SKU away from an existing unit
+        if (!TextUtils.isEmpty(skuString)) {
+            values.put(UnitEntry.COLUMN_UNIT_SKU, skuString);
+        } else if (mCurrentUnitUri != null) {
+            values.putNull(UnitEntry.COLUMN_UNIT_SKU);
+        }
         values.put(UnitEntry.COLUMN_UNIT_IMAGE_URI, imageUriString);
-        /// Determine if this is a new or existing unit by checking if mCurrentUnitUri is null or not
-        if (mCurrentUnitUri == null) {
-            // This is a NEW unit, so insert a new unit into the provider,
-            // returning the content URI for the new unit.
-            Uri newUri = getContentResolver().insert(UnitEntry.CONTENT_URI, values);
-
-            // Show a toast message depending on whether or not the insertion was successful.
-            if (newUri == null) {
-                // If the new content URI is null, then there was an error with insertion.
-                Toast.makeText(this, getString(R.string.editor_insert_unit_failed),
-                        Toast.LENGTH_SHORT).show();
+        // Write in the background, so the editor closes at once. The list shows the unit as
+        // pending until the write commits, and offers a retry if it fails.
+        UnitWriteQueue writeQueue = UnitWriteQueue.getInstance(this);
+        try {
+            if (mCurrentUnitUri == null) {
+                writeQueue.insert(values);
             } else {
-                // Otherwise, the insertion was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_insert_unit_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
-        } else {
-            // Otherwise this is an EXISTING unit, so update the unit with content URI: mCurrentUnitUri
-            // and pass in the new ContentValues. Pass in null for the selection and selection args
-            // because mCurrentUnitUri will already identify the correct row in the database that
-            // we want to modify.
-            int rowsAffected = getContentResolver().update(mCurrentUnitUri, values, null, null);
-
-            // Show a toast message depending on whether or not the update was successful.
-            if (rowsAffected == 0) {
-                // If no rows were affected, then there was an error with the update.
-                Toast.makeText(this, getString(R.string.editor_update_unit_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the update was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_update_unit_successful),
-                        Toast.LENGTH_SHORT).show();
+                writeQueue.update(mCurrentUnitUri, values, imageUri != null);
             }
+        } catch (IllegalArgumentException e) {
+            Toast.makeText(this, e.getMessage(), Toast.LENGTH_SHORT).show();
+            return false;
         }
+        return true;
     }
 
     @Override
@@ -269,12 +306,14 @@ public class EditorActivity extends AppCompatActivity implements
                 if (TextUtils.isEmpty(name) || TextUtils.isEmpty(quantity) || TextUtils.isEmpty(price)) {
                     Toast.makeText(this, R.string.editor_activity_toaste_plz_add_all, Toast.LENGTH_SHORT).show();
                     break;
+                } else if (!isValidPrice(price)) {
+                    Toast.makeText(this, R.string.editor_invalid_price, Toast.LENGTH_SHORT).show();
+                    break;
                 } else {
-                    // Save unit to database
-                    saveUnit();
-                    // Exit activity
-                    finish();
-
+                    // Queue the unit to be saved, and exit unless the values were rejected
+                    if (saveUnit()) {
+                        finish();
+                    }
                     return true;
                 }
             // Respond to a click on the "Delete" menu option
@@ -310,6 +349,18 @@ public class EditorActivity extends AppCompatActivity implements
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Return true if the given text is a price {@link UnitPrice} can store exactly.
+     */
+    private static boolean isValidPrice(String price) {
+        try {
+            UnitPrice.parseCents(price);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     /**
      * This method is called when the back button is pressed.
      */
@@ -338,19 +389,10 @@ public class EditorActivity extends AppCompatActivity implements
 
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        // Since the editor shows all unit attributes, define a projection that contains
-        // all columns from the unit table
-        String[] projection = {
-                UnitEntry._ID,
-                UnitEntry.COLUMN_UNIT_NAME,
-                UnitEntry.COLUMN_UNIT_QUANTITY,
-                UnitEntry.COLUMN_UNIT_PRICE,
-                UnitEntry.COLUMN_UNIT_IMAGE_URI};
-
         // This loader will execute the ContentProvider's query method on a background thread
         return new CursorLoader(this,   // Parent activity context
                 mCurrentUnitUri,         // Query the content URI for the current unit
-                projection,             // Columns to include in the resulting Cursor
+                EDITOR_PROJECTION,      // The editor shows all unit attributes
                 null,                   // No selection clause
                 null,                   // No selection arguments
                 null);                  // Default sort order
@@ -366,22 +408,23 @@ public class EditorActivity extends AppCompatActivity implements
         // Proceed with moving to the first row of the cursor and reading data from it
         // (This should be the only row in the cursor)
         if (cursor.moveToFirst()) {
-            // Find the columns of unit attributes that we're interested in
-            int nameColumnIndex = cursor.getColumnIndex(UnitEntry.COLUMN_UNIT_NAME);
-            int quantityColumnIndex = cursor.getColumnIndex(UnitEntry.COLUMN_UNIT_QUANTITY);
-            int priceColumnIndex = cursor.getColumnIndex(UnitEntry.COLUMN_UNIT_PRICE);
-
-            // Extract out the value from the Cursor for the given column index
-            String name = cursor.getString(nameColumnIndex);
-            int quantity = cursor.getInt(quantityColumnIndex);
-            Double price = cursor.getDouble(priceColumnIndex);
+            UnitRowReader row = new UnitRowReader(cursor);
 
             // Update the views on the screen with the values from the database
-            mNameEditText.setText(name);
-            mQuantityEditText.setText(Integer.toString(quantity));
-            mPriceEditText.setText(Double.toString(price));
-
-            mAddedImageView.setImageURI(Uri.parse(cursor.getString(cursor.getColumnIndex(UnitEntry.COLUMN_UNIT_IMAGE_URI))));
+            mNameEditText.setText(row.getName());
+            mQuantityEditText.setText(Integer.toString(row.getQuantity()));
+            mPriceEditText.setText(UnitPrice.format(row.getPriceCents()));
+            mReorderLevelEditText.setText(Integer.toString(cursor.getInt(
+                    cursor.getColumnIndexOrThrow(UnitEntry.COLUMN_UNIT_REORDER_LEVEL))));
+            mSkuEditText.setText(cursor.getString(
+                    cursor.getColumnIndexOrThrow(UnitEntry.COLUMN_UNIT_SKU)));
+
+            // Keep the stored image unless the user picks a new one
+            if (imageUri == null) {
+                mImageUriString = row.getImageUri();
+            }
+            mThumbnailPath = row.getThumbnailPath();
+            mImageLoader.load(mImageUriString, mAddedImageView, mImageSize, mImageSize);
 
         }
     }
@@ -392,7 +435,9 @@ public class EditorActivity extends AppCompatActivity implements
         mNameEditText.setText("");
         mQuantityEditText.setText("");
         mPriceEditText.setText("");
-        mAddedImageView.setImageURI(Uri.parse(""));
+        mReorderLevelEditText.setText("");
+        mSkuEditText.setText("");
+        mImageLoader.load(null, mAddedImageView, mImageSize, mImageSize);
     }
 
     /**
@@ -471,6 +516,7 @@ public class EditorActivity extends AppCompatActivity implements
                         Toast.LENGTH_SHORT).show();
             } else {
                 // Otherwise, the delete was successful and we can display a toast.
+                UnitThumbnailStore.getInstance(this).delete(mThumbnailPath);
                 Toast.makeText(this, getString(R.string.editor_delete_unit_successful),
                         Toast.LENGTH_SHORT).show();
             }
@@ -1,25 +1,47 @@
 package com.example.amosh.inventoryapp;
 
+import android.app.AlertDialog;
 import android.app.LoaderManager;
 import android.content.ContentUris;
 import android.content.ContentValues;
-import android.content.CursorLoader;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.StrictMode;
 import android.support.design.widget.FloatingActionButton;
+import android.support.design.widget.Snackbar;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.view.ActionMode;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.text.InputType;
+import android.text.format.Formatter;
 import android.util.Log;
+import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.view.ViewTreeObserver;
+import android.view.inputmethod.EditorInfo;
+import android.widget.EditText;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+import android.widget.Toast;
 
+import com.example.amosh.inventoryapp.data.UnitContract;
 import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
-import com.example.amosh.inventoryapp.data.UnitDbHelper;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 public class InventoryActivity extends AppCompatActivity implements
@@ -28,16 +50,222 @@ public class InventoryActivity extends AppCompatActivity implements
     /** Identifier for the unit data loader */
     private static final int UNIT_LOADER = 0;
 
-    /** Adapter for the ListView */
-    UnitCursorAdapter mCursorAdapter;
-    UnitDbHelper mDbHelper;
+    /** Request code of the catalog file picker */
+    private static final int PICK_CATALOG_REQUEST = 1;
+
+    /** Request code of the export document picker */
+    private static final int CREATE_EXPORT_REQUEST = 2;
+
+    /** Number of units loaded per page */
+    private static final int PAGE_SIZE = 50;
+
+    /** Load the next page once the user scrolls within this many rows of the loaded end */
+    private static final int PREFETCH_DISTANCE = 20;
+
+    /** Time to wait after the last keystroke before searching, in milliseconds */
+    private static final long SEARCH_DEBOUNCE_MILLIS = 300;
+
+    /** Keys of the list state kept when the activity is recreated */
+    private static final String STATE_SEARCH_QUERY = "search_query";
+    private static final String STATE_SORT_ORDER = "sort_order";
+    private static final String STATE_SHOW_LOW_STOCK = "show_low_stock";
+    private static final String STATE_LOADED_LIMIT = "loaded_limit";
+
+    /** Keys of the export options, read back once the export document is created */
+    private static final String STATE_EXPORT_FORMAT = "export_format";
+    private static final String STATE_EXPORT_GZIP = "export_gzip";
+
+    /** Adapter for the RecyclerView */
+    UnitAdapter mAdapter;
+
+    /** Shown instead of the list while there are no units */
+    private View mEmptyView;
+
+    /** Placeholder shown until the first page of units is loaded */
+    private View mLoadingView;
+
+    /** Whether {@link #reportFullyDrawn()} has been called for this launch */
+    private boolean mFullyDrawnReported;
+
+    /**
+     * Number of rows the loader currently asks the provider for: the rows loaded so far, so a
+     * change that adds or removes units reloads all of them in one query
+     */
+    private int mLoadedLimit = PAGE_SIZE;
+
+    /** Whether the last load filled its limit, so there may be more rows to page in */
+    private boolean mHasMoreRows;
+
+    /**
+     * Whether the loaded rows were read in _id order, so pages read after the last loaded _id
+     * extend them. Taken from the loaded cursor, which may predate a change of search or sort.
+     */
+    private boolean mLoadedIdOrdered;
+
+    /** Reads the pages appended to lists in _id order */
+    private final ExecutorService mPageExecutor = Executors.newSingleThreadExecutor();
+
+    /** Incremented whenever the loaded rows are replaced, so pages read before are dropped */
+    private int mPageGeneration;
+
+    /** Writes "sell one" taps off the UI thread */
+    private SaleQueue mSaleQueue;
+
+    /** Sells scanned SKUs while open, or null */
+    private AlertDialog mSkuDialog;
+
+    /** Writes changes to the selected units off the UI thread */
+    private UnitBulkEditor mBulkEditor;
+
+    /** Contextual app bar shown while units are selected, or null */
+    private ActionMode mActionMode;
+
+    /** Writes units saved in the editor, which the list shows until they are written */
+    private UnitWriteQueue mWriteQueue;
+
+    /** Offers to retry the last failed write, or null */
+    private Snackbar mWriteFailedSnackbar;
+
+    /** Patches single changed units into the list without reloading it */
+    private UnitRowPatcher mRowPatcher;
+
+    /** Imports supplier catalogs, and keeps doing so if this activity goes away */
+    private UnitCsvImporter mImporter;
+
+    /** Shows the progress of a running catalog import */
+    private ProgressBar mImportProgress;
+
+    /** Writes the inventory to files */
+    private UnitExporter mExporter;
+
+    /** Shows the progress of a running export */
+    private TextView mExportProgress;
+
+    /** {@link UnitExporter} format of the export waiting for its document to be created */
+    private int mExportFormat;
+
+    /** Whether exports are compressed with gzip */
+    private boolean mExportGzip;
+
+    /** Text the list is searched for, or null to show every unit */
+    private String mSearchQuery;
+
+    /** Whether the list only shows the units that need reordering */
+    private boolean mShowLowStock;
+
+    /** {@link UnitContract#QUERY_PARAMETER_SORT} value of the list, or null for _id order */
+    private String mSortOrder;
+
+    private final Handler mHandler = new Handler();
+
+    /** Offers the changes to the selected units, and clears the selection when it closes */
+    private final ActionMode.Callback mSelectionCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.menu_selection, menu);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            switch (item.getItemId()) {
+                case R.id.action_reprice_selected:
+                    showRepriceDialog();
+                    return true;
+                case R.id.action_restock_selected:
+                    showRestockDialog();
+                    return true;
+                case R.id.action_delete_selected:
+                    showDeleteSelectedDialog();
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            mActionMode = null;
+            mAdapter.clearSelection();
+        }
+    };
+
+    /**
+     * Background work started by every launch that the first frame doesn't need. It runs once
+     * that frame is drawn, so its disk reads don't delay it.
+     */
+    private final Runnable mStartupWork = new Runnable() {
+        @Override
+        public void run() {
+            // Make local thumbnails for units saved before they existed
+            UnitThumbnailStore.getInstance(InventoryActivity.this).backfillAsync();
+
+            // Keep the stock movement ledger from growing without bound
+            MovementCompactor.compactIfDue(InventoryActivity.this);
+
+            // Resume a catalog import the process died in the middle of
+            mImporter.resumeInterrupted();
+            if (mImporter.isRunning()) {
+                mImportProgress.setVisibility(View.VISIBLE);
+                mImportProgress.setIndeterminate(true);
+            }
+        }
+    };
+
+    /** Runs the search once the user has stopped typing for {@link #SEARCH_DEBOUNCE_MILLIS} */
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            reloadFromFirstPage();
+        }
+    };
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        if (BuildConfig.DEBUG) {
+            // Flag disk access on the main thread, which delays launch and drops frames
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .build());
+        }
         setContentView(R.layout.activity_inventory);
 
-        mDbHelper = new UnitDbHelper(this);
+        mSaleQueue = new SaleQueue(getContentResolver());
+        mSaleQueue.setListener(new SaleQueue.Listener() {
+            @Override
+            public void onSkuSold(String sku, long unitId, int rowsUpdated) {
+                showSaleResult(unitId == -1 ? getString(R.string.sku_unknown, sku)
+                        : rowsUpdated == 0 ? getString(R.string.sku_out_of_stock, sku)
+                        : getString(R.string.sku_sold, sku));
+            }
+
+            @Override
+            public void onSaleFailed(String sku, Exception e) {
+                showSaleResult(sku == null ? getString(R.string.sale_failed)
+                        : getString(R.string.sku_sale_failed, sku));
+            }
+        });
+        mBulkEditor = new UnitBulkEditor(this);
+        mBulkEditor.setListener(new UnitBulkEditor.Listener() {
+            @Override
+            public void onFinished(int rowsAffected) {
+                Toast.makeText(InventoryActivity.this,
+                        getString(R.string.selection_done, rowsAffected), Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                Toast.makeText(InventoryActivity.this, R.string.selection_failed,
+                        Toast.LENGTH_LONG).show();
+            }
+        });
 
         FloatingActionButton fab = (FloatingActionButton) findViewById(R.id.fab);
         fab.setOnClickListener(new View.OnClickListener() {
@@ -48,44 +276,175 @@ public class InventoryActivity extends AppCompatActivity implements
             }
         });
        
-        // Find the ListView which will be populated with the unit data
-        ListView unitListView = (ListView) findViewById(R.id.list);
+        // Find the RecyclerView which will be populated with the unit data
+        RecyclerView unitListView = (RecyclerView) findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        unitListView.setLayoutManager(layoutManager);
 
-        // Find and set empty view on the ListView, so that it only shows when the list has 0 items.
-        View emptyView = findViewById(R.id.empty_view);
-        unitListView.setEmptyView(emptyView);
+        // Find the empty view, so that it only shows when the list has 0 items.
+        mEmptyView = findViewById(R.id.empty_view);
+        mLoadingView = findViewById(R.id.list_loading);
 
         // Setup an Adapter to create a list item for each row of unit data in the Cursor.
-        // There is no unit data yet (until the loader finishes) so pass in null for the Cursor.
-        Cursor cursor = mDbHelper.readStock();
-        mCursorAdapter = new UnitCursorAdapter(this, cursor);
-        unitListView.setAdapter(mCursorAdapter);
+        // There is no unit data yet (until the loader finishes).
+        mAdapter = new UnitAdapter(this);
+        unitListView.setAdapter(mAdapter);
 
-        // Setup the item click listener
-        unitListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        mRowPatcher = new UnitRowPatcher(getContentResolver(), mAdapter, new Runnable() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
-                // Create new intent to go to {@link EditorActivity}
-                final Intent intent = new Intent(InventoryActivity.this, EditorActivity.class);
+            public void run() {
+                reloadList();
+            }
+        });
+        mRowPatcher.register();
 
-                // Form the content URI that represents the specific unit that was clicked on,
-                // by appending the "id" (passed as input to this method) onto the
-                // {@link unitEntry#CONTENT_URI}.
-                // For example, the URI would be "content://com.example.amosh.inventoryapp/units/2"
-                // if the unit with ID 2 was clicked on.
-                final Uri currentUnitUri = ContentUris.withAppendedId(UnitEntry.CONTENT_URI, id);
+        // Page in more units before the user reaches the end of the loaded rows
+        unitListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int totalItemCount = mAdapter.getItemCount();
+                if (mHasMoreRows
+                        && layoutManager.findLastVisibleItemPosition() >= totalItemCount - PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
 
-                // Set the URI on the data field of the intent
-                intent.setData(currentUnitUri);
+        // Show units saved in the editor until they are written, and failed writes until retried
+        mWriteQueue = UnitWriteQueue.getInstance(this);
+        mWriteQueue.setListener(new UnitWriteQueue.Listener() {
+            @Override
+            public void onPendingChanged() {
+                mAdapter.setPendingWrites(mWriteQueue.getPending());
+                updateEmptyView();
+            }
 
-                // Launch the {@link EditorActivity} to display the data for the current unit.
-                startActivity(intent);
+            @Override
+            public void onWriteFailed(UnitWriteQueue.PendingWrite write, Exception e) {
+                if (!write.isInsert()) {
+                    // Drop the values shown for the update
+                    reloadList();
+                }
+                showWriteFailed(write);
+            }
+        });
+        mAdapter.setPendingWrites(mWriteQueue.getPending());
+        for (UnitWriteQueue.PendingWrite write : mWriteQueue.getPending()) {
+            if (write.isFailed()) {
+                showWriteFailed(write);
+            }
+        }
+
+        // A loader kept across the recreation still loads the list this state was saved for
+        if (savedInstanceState != null) {
+            mSearchQuery = savedInstanceState.getString(STATE_SEARCH_QUERY);
+            mSortOrder = savedInstanceState.getString(STATE_SORT_ORDER);
+            mShowLowStock = savedInstanceState.getBoolean(STATE_SHOW_LOW_STOCK);
+            mLoadedLimit = savedInstanceState.getInt(STATE_LOADED_LIMIT, PAGE_SIZE);
+            // The document picker may outlive this activity, and even its process
+            mExportFormat = savedInstanceState.getInt(STATE_EXPORT_FORMAT, UnitExporter.FORMAT_CSV);
+            mExportGzip = savedInstanceState.getBoolean(STATE_EXPORT_GZIP);
+        }
+
+        // Kick off the loader. The database is opened by its first query, on the loader's thread.
+        Loader<Cursor> loader = getLoaderManager().initLoader(UNIT_LOADER, null, this);
+        if (loader instanceof UnitListLoader
+                && !buildListUri().equals(((UnitListLoader) loader).getUri())) {
+            // Recreated before a search the user typed was run
+            mLoadedLimit = PAGE_SIZE;
+            getLoaderManager().restartLoader(UNIT_LOADER, null, this);
+        }
+
+        // Start the rest of the launch work once the first frame is drawn
+        final View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                content.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Posted from the frame being drawn, so it runs after it
+                mHandler.post(mStartupWork);
+                return true;
+            }
+        });
+
+        // Show the progress of catalog imports
+        mImportProgress = (ProgressBar) findViewById(R.id.import_progress);
+        mImporter = UnitCsvImporter.getInstance(this);
+        mImporter.setListener(new UnitCsvImporter.Listener() {
+            @Override
+            public void onProgress(long rowsImported, long rowsSkipped, long bytesRead,
+                                   long totalBytes) {
+                mImportProgress.setVisibility(View.VISIBLE);
+                mImportProgress.setIndeterminate(totalBytes <= 0);
+                if (totalBytes > 0) {
+                    mImportProgress.setProgress((int) (bytesRead * mImportProgress.getMax() / totalBytes));
+                }
+            }
+
+            @Override
+            public void onFinished(long rowsImported, long rowsSkipped) {
+                mImportProgress.setVisibility(View.GONE);
+                Toast.makeText(InventoryActivity.this,
+                        getString(R.string.import_finished, rowsImported, rowsSkipped),
+                        Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            public void onFailed(Uri source, Exception e) {
+                mImportProgress.setVisibility(View.GONE);
+                Toast.makeText(InventoryActivity.this, R.string.import_failed,
+                        Toast.LENGTH_LONG).show();
+            }
+        });
+        // Show the progress of exports
+        mExportProgress = (TextView) findViewById(R.id.export_progress);
+        mExporter = UnitExporter.getInstance(this);
+        mExporter.setListener(new UnitExporter.Listener() {
+            @Override
+            public void onProgress(long rowsWritten, long bytesWritten, long elapsedNanos) {
+                mExportProgress.setVisibility(View.VISIBLE);
+                mExportProgress.setText(getString(R.string.export_progress, rowsWritten,
+                        Formatter.formatShortFileSize(InventoryActivity.this, bytesWritten),
+                        getRowsPerSecond(rowsWritten, elapsedNanos)));
+            }
+
+            @Override
+            public void onFinished(long rowsWritten, long bytesWritten, long elapsedNanos) {
+                mExportProgress.setVisibility(View.GONE);
+                Toast.makeText(InventoryActivity.this,
+                        getString(R.string.export_finished, rowsWritten, elapsedNanos / 1e9,
+                                getRowsPerSecond(rowsWritten, elapsedNanos)),
+                        Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            public void onFailed(Uri destination, Exception e) {
+                mExportProgress.setVisibility(View.GONE);
+                Toast.makeText(InventoryActivity.this, R.string.export_failed,
+                        Toast.LENGTH_LONG).show();
             }
         });
+    }
 
-        // Kick off the loader
-        getLoaderManager().initLoader(UNIT_LOADER, null, this);
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_SEARCH_QUERY, mSearchQuery);
+        outState.putString(STATE_SORT_ORDER, mSortOrder);
+        outState.putBoolean(STATE_SHOW_LOW_STOCK, mShowLowStock);
+        outState.putInt(STATE_LOADED_LIMIT, mLoadedLimit);
+        outState.putInt(STATE_EXPORT_FORMAT, mExportFormat);
+        outState.putBoolean(STATE_EXPORT_GZIP, mExportGzip);
     }
+
+    /**
+     * Return the rows written per second by an export that has run for the given time.
+     */
+    private static long getRowsPerSecond(long rows, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        return seconds > 0 ? (long) (rows / seconds) : rows;
+    }
+
     /**
      * Helper method to insert hardcoded unit data into the database. For debugging purposes only.
      */
@@ -95,7 +454,7 @@ public class InventoryActivity extends AppCompatActivity implements
         ContentValues values = new ContentValues();
         values.put(UnitEntry.COLUMN_UNIT_NAME, "Cheese");
         values.put(UnitEntry.COLUMN_UNIT_QUANTITY, 5);
-        values.put(UnitEntry.COLUMN_UNIT_PRICE, 7);
+        values.put(UnitEntry.COLUMN_UNIT_PRICE, 700);
         values.put(UnitEntry.COLUMN_UNIT_IMAGE_URI, "android.resource://com.example.amosh.inventoryapp/drawable/shopping_empty_box_icon");
 
         // Insert a new row for Cheese into the provider using the ContentResolver.
@@ -110,6 +469,7 @@ public class InventoryActivity extends AppCompatActivity implements
      */
     private void deleteAllUnits() {
         int rowsDeleted = getContentResolver().delete(UnitEntry.CONTENT_URI, null, null);
+        UnitThumbnailStore.getInstance(this).deleteAllAsync();
         Log.v("InventoryActivity", rowsDeleted + " rows deleted from unit database");
     }
 
@@ -118,6 +478,39 @@ public class InventoryActivity extends AppCompatActivity implements
         // Inflate the menu options from the res/menu/menu_catalog.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_inventory, menu);
+
+        // Show the sort order and filter the list was loaded with
+        int sortItemId = UnitContract.SORT_NAME.equals(mSortOrder) ? R.id.action_sort_name
+                : UnitContract.SORT_PRICE.equals(mSortOrder) ? R.id.action_sort_price
+                : UnitContract.SORT_QUANTITY.equals(mSortOrder) ? R.id.action_sort_quantity
+                : R.id.action_sort_default;
+        menu.findItem(sortItemId).setChecked(true);
+        menu.findItem(R.id.action_needs_reorder).setChecked(mShowLowStock);
+        menu.findItem(R.id.action_export_gzip).setChecked(mExportGzip);
+
+        // Search as the user types, once they pause
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        if (mSearchQuery != null) {
+            // Expanding clears the query, so it is set after, and before the listener reruns it
+            searchItem.expandActionView();
+            searchView.setQuery(mSearchQuery, false);
+        }
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                return false;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                String query = newText.trim();
+                mSearchQuery = query.isEmpty() ? null : query;
+                mHandler.removeCallbacks(mSearchRunnable);
+                mHandler.postDelayed(mSearchRunnable, SEARCH_DEBOUNCE_MILLIS);
+                return true;
+            }
+        });
         return true;
     }
 
@@ -125,6 +518,31 @@ public class InventoryActivity extends AppCompatActivity implements
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
         switch (item.getItemId()) {
+            // Respond to a click on the "Sell by SKU" menu option
+            case R.id.action_sell_by_sku:
+                showSellBySkuDialog();
+                return true;
+            // Respond to a click on the "Needs reorder" filter
+            case R.id.action_needs_reorder:
+                mShowLowStock = !item.isChecked();
+                item.setChecked(mShowLowStock);
+                reloadFromFirstPage();
+                return true;
+            // Respond to a click on the "Import catalog" menu option
+            case R.id.action_import_catalog:
+                pickCatalog();
+                return true;
+            // Respond to a click on one of the "Export" options
+            case R.id.action_export_csv:
+                exportUnits(UnitExporter.FORMAT_CSV);
+                return true;
+            case R.id.action_export_json:
+                exportUnits(UnitExporter.FORMAT_JSON);
+                return true;
+            case R.id.action_export_gzip:
+                mExportGzip = !item.isChecked();
+                item.setChecked(mExportGzip);
+                return true;
             // Respond to a click on the "Insert dummy data" menu option
             case R.id.action_insert_dummy_data:
                 insertUnit();
@@ -133,44 +551,556 @@ public class InventoryActivity extends AppCompatActivity implements
             case R.id.action_delete_all_entries:
                 deleteAllUnits();
                 return true;
+            // Respond to a click on one of the "Sort by" options
+            case R.id.action_sort_default:
+                setSortOrder(item, null);
+                return true;
+            case R.id.action_sort_name:
+                setSortOrder(item, UnitContract.SORT_NAME);
+                return true;
+            case R.id.action_sort_price:
+                setSortOrder(item, UnitContract.SORT_PRICE);
+                return true;
+            case R.id.action_sort_quantity:
+                setSortOrder(item, UnitContract.SORT_QUANTITY);
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Sell one unit for every SKU entered until the dialog is closed. Barcode scanners type the
+     * code followed by Enter, so each scan is sold as soon as it ends and the field is cleared for
+     * the next one.
+     */
+    private void showSellBySkuDialog() {
+        final EditText input = new EditText(this);
+        input.setSingleLine(true);
+        input.setInputType(InputType.TYPE_CLASS_TEXT);
+        input.setImeOptions(EditorInfo.IME_ACTION_DONE);
+        input.setHint(R.string.sku_scan_hint);
+        input.setOnEditorActionListener(new TextView.OnEditorActionListener() {
+            @Override
+            public boolean onEditorAction(TextView view, int actionId, KeyEvent event) {
+                if (event != null && event.getAction() != KeyEvent.ACTION_DOWN) {
+                    // The Enter key's up event, the sale was made on the down event
+                    return true;
+                }
+                String sku = input.getText().toString().trim();
+                if (!sku.isEmpty()) {
+                    mSaleQueue.sellBySku(sku);
+                }
+                input.setText("");
+                return true;
+            }
+        });
+        mSkuDialog = new AlertDialog.Builder(this)
+                .setTitle(R.string.inventory_action_sell_by_sku)
+                // Replaced by the result of each scan
+                .setMessage(R.string.sku_scan_hint)
+                .setView(input)
+                .setNegativeButton(R.string.done, null)
+                .create();
+        // Set on the dialog, the builder only takes a dismiss listener from API 17
+        mSkuDialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
+            @Override
+            public void onDismiss(DialogInterface dialog) {
+                mSkuDialog = null;
+            }
+        });
+        mSkuDialog.show();
+    }
+
+    /**
+     * Show the result of a sale in the SKU dialog while it is open, or else as a toast.
+     */
+    private void showSaleResult(String message) {
+        if (mSkuDialog != null && mSkuDialog.isShowing()) {
+            mSkuDialog.setMessage(message);
+        } else {
+            Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Let the user pick a CSV catalog to import.
+     */
+    private void pickCatalog() {
+        Intent intent;
+        if (Build.VERSION.SDK_INT < 19) {
+            intent = new Intent(Intent.ACTION_GET_CONTENT);
+        } else {
+            intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        }
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("text/*");
+        startActivityForResult(Intent.createChooser(intent, getString(R.string.import_pick_file)),
+                PICK_CATALOG_REQUEST);
+    }
+
+    /**
+     * Export every unit in the given {@link UnitExporter} format. From API 19 the user picks where
+     * the file goes, before that it is written to the app's external files directory.
+     */
+    private void exportUnits(int format) {
+        String extension = format == UnitExporter.FORMAT_JSON ? ".json" : ".csv";
+        String mimeType = format == UnitExporter.FORMAT_JSON ? "application/json" : "text/csv";
+        if (mExportGzip) {
+            extension += ".gz";
+            mimeType = "application/gzip";
+        }
+        String fileName = "inventory-" + System.currentTimeMillis() + extension;
+        if (Build.VERSION.SDK_INT < 19) {
+            File directory = getExternalFilesDir(null);
+            if (directory == null) {
+                directory = getFilesDir();
+            }
+            mExporter.export(Uri.fromFile(new File(directory, fileName)), format, mExportGzip);
+            return;
+        }
+        mExportFormat = format;
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType(mimeType);
+        intent.putExtra(Intent.EXTRA_TITLE, fileName);
+        startActivityForResult(intent, CREATE_EXPORT_REQUEST);
+    }
+
     @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        // Define a projection that specifies the columns from the table we care about.
-        String[] projection = {
-                UnitEntry._ID,
-                UnitEntry.COLUMN_UNIT_NAME,
-                UnitEntry.COLUMN_UNIT_QUANTITY,
-                UnitEntry.COLUMN_UNIT_PRICE,
-                UnitEntry.COLUMN_UNIT_IMAGE_URI};
+    protected void onActivityResult(int requestCode, int resultCode, Intent resultData) {
+        super.onActivityResult(requestCode, resultCode, resultData);
+        if (resultCode != RESULT_OK || resultData == null || resultData.getData() == null) {
+            return;
+        }
+        if (requestCode == CREATE_EXPORT_REQUEST) {
+            mExporter.export(resultData.getData(), mExportFormat, mExportGzip);
+            return;
+        }
+        if (requestCode != PICK_CATALOG_REQUEST) {
+            return;
+        }
+        Uri catalogUri = resultData.getData();
+        // Keep read access to the file, so the import can resume if the process dies
+        if (Build.VERSION.SDK_INT >= 19) {
+            try {
+                getContentResolver().takePersistableUriPermission(catalogUri,
+                        Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            } catch (SecurityException e) {
+                // The picker didn't grant a persistable permission, the import can only resume
+                // while the temporary grant holds
+            }
+        }
+        mImportProgress.setVisibility(View.VISIBLE);
+        mImportProgress.setIndeterminate(true);
+        mImporter.start(catalogUri);
+    }
 
+    @Override
+    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
         // This loader will execute the ContentProvider's query method on a background thread
-        return new CursorLoader(this,   // Parent activity context
-                UnitEntry.CONTENT_URI,   // Provider content URI to query
-                projection,             // Columns to include in the resulting Cursor
-                null,                   // No selection clause
-                null,                   // No selection arguments
-                null);                  // Default sort order
+        return new UnitListLoader(this, buildListUri(), UnitEntry.PROJECTION, getListSortOrder());
+    }
+
+    /**
+     * Build the URI the list loads: only the rows that have been paged in so far, filtered and
+     * sorted by the provider. While searching, the full-text search URI matches every word of the
+     * query across all units, even when the list is filtered to the units needing reorder.
+     */
+    private Uri buildListUri() {
+        Uri.Builder builder;
+        if (mSearchQuery != null) {
+            builder = UnitEntry.CONTENT_SEARCH_URI.buildUpon().appendPath(mSearchQuery);
+        } else if (mShowLowStock) {
+            builder = UnitEntry.CONTENT_LOW_STOCK_URI.buildUpon();
+        } else {
+            builder = UnitEntry.CONTENT_URI.buildUpon();
+        }
+        builder.appendQueryParameter(UnitContract.QUERY_PARAMETER_LIMIT, String.valueOf(mLoadedLimit));
+        if (mSortOrder != null) {
+            builder.appendQueryParameter(UnitContract.QUERY_PARAMETER_SORT, mSortOrder);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Without a sort parameter keep a stable _id order, so pages extend each other.
+     * Search results come back ranked and units needing reorder most urgent first instead.
+     */
+    private String getListSortOrder() {
+        return isIdOrdered() ? UnitEntry._ID + " ASC" : null;
+    }
+
+    /**
+     * Return true if the list shows every unit in _id order, so its next page is read after the
+     * last loaded _id.
+     */
+    private boolean isIdOrdered() {
+        return mSortOrder == null && mSearchQuery == null && !mShowLowStock;
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        // Update {@link unitCursorAdapter} with this new cursor containing updated unit data
-        mCursorAdapter.swapCursor(data);
+        // Pages read for the rows shown before are of no use any more
+        mPageGeneration++;
+        int count = data == null ? 0 : data.getCount();
+        mLoadedIdOrdered = data instanceof UnitListLoader.DiffedCursor
+                && ((UnitListLoader.DiffedCursor) data).isIdOrdered();
+        if (mLoadedIdOrdered && isIdOrdered()) {
+            // The window may have been loaded before the last page was appended, so it only
+            // covers what it returned; anything after it is read as the next page, which costs
+            // one indexed query even when there is nothing left
+            mHasMoreRows = count >= PAGE_SIZE;
+            mLoadedLimit = Math.max(PAGE_SIZE, count);
+            updateLoaderUri();
+        } else {
+            // A full page means there may be more rows after it
+            mHasMoreRows = count >= mLoadedLimit;
+        }
+        // Update {@link UnitAdapter} with this new cursor containing updated unit data
+        mAdapter.swapCursor(data);
+        // The new rows replaced any values shown for pending updates
+        mAdapter.setPendingWrites(mWriteQueue.getPending());
+        if (mAdapter.retainShownSelection()) {
+            updateActionMode();
+        }
+        mLoadingView.setVisibility(View.GONE);
+        updateEmptyView();
+        if (!mFullyDrawnReported && Build.VERSION.SDK_INT >= 19) {
+            // The launch is complete once the first page is on screen
+            mFullyDrawnReported = true;
+            reportFullyDrawn();
+        }
+    }
+
+    /**
+     * Show the empty view once the list has loaded with no units, pending ones included.
+     */
+    private void updateEmptyView() {
+        boolean empty = mLoadingView.getVisibility() != View.VISIBLE && mAdapter.getItemCount() == 0;
+        mEmptyView.setVisibility(empty ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * Tell the user a unit couldn't be saved, until they retry or another write fails.
+     */
+    private void showWriteFailed(final UnitWriteQueue.PendingWrite write) {
+        mWriteFailedSnackbar = Snackbar.make(findViewById(R.id.list), write.isInsert()
+                        ? R.string.editor_insert_unit_failed : R.string.editor_update_unit_failed,
+                Snackbar.LENGTH_INDEFINITE);
+        mWriteFailedSnackbar.setAction(R.string.editor_retry_save, new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                mWriteQueue.retry(write);
+            }
+        });
+        mWriteFailedSnackbar.show();
+    }
+
+    /**
+     * Offer to retry or discard the pending unit with the given id, if its write failed.
+     */
+    public void openPendingUnit(long id) {
+        List<UnitWriteQueue.PendingWrite> pending = mWriteQueue.getPending();
+        for (final UnitWriteQueue.PendingWrite write : pending) {
+            if (write.getId() != id || !write.isFailed()) {
+                continue;
+            }
+            new AlertDialog.Builder(this)
+                    .setMessage(R.string.editor_insert_unit_failed)
+                    .setPositiveButton(R.string.editor_retry_save, new DialogInterface.OnClickListener() {
+                        @Override
+                        public void onClick(DialogInterface dialog, int which) {
+                            dismissWriteFailed();
+                            mWriteQueue.retry(write);
+                        }
+                    })
+                    .setNegativeButton(R.string.discard, new DialogInterface.OnClickListener() {
+                        @Override
+                        public void onClick(DialogInterface dialog, int which) {
+                            dismissWriteFailed();
+                            mWriteQueue.discard(write);
+                        }
+                    })
+                    .show();
+            return;
+        }
+    }
+
+    private void dismissWriteFailed() {
+        if (mWriteFailedSnackbar != null) {
+            mWriteFailedSnackbar.dismiss();
+            mWriteFailedSnackbar = null;
+        }
+    }
+
+    /**
+     * Select the unit with the given id if it isn't selected, or unselect it, starting the
+     * contextual app bar with the first selected unit and closing it after the last.
+     */
+    public void toggleSelection(long id) {
+        mAdapter.toggleSelected(id);
+        if (mActionMode == null && mAdapter.getSelectedCount() > 0) {
+            mActionMode = startSupportActionMode(mSelectionCallback);
+        }
+        updateActionMode();
+    }
+
+    private void updateActionMode() {
+        if (mActionMode == null) {
+            return;
+        }
+        int count = mAdapter.getSelectedCount();
+        if (count == 0) {
+            mActionMode.finish();
+        } else {
+            mActionMode.setTitle(getString(R.string.selection_count, count));
+        }
+    }
+
+    /**
+     * Ask for the percentage to change the prices of the selected units by, e.g. "10" or "-2.5".
+     */
+    private void showRepriceDialog() {
+        final EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_FLAG_DECIMAL
+                | InputType.TYPE_NUMBER_FLAG_SIGNED);
+        input.setHint(R.string.selection_reprice_hint);
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.selection_action_reprice)
+                .setView(input)
+                .setNegativeButton(R.string.cancel, null)
+                .setPositiveButton(R.string.selection_action_reprice, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        int basisPoints;
+                        try {
+                            // Hundredths of a percent, so "2.5" is 250
+                            basisPoints = new BigDecimal(input.getText().toString().trim())
+                                    .movePointRight(2).intValueExact();
+                        } catch (NumberFormatException | ArithmeticException e) {
+                            basisPoints = Integer.MIN_VALUE;
+                        }
+                        // A price can't drop by 100% or more
+                        if (basisPoints <= -10000) {
+                            Toast.makeText(InventoryActivity.this,
+                                    R.string.selection_invalid_percent, Toast.LENGTH_LONG).show();
+                            return;
+                        }
+                        mBulkEditor.reprice(mAdapter.getSelectedIds(), basisPoints);
+                        finishActionMode();
+                    }
+                })
+                .show();
+    }
+
+    /**
+     * Ask for the number of units to add to each selected unit.
+     */
+    private void showRestockDialog() {
+        final EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_NUMBER);
+        input.setHint(R.string.selection_restock_hint);
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.selection_action_restock)
+                .setView(input)
+                .setNegativeButton(R.string.cancel, null)
+                .setPositiveButton(R.string.selection_action_restock, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        int count;
+                        try {
+                            count = Integer.parseInt(input.getText().toString().trim());
+                        } catch (NumberFormatException e) {
+                            count = 0;
+                        }
+                        if (count <= 0) {
+                            Toast.makeText(InventoryActivity.this,
+                                    R.string.selection_invalid_count, Toast.LENGTH_LONG).show();
+                            return;
+                        }
+                        mBulkEditor.restock(mAdapter.getSelectedIds(), count);
+                        finishActionMode();
+                    }
+                })
+                .show();
+    }
+
+    private void showDeleteSelectedDialog() {
+        new AlertDialog.Builder(this)
+                .setMessage(R.string.selection_delete_dialog_msg)
+                .setNegativeButton(R.string.cancel, null)
+                .setPositiveButton(R.string.delete, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        mBulkEditor.delete(mAdapter.getSelectedIds());
+                        finishActionMode();
+                    }
+                })
+                .show();
+    }
+
+    private void finishActionMode() {
+        if (mActionMode != null) {
+            mActionMode.finish();
+        }
+    }
+
+    /**
+     * Load the page after the loaded rows. A list in _id order reads only that page, after the last
+     * loaded _id, and appends it. Search results and sorted lists have no such key, so their
+     * window grows by a page and reloads. Either way the loader reloads every loaded row when
+     * units are added or removed, and {@link UnitRowPatcher} patches edits to loaded rows.
+     */
+    private void loadNextPage() {
+        mHasMoreRows = false;
+        if (!mLoadedIdOrdered || !isIdOrdered()) {
+            mLoadedLimit += PAGE_SIZE;
+            reloadList();
+            return;
+        }
+        final int generation = mPageGeneration;
+        final Uri pageUri = UnitEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(UnitContract.QUERY_PARAMETER_AFTER_ID,
+                        String.valueOf(mAdapter.getLastLoadedId()))
+                .appendQueryParameter(UnitContract.QUERY_PARAMETER_LIMIT, String.valueOf(PAGE_SIZE))
+                .build();
+        mPageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Cursor page = getContentResolver().query(pageUri, UnitEntry.PROJECTION,
+                        null, null, null);
+                if (page == null) {
+                    return;
+                }
+                // Fill the window here rather than on the main thread
+                page.getCount();
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            appendPage(generation, page);
+                        } finally {
+                            page.close();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Append a page read by {@link #loadNextPage()}, unless the loaded rows were replaced since.
+     */
+    private void appendPage(int generation, Cursor page) {
+        if (generation != mPageGeneration) {
+            return;
+        }
+        mAdapter.appendRows(page);
+        // Edits waiting to be written show over the new rows too
+        mAdapter.setPendingWrites(mWriteQueue.getPending());
+        mLoadedLimit += page.getCount();
+        mHasMoreRows = page.getCount() >= PAGE_SIZE;
+        updateLoaderUri();
+    }
+
+    /**
+     * Reload the list from its first page, after the search or the sort order changed.
+     */
+    private void reloadFromFirstPage() {
+        mHasMoreRows = false;
+        mPageGeneration++;
+        mLoadedLimit = PAGE_SIZE;
+        reloadList();
+    }
+
+    /**
+     * Point the existing loader at the current list URI and reload it. Keeping the same loader lets
+     * it diff the new rows against the ones on screen.
+     */
+    private void reloadList() {
+        Loader<Cursor> loader = getLoaderManager().getLoader(UNIT_LOADER);
+        if (!(loader instanceof UnitListLoader)) {
+            getLoaderManager().restartLoader(UNIT_LOADER, null, this);
+            return;
+        }
+        updateLoaderUri();
+        loader.onContentChanged();
+    }
+
+    /**
+     * Point the loader at the current list URI without reloading it, so the next change it
+     * observes reloads every row loaded by then.
+     */
+    private void updateLoaderUri() {
+        Loader<Cursor> loader = getLoaderManager().getLoader(UNIT_LOADER);
+        if (loader instanceof UnitListLoader) {
+            UnitListLoader listLoader = (UnitListLoader) loader;
+            listLoader.setUri(buildListUri());
+            listLoader.setSortOrder(getListSortOrder());
+        }
+    }
+
+    /**
+     * Open the editor for the unit with the given id.
+     */
+    public void openUnit(long id) {
+        // Create new intent to go to {@link EditorActivity}
+        Intent intent = new Intent(InventoryActivity.this, EditorActivity.class);
+
+        // Form the content URI that represents the specific unit that was clicked on,
+        // by appending the "id" (passed as input to this method) onto the
+        // {@link unitEntry#CONTENT_URI}.
+        // For example, the URI would be "content://com.example.amosh.inventoryapp/units/2"
+        // if the unit with ID 2 was clicked on.
+        Uri currentUnitUri = ContentUris.withAppendedId(UnitEntry.CONTENT_URI, id);
+
+        // Set the URI on the data field of the intent
+        intent.setData(currentUnitUri);
+
+        // Launch the {@link EditorActivity} to display the data for the current unit.
+        startActivity(intent);
+    }
+
+    /**
+     * Sort the list by the given {@link UnitContract#QUERY_PARAMETER_SORT} value, or by _id if null.
+     */
+    private void setSortOrder(MenuItem item, String sortOrder) {
+        item.setChecked(true);
+        mSortOrder = sortOrder;
+        reloadFromFirstPage();
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
         // Callback called when the data needs to be deleted
-        mCursorAdapter.swapCursor(null);
+        mLoadedIdOrdered = false;
+        mAdapter.swapCursor(null);
     }
 
-    public void buyOne(long id, int quantity) {
-        mDbHelper.buyOne(id, quantity);
-        mCursorAdapter.swapCursor(mDbHelper.readStock());
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mHandler.removeCallbacks(mSearchRunnable);
+        mHandler.removeCallbacks(mStartupWork);
+        mWriteQueue.setListener(null);
+        mSaleQueue.shutdown();
+        mBulkEditor.shutdown();
+        if (mSkuDialog != null) {
+            mSkuDialog.dismiss();
+        }
+        mRowPatcher.unregister();
+        // Drop pages still being read
+        mPageGeneration++;
+        mPageExecutor.shutdownNow();
+        mImporter.setListener(null);
+        mExporter.setListener(null);
+    }
 
+    /**
+     * Sell one unit with the given id. The write happens in the background and the row is patched
+     * once the provider notifies the change.
+     */
+    public void buyOne(long id) {
+        mSaleQueue.sellOne(id);
     }
 }
\ No newline at end of file
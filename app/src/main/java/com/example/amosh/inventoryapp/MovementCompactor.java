@@ -0,0 +1,59 @@
+package com.example.amosh.inventoryapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.example.amosh.inventoryapp.data.UnitContract;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitMovementDayEntry;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Rolls old stock movements up into daily totals with
+ * {@link UnitContract#METHOD_COMPACT_MOVEMENTS}, at most once a day, so the ledger doesn't grow
+ * without bound.
+ */
+public class MovementCompactor {
+
+    private static final String LOG_TAG = MovementCompactor.class.getSimpleName();
+
+    private static final String PREFERENCES_NAME = "movement_compaction";
+
+    private static final String KEY_LAST_RUN = "last_run";
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    private MovementCompactor() {}
+
+    /**
+     * Compact the ledger in the background if it hasn't been compacted in the last day. The
+     * preferences are read in the background too, so this is cheap to call during launch.
+     */
+    public static void compactIfDue(Context context) {
+        final Context appContext = context.getApplicationContext();
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                SharedPreferences preferences = appContext.getSharedPreferences(PREFERENCES_NAME,
+                        Context.MODE_PRIVATE);
+                long now = System.currentTimeMillis();
+                long lastRun = preferences.getLong(KEY_LAST_RUN, 0);
+                if (now - lastRun < UnitMovementDayEntry.MILLIS_PER_DAY && now >= lastRun) {
+                    return;
+                }
+                preferences.edit().putLong(KEY_LAST_RUN, now).apply();
+
+                Bundle result = appContext.getContentResolver().call(UnitEntry.CONTENT_URI,
+                        UnitContract.METHOD_COMPACT_MOVEMENTS, null, null);
+                if (result != null) {
+                    Log.i(LOG_TAG, "Rolled up " + result.getInt(UnitContract.EXTRA_ROWS_AFFECTED)
+                            + " stock movements");
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.amosh.inventoryapp;
+
+import android.content.ContentResolver;
+import android.database.SQLException;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LongSparseArray;
+import android.util.Log;
+
+import com.example.amosh.inventoryapp.data.UnitContract;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sends "sell one" taps to the {@link com.example.amosh.inventoryapp.data.UnitProvider} on a
+ * background thread. Taps on the same unit that arrive while a write is pending are merged into a
+ * single decrement, and the list picks the change up through the provider's change notification.
+ * Scanned SKUs are sold on the same thread, in scan order, and their results reported back.
+ * Sales that fail to be written are reported too, so they aren't lost without a word.
+ */
+public class SaleQueue {
+
+    private static final String LOG_TAG = SaleQueue.class.getSimpleName();
+
+    /**
+     * Told on the main thread what each scanned SKU sold, and which sales failed.
+     */
+    public interface Listener {
+
+        /**
+         * The SKU was looked up and sold, if it was in stock.
+         *
+         * @param unitId      _id of the unit with the SKU, or -1 if there is none
+         * @param rowsUpdated 1 if a unit was sold, 0 if none was
+         */
+        void onSkuSold(String sku, long unitId, int rowsUpdated);
+
+        /**
+         * A sale couldn't be written, so nothing was sold.
+         *
+         * @param sku the scanned SKU, or null for taps on a unit
+         */
+        void onSaleFailed(String sku, Exception e);
+    }
+
+    private final ContentResolver mContentResolver;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Only touched on the main thread */
+    private Listener mListener;
+
+    /** Single writer thread, so decrements for one unit are applied in tap order */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    /** Units sold per _id that have not been written yet, guarded by itself */
+    private final LongSparseArray<Integer> mPending = new LongSparseArray<>();
+
+    public SaleQueue(ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+    }
+
+    /**
+     * Queue the sale of one unit with the given id.
+     */
+    public void sellOne(long id) {
+        synchronized (mPending) {
+            Integer pending = mPending.get(id);
+            mPending.put(id, pending == null ? 1 : pending + 1);
+            if (pending != null) {
+                // A write for this unit is already queued and will pick this tap up
+                return;
+            }
+        }
+        final long unitId = id;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int count;
+                synchronized (mPending) {
+                    count = mPending.get(unitId);
+                    mPending.remove(unitId);
+                }
+                Bundle extras = new Bundle();
+                extras.putLong(UnitContract.EXTRA_UNIT_ID, unitId);
+                extras.putInt(UnitContract.EXTRA_COUNT, count);
+                try {
+                    mContentResolver.call(UnitEntry.CONTENT_URI, UnitContract.METHOD_SELL, null, extras);
+                } catch (SQLException | IllegalArgumentException e) {
+                    Log.e(LOG_TAG, "Failed to sell " + count + " of unit " + unitId, e);
+                    postSaleFailed(null, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Set the listener told about the results of SKU sales and failed sales, or null. Call on the
+     * main thread.
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Queue the sale of one unit of the unit with the given SKU. Unlike taps, every scan is its
+     * own sale, so each one gets its result.
+     */
+    public void sellBySku(final String sku) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bundle extras = new Bundle();
+                extras.putString(UnitContract.EXTRA_SKU, sku);
+                Bundle result;
+                try {
+                    result = mContentResolver.call(UnitEntry.CONTENT_URI,
+                            UnitContract.METHOD_SELL_BY_SKU, null, extras);
+                } catch (SQLException | IllegalArgumentException e) {
+                    Log.e(LOG_TAG, "Failed to sell SKU " + sku, e);
+                    postSaleFailed(sku, e);
+                    return;
+                }
+                if (result == null) {
+                    return;
+                }
+                final long unitId = result.getLong(UnitContract.EXTRA_UNIT_ID, -1);
+                final int rowsUpdated = result.getInt(UnitContract.EXTRA_ROWS_AFFECTED);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mListener != null) {
+                            mListener.onSkuSold(sku, unitId, rowsUpdated);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void postSaleFailed(final String sku, final Exception e) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mListener != null) {
+                    mListener.onSaleFailed(sku, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop accepting new sales and stop telling the listener. Sales that are already queued are
+     * still written.
+     */
+    public void shutdown() {
+        mListener = null;
+        mExecutor.shutdown();
+    }
+}
@@ -0,0 +1,564 @@
+package com.example.amosh.inventoryapp;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.support.v4.util.LongSparseArray;
+import android.support.v7.util.ListUpdateCallback;
+import android.support.v7.widget.RecyclerView;
+import android.util.TypedValue;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.example.amosh.inventoryapp.data.UnitContract;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+import com.example.amosh.inventoryapp.data.UnitPrice;
+import com.example.amosh.inventoryapp.data.UnitRowReader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * RecyclerView adapter showing one unit per row from a unit cursor. Column indices are resolved
+ * once per cursor, and when the cursor comes from {@link UnitListLoader} only the rows that changed
+ * since the previous cursor are rebound. Pages read after the cursor are appended below its rows
+ * until the next cursor is swapped in. Single rows changed in between are patched in by
+ * {@link UnitRowPatcher}. Units saved through {@link UnitWriteQueue} are shown before they are
+ * written: new ones above the loaded rows, edits in place of the loaded values. Loaded rows can be
+ * selected for changes to many units at once; while any is selected, clicks toggle selection.
+ */
+public class UnitAdapter extends RecyclerView.Adapter<UnitAdapter.UnitViewHolder> {
+
+    private final InventoryActivity activity;
+
+    private final UnitImageLoader mImageLoader;
+
+    /** Size in pixels that row images are decoded to */
+    private final int mImageSize;
+
+    private Cursor mCursor;
+
+    /** Snapshot of {@link #mCursor}, or null if it didn't come from {@link UnitListLoader} */
+    private UnitListSnapshot mSnapshot;
+
+    /** Reads {@link #mCursor} with its column indices resolved once */
+    private UnitRowReader mRow;
+
+    /** Rows of the pages appended after {@link #mCursor}'s rows, or null */
+    private MatrixCursor mAppendedRows;
+
+    /** Reads {@link #mAppendedRows} */
+    private UnitRowReader mAppendedRow;
+
+    /** Position in {@link #mAppendedRows} of each appended _id */
+    private final LongSparseArray<Integer> mAppendedPositions = new LongSparseArray<>();
+
+    /**
+     * Rows re-queried by {@link UnitRowPatcher} since {@link #mCursor} was loaded. They are shown
+     * instead of the cursor's rows with the same _id until the next cursor is swapped in.
+     */
+    private MatrixCursor mPatchedRows;
+
+    /** Reads {@link #mPatchedRows} */
+    private UnitRowReader mPatchedRow;
+
+    /** Position in {@link #mPatchedRows} of each patched _id */
+    private final LongSparseArray<Integer> mPatchedPositions = new LongSparseArray<>();
+
+    /** Opacity of a row waiting to be written */
+    private static final float PENDING_ALPHA = 0.5f;
+
+    /** Opacity of a row whose write failed */
+    private static final float FAILED_ALPHA = 0.25f;
+
+    /** _ids of the selected units, which are always loaded rows */
+    private final Set<Long> mSelectedIds = new HashSet<>();
+
+    /** Resource of the row background while the row isn't selected */
+    private final int mRowBackground;
+
+    /** Inserts not written yet, shown above the loaded rows in save order */
+    private final List<UnitWriteQueue.PendingWrite> mPendingInserts = new ArrayList<>();
+
+    /** Applies the diff of a new cursor below the pending inserts */
+    private final ListUpdateCallback mCursorUpdateCallback = new ListUpdateCallback() {
+        @Override
+        public void onInserted(int position, int count) {
+            notifyItemRangeInserted(mPendingInserts.size() + position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            notifyItemRangeRemoved(mPendingInserts.size() + position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            notifyItemMoved(mPendingInserts.size() + fromPosition,
+                    mPendingInserts.size() + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            notifyItemRangeChanged(mPendingInserts.size() + position, count, payload);
+        }
+    };
+
+    /** One click listener shared by every row and every "buy one" button */
+    private final View.OnClickListener mClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            UnitViewHolder holder = (UnitViewHolder) view.getTag();
+            int position = holder.getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+            long id = getItemId(position);
+            if (id < 0) {
+                // Not written yet
+                activity.openPendingUnit(id);
+                return;
+            }
+            if (!mSelectedIds.isEmpty()) {
+                activity.toggleSelection(id);
+            } else if (view.getId() == R.id.buy_one) {
+                activity.buyOne(id);
+            } else {
+                activity.openUnit(id);
+            }
+        }
+    };
+
+    /** Starts selecting rows */
+    private final View.OnLongClickListener mLongClickListener = new View.OnLongClickListener() {
+        @Override
+        public boolean onLongClick(View view) {
+            UnitViewHolder holder = (UnitViewHolder) view.getTag();
+            int position = holder.getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION || getItemId(position) < 0) {
+                return false;
+            }
+            activity.toggleSelection(getItemId(position));
+            return true;
+        }
+    };
+
+    public UnitAdapter(InventoryActivity context) {
+        this.activity = context;
+        TypedValue background = new TypedValue();
+        context.getTheme().resolveAttribute(R.attr.selectableItemBackground, background, true);
+        mRowBackground = background.resourceId;
+        mImageLoader = UnitImageLoader.getInstance(context);
+        mImageSize = context.getResources().getDimensionPixelSize(R.dimen.unit_image_size);
+        setHasStableIds(true);
+    }
+
+    /**
+     * Show the rows of a new cursor. The caller keeps ownership of the cursor and closes it.
+     */
+    public void swapCursor(Cursor cursor) {
+        if (cursor == mCursor) {
+            return;
+        }
+        UnitListSnapshot oldSnapshot = mSnapshot;
+        boolean hadAppendedRows = mAppendedRows != null;
+        mCursor = cursor;
+        mSnapshot = null;
+        mRow = cursor == null ? null : new UnitRowReader(cursor);
+        // The new cursor covers the appended pages too, and was read after the patches, so it
+        // already has their values
+        mAppendedRows = null;
+        mAppendedRow = null;
+        mAppendedPositions.clear();
+        mPatchedRows = null;
+        mPatchedRow = null;
+        mPatchedPositions.clear();
+
+        if (cursor instanceof UnitListLoader.DiffedCursor) {
+            UnitListLoader.DiffedCursor diffed = (UnitListLoader.DiffedCursor) cursor;
+            mSnapshot = diffed.getSnapshot();
+            // The diff is only valid if it starts from the rows currently shown, which appended
+            // pages aren't part of
+            if (oldSnapshot != null && diffed.getDiff() != null
+                    && diffed.getBaseSnapshot() == oldSnapshot && !hadAppendedRows) {
+                diffed.getDiff().dispatchUpdatesTo(mCursorUpdateCallback);
+                return;
+            }
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Show the rows of a page read after the loaded ones below them. The caller keeps ownership of
+     * the cursor, which can be closed once this returns.
+     */
+    void appendRows(Cursor page) {
+        if (mCursor == null || page.getCount() == 0) {
+            return;
+        }
+        int start = getItemCount();
+        if (mAppendedRows == null) {
+            mAppendedRows = new MatrixCursor(UnitEntry.PROJECTION, page.getCount());
+            mAppendedRow = new UnitRowReader(mAppendedRows);
+        }
+        UnitRowReader row = new UnitRowReader(page);
+        page.moveToPosition(-1);
+        while (page.moveToNext()) {
+            // Pages come in _id order, so this appends to the end of the array
+            mAppendedPositions.put(row.getId(), mAppendedRows.getCount());
+            addRow(mAppendedRows, row);
+        }
+        notifyItemRangeInserted(start, getItemCount() - start);
+    }
+
+    /**
+     * Return the _id of the last loaded row, or -1 if there is none. Only meaningful for lists in
+     * _id order.
+     */
+    long getLastLoadedId() {
+        int count = getLoadedCount();
+        return count == 0 ? -1 : loadedRow(count - 1).getId();
+    }
+
+    /**
+     * Return the number of loaded rows, appended ones included, without the pending inserts.
+     */
+    int getLoadedCount() {
+        return (mCursor == null ? 0 : mCursor.getCount())
+                + (mAppendedRows == null ? 0 : mAppendedRows.getCount());
+    }
+
+    /**
+     * Show the writes not committed yet: inserts as rows above the loaded ones, updates over the
+     * loaded rows of their units. Called again with what is still pending whenever that changes
+     * or a new cursor is swapped in.
+     */
+    void setPendingWrites(List<UnitWriteQueue.PendingWrite> writes) {
+        int oldCount = mPendingInserts.size();
+        mPendingInserts.clear();
+        for (UnitWriteQueue.PendingWrite write : writes) {
+            if (write.isInsert()) {
+                mPendingInserts.add(write);
+            }
+        }
+        int newCount = mPendingInserts.size();
+        if (Math.min(oldCount, newCount) > 0) {
+            notifyItemRangeChanged(0, Math.min(oldCount, newCount));
+        }
+        if (newCount > oldCount) {
+            notifyItemRangeInserted(oldCount, newCount - oldCount);
+        } else if (oldCount > newCount) {
+            notifyItemRangeRemoved(newCount, oldCount - newCount);
+        }
+
+        if (mCursor == null) {
+            return;
+        }
+        MatrixCursor updated = new MatrixCursor(UnitEntry.PROJECTION);
+        for (UnitWriteQueue.PendingWrite write : writes) {
+            if (write.isInsert()) {
+                continue;
+            }
+            int position = indexOf(ContentUris.parseId(write.getUri()));
+            if (position != -1) {
+                updated.addRow(overlay(moveToRow(position), write.getValues()));
+            }
+        }
+        if (updated.getCount() > 0) {
+            patchRows(updated);
+        }
+    }
+
+    /**
+     * Return the values of the row with the values of an update written over them, in the order
+     * of {@link UnitEntry#PROJECTION}.
+     */
+    private static Object[] overlay(UnitRowReader row, ContentValues values) {
+        return new Object[]{row.getId(),
+                values.containsKey(UnitEntry.COLUMN_UNIT_NAME)
+                        ? values.getAsString(UnitEntry.COLUMN_UNIT_NAME) : row.getName(),
+                values.containsKey(UnitEntry.COLUMN_UNIT_QUANTITY)
+                        ? values.getAsInteger(UnitEntry.COLUMN_UNIT_QUANTITY) : row.getQuantity(),
+                values.containsKey(UnitEntry.COLUMN_UNIT_PRICE)
+                        ? values.getAsLong(UnitEntry.COLUMN_UNIT_PRICE) : row.getPriceCents(),
+                values.containsKey(UnitEntry.COLUMN_UNIT_IMAGE_URI)
+                        ? values.getAsString(UnitEntry.COLUMN_UNIT_IMAGE_URI) : row.getImageUri(),
+                row.getThumbnailPath()};
+    }
+
+    @Override
+    public int getItemCount() {
+        return mPendingInserts.size() + getLoadedCount();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if (position < mPendingInserts.size()) {
+            return mPendingInserts.get(position).getId();
+        }
+        return loadedRow(position - mPendingInserts.size()).getId();
+    }
+
+    /**
+     * Move to the loaded row with the given index, in the cursor or the appended pages, and return
+     * the reader for it, ignoring patches.
+     */
+    private UnitRowReader loadedRow(int index) {
+        if (index < mCursor.getCount()) {
+            mCursor.moveToPosition(index);
+            return mRow;
+        }
+        mAppendedRows.moveToPosition(index - mCursor.getCount());
+        return mAppendedRow;
+    }
+
+    /**
+     * Select the loaded unit with the given _id if it isn't selected, or unselect it.
+     */
+    void toggleSelected(long id) {
+        if (!mSelectedIds.remove(id)) {
+            mSelectedIds.add(id);
+        }
+        int position = indexOf(id);
+        if (position != -1) {
+            notifyItemChanged(position);
+        }
+    }
+
+    /**
+     * Return the _ids of the selected units.
+     */
+    long[] getSelectedIds() {
+        long[] ids = new long[mSelectedIds.size()];
+        int i = 0;
+        for (long id : mSelectedIds) {
+            ids[i++] = id;
+        }
+        return ids;
+    }
+
+    int getSelectedCount() {
+        return mSelectedIds.size();
+    }
+
+    /**
+     * Unselect every unit.
+     */
+    void clearSelection() {
+        for (long id : mSelectedIds) {
+            int position = indexOf(id);
+            if (position != -1) {
+                notifyItemChanged(position);
+            }
+        }
+        mSelectedIds.clear();
+    }
+
+    /**
+     * Unselect the units that are no longer loaded, after a new cursor is swapped in.
+     *
+     * @return true if any was unselected
+     */
+    boolean retainShownSelection() {
+        boolean changed = false;
+        Iterator<Long> ids = mSelectedIds.iterator();
+        while (ids.hasNext()) {
+            if (indexOf(ids.next()) == -1) {
+                ids.remove();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Return true if the unit with the given _id is one of the loaded rows.
+     */
+    boolean isShown(long id) {
+        return indexOf(id) != -1;
+    }
+
+    /**
+     * Show the rows of the given cursor, read with {@link UnitContract.UnitEntry#PROJECTION},
+     * instead of the loaded rows with the same _id, and rebind only those rows. Rows that aren't
+     * loaded are ignored. Doesn't keep the cursor.
+     */
+    void patchRows(Cursor rows) {
+        MatrixCursor patched = new MatrixCursor(UnitContract.UnitEntry.PROJECTION,
+                mPatchedPositions.size() + rows.getCount());
+        LongSparseArray<Integer> positions = new LongSparseArray<>();
+        List<Integer> changedPositions = new ArrayList<>();
+
+        UnitRowReader row = new UnitRowReader(rows);
+        rows.moveToPosition(-1);
+        while (rows.moveToNext()) {
+            int position = indexOf(row.getId());
+            if (position != -1) {
+                positions.put(row.getId(), patched.getCount());
+                addRow(patched, row);
+                changedPositions.add(position);
+            }
+        }
+        // Keep the earlier patches of rows that didn't change again
+        if (mPatchedRows != null) {
+            for (int i = 0; i < mPatchedPositions.size(); i++) {
+                long id = mPatchedPositions.keyAt(i);
+                if (positions.indexOfKey(id) < 0) {
+                    mPatchedRows.moveToPosition(mPatchedPositions.valueAt(i));
+                    positions.put(id, patched.getCount());
+                    addRow(patched, mPatchedRow);
+                }
+            }
+        }
+
+        mPatchedRows = patched;
+        mPatchedRow = new UnitRowReader(patched);
+        mPatchedPositions.clear();
+        for (int i = 0; i < positions.size(); i++) {
+            mPatchedPositions.put(positions.keyAt(i), positions.valueAt(i));
+        }
+        for (int position : changedPositions) {
+            notifyItemChanged(position);
+        }
+    }
+
+    private static void addRow(MatrixCursor cursor, UnitRowReader row) {
+        cursor.addRow(new Object[]{row.getId(), row.getName(), row.getQuantity(),
+                row.getPriceCents(), row.getImageUri(), row.getThumbnailPath()});
+    }
+
+    /**
+     * Return the position of the loaded row with the given _id, or -1.
+     */
+    private int indexOf(long id) {
+        if (mSnapshot != null) {
+            int index = mSnapshot.indexOf(id);
+            if (index != -1) {
+                return mPendingInserts.size() + index;
+            }
+            Integer appended = mAppendedPositions.get(id);
+            return appended == null ? -1 : mPendingInserts.size() + mCursor.getCount() + appended;
+        }
+        for (int position = mPendingInserts.size(); position < getItemCount(); position++) {
+            if (getItemId(position) == id) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Move to the loaded row shown at the given position and return the reader for it, which is
+     * the patched row if there is one.
+     */
+    private UnitRowReader moveToRow(int position) {
+        UnitRowReader row = loadedRow(position - mPendingInserts.size());
+        if (mPatchedRows != null) {
+            Integer patchedPosition = mPatchedPositions.get(row.getId());
+            if (patchedPosition != null) {
+                mPatchedRows.moveToPosition(patchedPosition);
+                return mPatchedRow;
+            }
+        }
+        return row;
+    }
+
+    @Override
+    public UnitViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_list, parent, false);
+        UnitViewHolder holder = new UnitViewHolder(view);
+        view.setTag(holder);
+        view.setOnClickListener(mClickListener);
+        view.setOnLongClickListener(mLongClickListener);
+        holder.buyOne.setTag(holder);
+        holder.buyOne.setOnClickListener(mClickListener);
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(UnitViewHolder holder, int position) {
+        if (position < mPendingInserts.size()) {
+            bindPendingInsert(holder, mPendingInserts.get(position));
+            return;
+        }
+        holder.itemView.setAlpha(1f);
+        holder.buyOne.setVisibility(View.VISIBLE);
+        UnitRowReader row = moveToRow(position);
+        setSelected(holder, mSelectedIds.contains(row.getId()));
+
+        holder.name.setText(row.getName());
+        holder.quantity.setText(String.valueOf(row.getQuantity()));
+        holder.price.setText(UnitPrice.format(row.getPriceCents()));
+
+        // Prefer the local thumbnail over the original image
+        String thumbnailPath = row.getThumbnailPath();
+        String imageUri = thumbnailPath != null
+                ? Uri.fromFile(new File(thumbnailPath)).toString()
+                : row.getImageUri();
+        mImageLoader.load(imageUri, holder.image, mImageSize, mImageSize);
+    }
+
+    /**
+     * Show a unit that hasn't been written yet, faded, without a "buy one" button.
+     */
+    private void bindPendingInsert(UnitViewHolder holder, UnitWriteQueue.PendingWrite write) {
+        ContentValues values = write.getValues();
+        Integer quantity = values.getAsInteger(UnitEntry.COLUMN_UNIT_QUANTITY);
+        Long priceCents = values.getAsLong(UnitEntry.COLUMN_UNIT_PRICE);
+        holder.itemView.setAlpha(write.isFailed() ? FAILED_ALPHA : PENDING_ALPHA);
+        setSelected(holder, false);
+        holder.buyOne.setVisibility(View.INVISIBLE);
+        holder.name.setText(values.getAsString(UnitEntry.COLUMN_UNIT_NAME));
+        holder.quantity.setText(String.valueOf(quantity == null ? 0 : quantity));
+        holder.price.setText(UnitPrice.format(priceCents == null ? 0 : priceCents));
+        mImageLoader.load(values.getAsString(UnitEntry.COLUMN_UNIT_IMAGE_URI), holder.image,
+                mImageSize, mImageSize);
+    }
+
+    private void setSelected(UnitViewHolder holder, boolean selected) {
+        if (holder.itemView.isActivated() == selected) {
+            return;
+        }
+        holder.itemView.setActivated(selected);
+        if (selected) {
+            holder.itemView.setBackgroundResource(R.color.unitSelectedBackground);
+        } else {
+            holder.itemView.setBackgroundResource(mRowBackground);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(UnitViewHolder holder) {
+        mImageLoader.cancel(holder.image);
+    }
+
+    /**
+     * Caches the views of one list row.
+     */
+    static class UnitViewHolder extends RecyclerView.ViewHolder {
+
+        final TextView name;
+        final TextView quantity;
+        final TextView price;
+        final ImageView buyOne;
+        final ImageView image;
+
+        UnitViewHolder(View itemView) {
+            super(itemView);
+            name = (TextView) itemView.findViewById(R.id.name);
+            quantity = (TextView) itemView.findViewById(R.id.quantity);
+            price = (TextView) itemView.findViewById(R.id.price);
+            buyOne = (ImageView) itemView.findViewById(R.id.buy_one);
+            image = (ImageView) itemView.findViewById(R.id.unit_image_view);
+        }
+    }
+}
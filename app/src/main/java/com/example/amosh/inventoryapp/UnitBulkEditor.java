@@ -0,0 +1,146 @@
+package com.example.amosh.inventoryapp;
+
+import android.content.Context;
+import android.database.SQLException;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.amosh.inventoryapp.data.UnitContract;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sends changes to a selection of units to the
+ * {@link com.example.amosh.inventoryapp.data.UnitProvider} on a background thread. Each change is a
+ * single provider call, which the provider applies with one set-based statement in one transaction
+ * and notifies once, so the list reloads once however many units were selected.
+ */
+public class UnitBulkEditor {
+
+    private static final String LOG_TAG = UnitBulkEditor.class.getSimpleName();
+
+    /**
+     * Told on the main thread how each change went.
+     */
+    public interface Listener {
+
+        /** The change was written to the given number of units */
+        void onFinished(int rowsAffected);
+
+        /** The change was rejected or couldn't be written, and no unit was changed */
+        void onFailed(Exception e);
+    }
+
+    private final Context mContext;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Only touched on the main thread */
+    private Listener mListener;
+
+    public UnitBulkEditor(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Set the listener told about the results of changes, or null. Call on the main thread.
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Change the prices of the units with the given ids by the given hundredths of a percent.
+     */
+    public void reprice(long[] ids, int basisPoints) {
+        Bundle extras = new Bundle();
+        extras.putLongArray(UnitContract.EXTRA_UNIT_IDS, ids);
+        extras.putInt(UnitContract.EXTRA_BASIS_POINTS, basisPoints);
+        call(UnitContract.METHOD_REPRICE_UNITS, extras);
+    }
+
+    /**
+     * Add {@code count} to the quantity of each unit with the given ids.
+     */
+    public void restock(long[] ids, int count) {
+        Bundle extras = new Bundle();
+        extras.putLongArray(UnitContract.EXTRA_UNIT_IDS, ids);
+        extras.putInt(UnitContract.EXTRA_COUNT, count);
+        call(UnitContract.METHOD_RESTOCK_UNITS, extras);
+    }
+
+    /**
+     * Delete the units with the given ids, and then their thumbnails.
+     */
+    public void delete(long[] ids) {
+        Bundle extras = new Bundle();
+        extras.putLongArray(UnitContract.EXTRA_UNIT_IDS, ids);
+        call(UnitContract.METHOD_DELETE_UNITS, extras);
+    }
+
+    private void call(final String method, final Bundle extras) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bundle result;
+                try {
+                    result = mContext.getContentResolver().call(UnitEntry.CONTENT_URI, method,
+                            null, extras);
+                } catch (SQLException | IllegalArgumentException e) {
+                    Log.e(LOG_TAG, "Failed to " + method, e);
+                    postFailed(e);
+                    return;
+                }
+                if (result == null) {
+                    postFailed(new IllegalStateException(method + " returned nothing"));
+                    return;
+                }
+                String[] thumbnailPaths = result.getStringArray(UnitContract.EXTRA_THUMBNAIL_PATHS);
+                if (thumbnailPaths != null) {
+                    UnitThumbnailStore thumbnailStore = UnitThumbnailStore.getInstance(mContext);
+                    for (String thumbnailPath : thumbnailPaths) {
+                        thumbnailStore.delete(thumbnailPath);
+                    }
+                }
+                postFinished(result.getInt(UnitContract.EXTRA_ROWS_AFFECTED));
+            }
+        });
+    }
+
+    private void postFinished(final int rowsAffected) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mListener != null) {
+                    mListener.onFinished(rowsAffected);
+                }
+            }
+        });
+    }
+
+    private void postFailed(final Exception e) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mListener != null) {
+                    mListener.onFailed(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop accepting new changes and stop telling the listener. Changes that are already queued
+     * are still written.
+     */
+    public void shutdown() {
+        mListener = null;
+        mExecutor.shutdown();
+    }
+}
@@ -0,0 +1,439 @@
+package com.example.amosh.inventoryapp;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.OpenableColumns;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+import com.example.amosh.inventoryapp.data.UnitPrice;
+
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Imports supplier catalogs from CSV files into the
+ * {@link com.example.amosh.inventoryapp.data.UnitProvider}. The file is streamed record by record
+ * and written in chunks of {@link #CHUNK_ROWS} units, one bulk insert transaction each, so memory
+ * use doesn't depend on the size of the file.
+ *
+ * <p>The first record names the columns: name, quantity and price are required, image_uri is
+ * optional and other columns are ignored. Prices are decimal amounts such as "12.50". Records that
+ * aren't valid units are skipped and counted.
+ *
+ * <p>After every chunk the number of records consumed is saved, so an import interrupted by the
+ * process dying resumes where it stopped with {@link #resumeInterrupted()}. A chunk committed right
+ * before the process died but not yet saved as progress is imported again.
+ */
+public class UnitCsvImporter {
+
+    private static final String LOG_TAG = UnitCsvImporter.class.getSimpleName();
+
+    /** Units written per bulk insert transaction */
+    private static final int CHUNK_ROWS = 500;
+
+    /** Name of the preferences holding the progress of the running import */
+    private static final String PREFERENCES_NAME = "unit_csv_import";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String KEY_SOURCE = "source";
+    private static final String KEY_RECORDS_DONE = "records_done";
+    private static final String KEY_ROWS_IMPORTED = "rows_imported";
+    private static final String KEY_ROWS_SKIPPED = "rows_skipped";
+
+    /**
+     * Receives the progress of an import, on the main thread.
+     */
+    public interface Listener {
+
+        /**
+         * Called after every chunk written.
+         *
+         * @param bytesRead  bytes of the file read so far
+         * @param totalBytes size of the file, or -1 if it isn't known
+         */
+        void onProgress(long rowsImported, long rowsSkipped, long bytesRead, long totalBytes);
+
+        /**
+         * Called once the whole file has been imported.
+         */
+        void onFinished(long rowsImported, long rowsSkipped);
+
+        /**
+         * Called when the file can't be read or isn't a catalog. If it failed while reading, the
+         * import can be resumed later.
+         */
+        void onFailed(Uri source, Exception e);
+    }
+
+    private static UnitCsvImporter sInstance;
+
+    private final Context mContext;
+
+    private final ContentResolver mContentResolver;
+
+    private final SharedPreferences mPreferences;
+
+    /** Imports run one at a time */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Only read and written on the main thread */
+    private Listener mListener;
+
+    /** Source of the import queued or running, or null. Only used on the main thread. */
+    private Uri mRunningSource;
+
+    /**
+     * Return the app wide importer.
+     */
+    public static synchronized UnitCsvImporter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new UnitCsvImporter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private UnitCsvImporter(Context context) {
+        mContext = context;
+        mContentResolver = context.getContentResolver();
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Set the listener told about the progress of imports, or null to stop telling. Must be called
+     * on the main thread.
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Return whether an import is queued or running.
+     */
+    public boolean isRunning() {
+        return mRunningSource != null;
+    }
+
+    /**
+     * Import the given CSV file in the background. If an interrupted import of the same file was
+     * saved, it resumes instead of starting over. Does nothing while another import runs. Must be
+     * called on the main thread.
+     */
+    public void start(Uri source) {
+        if (isRunning()) {
+            return;
+        }
+        if (!source.toString().equals(mPreferences.getString(KEY_SOURCE, null))) {
+            mPreferences.edit()
+                    .clear()
+                    .putString(KEY_SOURCE, source.toString())
+                    .apply();
+        }
+        run(source);
+    }
+
+    /**
+     * Resume the import that was running when the process last died, if any. Must be called on
+     * the main thread.
+     */
+    public void resumeInterrupted() {
+        String source = mPreferences.getString(KEY_SOURCE, null);
+        if (source != null && !isRunning()) {
+            run(Uri.parse(source));
+        }
+    }
+
+    private void run(final Uri source) {
+        mRunningSource = source;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                importFile(source);
+            }
+        });
+    }
+
+    private void importFile(Uri source) {
+        long recordsDone = mPreferences.getLong(KEY_RECORDS_DONE, 0);
+        long rowsImported = mPreferences.getLong(KEY_ROWS_IMPORTED, 0);
+        long rowsSkipped = mPreferences.getLong(KEY_ROWS_SKIPPED, 0);
+        long totalBytes = querySize(source);
+
+        CountingInputStream input;
+        try {
+            InputStream stream = mContentResolver.openInputStream(source);
+            if (stream == null) {
+                throw new FileNotFoundException("Cannot open " + source);
+            }
+            input = new CountingInputStream(stream);
+        } catch (FileNotFoundException | SecurityException e) {
+            // The file is gone or we lost the permission to read it, there is nothing to resume
+            finish(source);
+            postFailed(source, e);
+            return;
+        }
+
+        UnitCsvReader reader = new UnitCsvReader(new InputStreamReader(input, UTF_8));
+        try {
+            String[] header = reader.readRecord();
+            int[] columns = header == null ? null : mapColumns(header);
+            if (columns == null) {
+                throw new IllegalArgumentException(source + " has no name, quantity and price columns");
+            }
+
+            // Skip the records written before the import was interrupted, the header included
+            long records = 1;
+            while (records < recordsDone && reader.readRecord() != null) {
+                records++;
+            }
+
+            ContentValues[] chunk = new ContentValues[CHUNK_ROWS];
+            int chunkSize = 0;
+            String[] record;
+            while ((record = reader.readRecord()) != null) {
+                records++;
+                ContentValues values = parseUnit(record, columns);
+                if (values == null) {
+                    rowsSkipped++;
+                } else {
+                    chunk[chunkSize++] = values;
+                }
+                if (chunkSize == CHUNK_ROWS) {
+                    rowsImported += mContentResolver.bulkInsert(UnitEntry.CONTENT_URI, chunk);
+                    Arrays.fill(chunk, null);
+                    chunkSize = 0;
+                    saveProgress(records, rowsImported, rowsSkipped);
+                    postProgress(rowsImported, rowsSkipped, input.getCount(), totalBytes);
+                }
+            }
+            if (chunkSize > 0) {
+                rowsImported += mContentResolver.bulkInsert(UnitEntry.CONTENT_URI,
+                        Arrays.copyOf(chunk, chunkSize));
+            }
+            finish(source);
+            postFinished(rowsImported, rowsSkipped);
+        } catch (IOException | SQLiteException e) {
+            // Keep the progress, so the import can be resumed
+            Log.e(LOG_TAG, "Failed to read " + source, e);
+            postFailed(source, e);
+        } catch (IllegalArgumentException e) {
+            Log.e(LOG_TAG, "Failed to import " + source, e);
+            finish(source);
+            postFailed(source, e);
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Nothing left to read
+            }
+        }
+        // Imported rows have no thumbnails yet
+        UnitThumbnailStore.getInstance(mContext).backfillAsync();
+    }
+
+    /**
+     * Return the index of the name, quantity, price and image_uri columns in the given header, -1
+     * for a missing image_uri, or null if a required column is missing.
+     */
+    private static int[] mapColumns(String[] header) {
+        String[] names = {
+                UnitEntry.COLUMN_UNIT_NAME,
+                UnitEntry.COLUMN_UNIT_QUANTITY,
+                UnitEntry.COLUMN_UNIT_PRICE,
+                UnitEntry.COLUMN_UNIT_IMAGE_URI};
+        int[] columns = new int[names.length];
+        Arrays.fill(columns, -1);
+        for (int i = 0; i < header.length; i++) {
+            String column = header[i].trim().toLowerCase(Locale.US);
+            for (int j = 0; j < names.length; j++) {
+                if (names[j].equals(column) && columns[j] == -1) {
+                    columns[j] = i;
+                }
+            }
+        }
+        return columns[0] == -1 || columns[1] == -1 || columns[2] == -1 ? null : columns;
+    }
+
+    /**
+     * Return the values of the unit in the given record, or null if it isn't a valid unit.
+     */
+    private static ContentValues parseUnit(String[] record, int[] columns) {
+        String name = field(record, columns[0]);
+        String quantityText = field(record, columns[1]);
+        String priceText = field(record, columns[2]);
+        String imageUri = field(record, columns[3]);
+        if (TextUtils.isEmpty(name) || TextUtils.isEmpty(quantityText)
+                || TextUtils.isEmpty(priceText)) {
+            return null;
+        }
+        ContentValues values = new ContentValues();
+        try {
+            int quantity = Integer.parseInt(quantityText);
+            if (quantity < 0) {
+                return null;
+            }
+            values.put(UnitEntry.COLUMN_UNIT_QUANTITY, quantity);
+            values.put(UnitEntry.COLUMN_UNIT_PRICE, UnitPrice.parseCents(priceText));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        values.put(UnitEntry.COLUMN_UNIT_NAME, name);
+        if (!TextUtils.isEmpty(imageUri)) {
+            values.put(UnitEntry.COLUMN_UNIT_IMAGE_URI, imageUri);
+        }
+        return values;
+    }
+
+    /** Return the trimmed field at the given index, or null if the record doesn't have it */
+    private static String field(String[] record, int index) {
+        return index < 0 || index >= record.length ? null : record[index].trim();
+    }
+
+    /**
+     * Return the size of the file in bytes, or -1 if its provider doesn't tell.
+     */
+    private long querySize(Uri source) {
+        Cursor cursor = null;
+        try {
+            cursor = mContentResolver.query(source, new String[]{OpenableColumns.SIZE},
+                    null, null, null);
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } catch (RuntimeException e) {
+            // Not every provider answers queries, the progress is just indeterminate then
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return -1;
+    }
+
+    private void saveProgress(long recordsDone, long rowsImported, long rowsSkipped) {
+        // Written synchronously, the next chunk must not start before the progress is on disk
+        mPreferences.edit()
+                .putLong(KEY_RECORDS_DONE, recordsDone)
+                .putLong(KEY_ROWS_IMPORTED, rowsImported)
+                .putLong(KEY_ROWS_SKIPPED, rowsSkipped)
+                .commit();
+    }
+
+    /**
+     * Forget the progress of the import and the permission to read its file.
+     */
+    private void finish(Uri source) {
+        mPreferences.edit().clear().commit();
+        if (Build.VERSION.SDK_INT >= 19) {
+            try {
+                mContentResolver.releasePersistableUriPermission(source,
+                        Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            } catch (SecurityException e) {
+                // The file was picked without a persistable permission
+            }
+        }
+    }
+
+    private void postProgress(final long rowsImported, final long rowsSkipped,
+                              final long bytesRead, final long totalBytes) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mListener != null) {
+                    mListener.onProgress(rowsImported, rowsSkipped, bytesRead, totalBytes);
+                }
+            }
+        });
+    }
+
+    private void postFinished(final long rowsImported, final long rowsSkipped) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mRunningSource = null;
+                if (mListener != null) {
+                    mListener.onFinished(rowsImported, rowsSkipped);
+                }
+            }
+        });
+    }
+
+    private void postFailed(final Uri source, final Exception e) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mRunningSource = null;
+                if (mListener != null) {
+                    mListener.onFailed(source, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Counts the bytes read through it, for the progress of the import.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
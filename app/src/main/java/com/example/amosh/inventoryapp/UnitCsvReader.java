@@ -0,0 +1,89 @@
+package com.example.amosh.inventoryapp;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads comma separated records one at a time from a character stream, so only the current record
+ * is ever held in memory. Fields may be quoted with double quotes, in which case they can contain
+ * commas, line breaks and doubled quotes. Blank lines are skipped.
+ */
+class UnitCsvReader implements Closeable {
+
+    private final BufferedReader mReader;
+
+    /** Characters of the field being read, reused for every field */
+    private final StringBuilder mField = new StringBuilder();
+
+    /** Fields of the record being read, reused for every record */
+    private final List<String> mRecord = new ArrayList<>();
+
+    UnitCsvReader(Reader reader) {
+        mReader = reader instanceof BufferedReader
+                ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    /**
+     * Return the fields of the next record, or null at the end of the stream.
+     */
+    String[] readRecord() throws IOException {
+        mRecord.clear();
+        mField.setLength(0);
+        boolean inQuotes = false;
+        boolean hasRecord = false;
+        int c;
+        while ((c = mReader.read()) != -1) {
+            hasRecord = true;
+            if (inQuotes) {
+                if (c != '"') {
+                    mField.append((char) c);
+                } else if (peek() == '"') {
+                    // A doubled quote inside quotes is a literal quote
+                    mReader.read();
+                    mField.append('"');
+                } else {
+                    inQuotes = false;
+                }
+            } else if (c == '"' && mField.length() == 0) {
+                inQuotes = true;
+            } else if (c == ',') {
+                mRecord.add(mField.toString());
+                mField.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && peek() == '\n') {
+                    mReader.read();
+                }
+                if (mRecord.isEmpty() && mField.length() == 0) {
+                    // Blank line
+                    hasRecord = false;
+                    continue;
+                }
+                break;
+            } else {
+                mField.append((char) c);
+            }
+        }
+        if (!hasRecord) {
+            return null;
+        }
+        mRecord.add(mField.toString());
+        return mRecord.toArray(new String[mRecord.size()]);
+    }
+
+    /** Return the next character without consuming it, or -1 at the end of the stream */
+    private int peek() throws IOException {
+        mReader.mark(1);
+        int c = mReader.read();
+        mReader.reset();
+        return c;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
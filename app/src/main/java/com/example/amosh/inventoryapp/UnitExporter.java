@@ -0,0 +1,352 @@
+package com.example.amosh.inventoryapp;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.amosh.inventoryapp.data.UnitContract;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+import com.example.amosh.inventoryapp.data.UnitPrice;
+import com.example.amosh.inventoryapp.data.UnitRowReader;
+
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports every unit of the {@link com.example.amosh.inventoryapp.data.UnitProvider} to a CSV or
+ * JSON file, optionally gzipped. Units are read in pages of {@link #PAGE_SIZE} with keyset paging
+ * and written straight to a buffered stream, so memory use stays the same however many units
+ * there are. The columns are those of {@link UnitEntry#PROJECTION}, with prices written as decimal
+ * amounts, so an exported CSV file can be imported again with {@link UnitCsvImporter}.
+ */
+public class UnitExporter {
+
+    private static final String LOG_TAG = UnitExporter.class.getSimpleName();
+
+    /** Comma separated values, with a header row of column names */
+    public static final int FORMAT_CSV = 0;
+
+    /** A JSON array with one object per unit */
+    public static final int FORMAT_JSON = 1;
+
+    /** Units read per query */
+    private static final int PAGE_SIZE = 1000;
+
+    /** Size of the buffer between the writer and the file, in characters */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Receives the progress of an export, on the main thread. Dividing the rows or bytes by the
+     * elapsed time gives the throughput.
+     */
+    public interface Listener {
+
+        /**
+         * Called after every page written.
+         *
+         * @param bytesWritten bytes written to the file so far, after compression
+         * @param elapsedNanos time since the export started
+         */
+        void onProgress(long rowsWritten, long bytesWritten, long elapsedNanos);
+
+        /**
+         * Called once every unit has been written and the file closed.
+         */
+        void onFinished(long rowsWritten, long bytesWritten, long elapsedNanos);
+
+        /**
+         * Called when the file can't be written. It may be left incomplete.
+         */
+        void onFailed(Uri destination, Exception e);
+    }
+
+    private static UnitExporter sInstance;
+
+    private final ContentResolver mContentResolver;
+
+    /** Exports run one at a time */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Only read and written on the main thread */
+    private Listener mListener;
+
+    /**
+     * Return the app wide exporter.
+     */
+    public static synchronized UnitExporter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new UnitExporter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private UnitExporter(Context context) {
+        mContentResolver = context.getContentResolver();
+    }
+
+    /**
+     * Set the listener told about the progress of exports, or null to stop telling. Must be called
+     * on the main thread.
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Export every unit to the given document or file in the background.
+     *
+     * @param format {@link #FORMAT_CSV} or {@link #FORMAT_JSON}
+     * @param gzip   whether to compress the file with gzip
+     */
+    public void export(final Uri destination, final int format, final boolean gzip) {
+        if (format != FORMAT_CSV && format != FORMAT_JSON) {
+            throw new IllegalArgumentException("Unknown export format " + format);
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                exportUnits(destination, format, gzip);
+            }
+        });
+    }
+
+    private void exportUnits(Uri destination, int format, boolean gzip) {
+        long start = System.nanoTime();
+        long rowsWritten = 0;
+        CountingOutputStream output = null;
+        Writer writer = null;
+        try {
+            OutputStream stream = mContentResolver.openOutputStream(destination, "w");
+            if (stream == null) {
+                throw new FileNotFoundException("Cannot open " + destination);
+            }
+            output = new CountingOutputStream(stream);
+            OutputStream encoded = gzip ? new GZIPOutputStream(output, BUFFER_SIZE) : output;
+            writer = new BufferedWriter(new OutputStreamWriter(encoded, UTF_8), BUFFER_SIZE);
+
+            writeHeader(writer, format);
+            long lastId = Long.MIN_VALUE;
+            while (true) {
+                Uri pageUri = UnitEntry.CONTENT_URI.buildUpon()
+                        .appendQueryParameter(UnitContract.QUERY_PARAMETER_AFTER_ID,
+                                String.valueOf(lastId))
+                        .appendQueryParameter(UnitContract.QUERY_PARAMETER_LIMIT,
+                                String.valueOf(PAGE_SIZE))
+                        .build();
+                Cursor cursor = mContentResolver.query(pageUri, UnitEntry.PROJECTION,
+                        null, null, null);
+                if (cursor == null) {
+                    throw new IOException("Query of " + pageUri + " failed");
+                }
+                int pageRows = 0;
+                try {
+                    UnitRowReader row = new UnitRowReader(cursor);
+                    while (cursor.moveToNext()) {
+                        writeRow(writer, format, row, rowsWritten == 0);
+                        lastId = row.getId();
+                        rowsWritten++;
+                        pageRows++;
+                    }
+                } finally {
+                    cursor.close();
+                }
+                if (pageRows < PAGE_SIZE) {
+                    break;
+                }
+                postProgress(rowsWritten, output.getCount(), System.nanoTime() - start);
+            }
+            writeFooter(writer, format);
+            writer.close();
+            writer = null;
+            long bytesWritten = output.getCount();
+            output = null;
+            postFinished(rowsWritten, bytesWritten, System.nanoTime() - start);
+        } catch (IOException | SecurityException | SQLiteException e) {
+            Log.e(LOG_TAG, "Failed to export units to " + destination, e);
+            postFailed(destination, e);
+        } finally {
+            closeQuietly(writer != null ? writer : output);
+        }
+    }
+
+    private static void writeHeader(Writer writer, int format) throws IOException {
+        if (format == FORMAT_JSON) {
+            writer.write('[');
+            return;
+        }
+        for (int i = 0; i < UnitEntry.PROJECTION.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(UnitEntry.PROJECTION[i]);
+        }
+        writer.write('\n');
+    }
+
+    private static void writeFooter(Writer writer, int format) throws IOException {
+        if (format == FORMAT_JSON) {
+            writer.write("]\n");
+        }
+    }
+
+    /**
+     * Write the current row of the reader, in the order of {@link UnitEntry#PROJECTION}.
+     */
+    private static void writeRow(Writer writer, int format, UnitRowReader row, boolean first)
+            throws IOException {
+        String[] values = {
+                String.valueOf(row.getId()),
+                row.getName(),
+                String.valueOf(row.getQuantity()),
+                UnitPrice.format(row.getPriceCents()),
+                row.getImageUri(),
+                row.getThumbnailPath()};
+        if (format == FORMAT_JSON) {
+            writer.write(first ? "\n{" : ",\n{");
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(JSONObject.quote(UnitEntry.PROJECTION[i]));
+                writer.write(':');
+                // _id, quantity and price are numbers, the other columns strings or null
+                boolean number = i == 0 || i == 2 || i == 3;
+                writer.write(number || values[i] == null ? String.valueOf(values[i])
+                        : JSONObject.quote(values[i]));
+            }
+            writer.write('}');
+            return;
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeCsvField(writer, values[i]);
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Write a CSV field, quoted if it contains a separator, a quote or a line break. Null is
+     * written as an empty field.
+     */
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // The export already failed
+        }
+    }
+
+    private void postProgress(final long rowsWritten, final long bytesWritten,
+                              final long elapsedNanos) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mListener != null) {
+                    mListener.onProgress(rowsWritten, bytesWritten, elapsedNanos);
+                }
+            }
+        });
+    }
+
+    private void postFinished(final long rowsWritten, final long bytesWritten,
+                              final long elapsedNanos) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mListener != null) {
+                    mListener.onFinished(rowsWritten, bytesWritten, elapsedNanos);
+                }
+            }
+        });
+    }
+
+    private void postFailed(final Uri destination, final Exception e) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mListener != null) {
+                    mListener.onFailed(destination, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Counts the bytes written through it, for the throughput of the export.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long mCount;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            // FilterOutputStream would write the bytes one at a time
+            out.write(buffer, offset, length);
+            mCount += length;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.amosh.inventoryapp;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.text.TextUtils;
+import android.util.Log;
+import android.widget.ImageView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads unit images into ImageViews. Images are decoded off the UI thread, downsampled to the size
+ * they are shown at and kept in a memory cache sized from the available heap. Loading a new image
+ * into a view cancels the load still pending for it, so recycled list rows never show stale images.
+ */
+public class UnitImageLoader {
+
+    private static final String LOG_TAG = UnitImageLoader.class.getSimpleName();
+
+    /** Share of the maximum heap the bitmap cache may use */
+    private static final int CACHE_HEAP_DIVISOR = 8;
+
+    /** Number of images decoded in parallel */
+    private static final int DECODE_THREADS = 2;
+
+    private static UnitImageLoader sInstance;
+
+    private final ContentResolver mContentResolver;
+
+    private final LruCache<String, Bitmap> mCache;
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(DECODE_THREADS);
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Return the app wide image loader, so every screen shares one cache.
+     */
+    public static synchronized UnitImageLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new UnitImageLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private UnitImageLoader(Context context) {
+        mContentResolver = context.getContentResolver();
+        int cacheBytes = (int) (Runtime.getRuntime().maxMemory() / CACHE_HEAP_DIVISOR);
+        mCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        };
+    }
+
+    /**
+     * Show the image at the given URI in the view, decoded to roughly the given size in pixels.
+     * A null or empty URI clears the view.
+     */
+    public void load(String uriString, ImageView view, int width, int height) {
+        cancel(view);
+        if (TextUtils.isEmpty(uriString)) {
+            view.setImageDrawable(null);
+            return;
+        }
+
+        String key = uriString + "@" + width + "x" + height;
+        Bitmap cached = mCache.get(key);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+
+        view.setImageDrawable(null);
+        DecodeTask task = new DecodeTask(key, Uri.parse(uriString), view, width, height);
+        view.setTag(R.id.unit_image_task, task);
+        task.mFuture = mExecutor.submit(task);
+    }
+
+    /**
+     * Cancel the load pending for the given view, if any.
+     */
+    public void cancel(ImageView view) {
+        Object tag = view.getTag(R.id.unit_image_task);
+        if (tag instanceof DecodeTask) {
+            ((DecodeTask) tag).cancel();
+            view.setTag(R.id.unit_image_task, null);
+        }
+    }
+
+    /**
+     * Decode the image at the given URI with the largest power of two sample size that keeps it at
+     * least as big as the requested size. Returns null if the image can't be read.
+     */
+    static Bitmap decodeSampled(ContentResolver contentResolver, Uri uri, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        try {
+            // First only read the image bounds, to pick the sample size
+            options.inJustDecodeBounds = true;
+            InputStream bounds = contentResolver.openInputStream(uri);
+            try {
+                BitmapFactory.decodeStream(bounds, null, options);
+            } finally {
+                bounds.close();
+            }
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                    width, height);
+            options.inJustDecodeBounds = false;
+            InputStream image = contentResolver.openInputStream(uri);
+            try {
+                return BitmapFactory.decodeStream(image, null, options);
+            } finally {
+                image.close();
+            }
+        } catch (IOException | SecurityException e) {
+            Log.e(LOG_TAG, "Failed to decode image " + uri, e);
+            return null;
+        }
+    }
+
+    static int calculateInSampleSize(int imageWidth, int imageHeight, int width, int height) {
+        int inSampleSize = 1;
+        if (width <= 0 || height <= 0) {
+            return inSampleSize;
+        }
+        while (imageWidth / (inSampleSize * 2) >= width && imageHeight / (inSampleSize * 2) >= height) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Decodes one image in the background and hands it to its view on the main thread, unless the
+     * view has been given another image in the meantime.
+     */
+    private class DecodeTask implements Runnable {
+
+        private final String mKey;
+        private final Uri mUri;
+        private final WeakReference<ImageView> mViewReference;
+        private final int mWidth;
+        private final int mHeight;
+
+        private volatile boolean mCancelled;
+        private Future<?> mFuture;
+
+        DecodeTask(String key, Uri uri, ImageView view, int width, int height) {
+            mKey = key;
+            mUri = uri;
+            mViewReference = new WeakReference<>(view);
+            mWidth = width;
+            mHeight = height;
+        }
+
+        void cancel() {
+            mCancelled = true;
+            if (mFuture != null) {
+                mFuture.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            final Bitmap bitmap = decodeSampled(mContentResolver, mUri, mWidth, mHeight);
+            if (bitmap == null) {
+                return;
+            }
+            mCache.put(mKey, bitmap);
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    ImageView view = mViewReference.get();
+                    if (mCancelled || view == null || view.getTag(R.id.unit_image_task) != DecodeTask.this) {
+                        return;
+                    }
+                    view.setTag(R.id.unit_image_task, null);
+                    view.setImageBitmap(bitmap);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.amosh.inventoryapp;
+
+import android.content.Context;
+import android.content.CursorLoader;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v7.util.DiffUtil;
+
+import com.example.amosh.inventoryapp.data.UnitContract;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+
+/**
+ * CursorLoader for the inventory list that also diffs every new result against the one delivered
+ * before it, on the loader's background thread. The adapter then only rebinds the rows that
+ * actually changed.
+ */
+public class UnitListLoader extends CursorLoader {
+
+    /** Snapshot of the last cursor delivered to the activity, written on the main thread */
+    private volatile UnitListSnapshot mDeliveredSnapshot;
+
+    public UnitListLoader(Context context, Uri uri, String[] projection, String sortOrder) {
+        super(context, uri, projection, null, null, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        // A change of URI that changes the order is followed by a reload, which drops this result
+        Uri uri = getUri();
+        String sortOrder = getSortOrder();
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        UnitListSnapshot snapshot = UnitListSnapshot.of(cursor);
+        UnitListSnapshot previous = mDeliveredSnapshot;
+        DiffUtil.DiffResult diff = previous == null ? null : previous.diff(snapshot);
+        return new DiffedCursor(cursor, snapshot, previous, diff, isIdOrdered(uri, sortOrder));
+    }
+
+    /**
+     * Return true if the given URI and sort order load every unit in _id order.
+     */
+    private static boolean isIdOrdered(Uri uri, String sortOrder) {
+        return UnitEntry.CONTENT_URI.getPath().equals(uri.getPath())
+                && uri.getQueryParameter(UnitContract.QUERY_PARAMETER_SORT) == null
+                && (UnitEntry._ID + " ASC").equals(sortOrder);
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (!isReset() && cursor instanceof DiffedCursor) {
+            mDeliveredSnapshot = ((DiffedCursor) cursor).getSnapshot();
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        mDeliveredSnapshot = null;
+    }
+
+    /**
+     * A loaded cursor together with its snapshot and the diff from the previously delivered one.
+     */
+    static class DiffedCursor extends CursorWrapper {
+
+        private final UnitListSnapshot mSnapshot;
+        private final UnitListSnapshot mBaseSnapshot;
+        private final DiffUtil.DiffResult mDiff;
+        private final boolean mIdOrdered;
+
+        DiffedCursor(Cursor cursor, UnitListSnapshot snapshot, UnitListSnapshot baseSnapshot,
+                     DiffUtil.DiffResult diff, boolean idOrdered) {
+            super(cursor);
+            mSnapshot = snapshot;
+            mBaseSnapshot = baseSnapshot;
+            mDiff = diff;
+            mIdOrdered = idOrdered;
+        }
+
+        UnitListSnapshot getSnapshot() {
+            return mSnapshot;
+        }
+
+        /** The snapshot {@link #getDiff()} starts from, or null if there is no diff */
+        UnitListSnapshot getBaseSnapshot() {
+            return mBaseSnapshot;
+        }
+
+        DiffUtil.DiffResult getDiff() {
+            return mDiff;
+        }
+
+        /** Whether the rows are every unit in _id order, so more follow after the last _id */
+        boolean isIdOrdered() {
+            return mIdOrdered;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.amosh.inventoryapp;
+
+import android.database.Cursor;
+import android.support.v7.util.DiffUtil;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+
+/**
+ * Immutable summary of the rows of a unit list cursor: the _id of every row and a hash of the
+ * columns a list row shows. Two snapshots are enough to diff two cursors without keeping either
+ * one open.
+ */
+class UnitListSnapshot {
+
+    /** Columns whose values are shown in a list row */
+    private static final String[] SHOWN_COLUMNS = {
+            UnitEntry.COLUMN_UNIT_NAME,
+            UnitEntry.COLUMN_UNIT_QUANTITY,
+            UnitEntry.COLUMN_UNIT_PRICE,
+            UnitEntry.COLUMN_UNIT_IMAGE_URI,
+            UnitEntry.COLUMN_UNIT_THUMBNAIL_PATH};
+
+    private final long[] mIds;
+    private final int[] mContentHashes;
+
+    private UnitListSnapshot(long[] ids, int[] contentHashes) {
+        mIds = ids;
+        mContentHashes = contentHashes;
+    }
+
+    /**
+     * Read a snapshot of every row of the cursor. Leaves the cursor before its first row.
+     */
+    static UnitListSnapshot of(Cursor cursor) {
+        int count = cursor.getCount();
+        long[] ids = new long[count];
+        int[] contentHashes = new int[count];
+
+        int idColumn = cursor.getColumnIndexOrThrow(UnitEntry._ID);
+        int[] shownColumns = new int[SHOWN_COLUMNS.length];
+        for (int i = 0; i < SHOWN_COLUMNS.length; i++) {
+            shownColumns[i] = cursor.getColumnIndex(SHOWN_COLUMNS[i]);
+        }
+
+        cursor.moveToPosition(-1);
+        int position = 0;
+        while (cursor.moveToNext()) {
+            ids[position] = cursor.getLong(idColumn);
+            int hash = 1;
+            for (int column : shownColumns) {
+                String value = column == -1 ? null : cursor.getString(column);
+                hash = 31 * hash + (value == null ? 0 : value.hashCode());
+            }
+            contentHashes[position] = hash;
+            position++;
+        }
+        cursor.moveToPosition(-1);
+        return new UnitListSnapshot(ids, contentHashes);
+    }
+
+    int size() {
+        return mIds.length;
+    }
+
+    /**
+     * Return the position of the row with the given _id, or -1 if there is none.
+     */
+    int indexOf(long id) {
+        for (int i = 0; i < mIds.length; i++) {
+            if (mIds[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compute the changes that turn this snapshot into the newer one.
+     */
+    DiffUtil.DiffResult diff(final UnitListSnapshot newer) {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return mIds.length;
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newer.mIds.length;
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return mIds[oldItemPosition] == newer.mIds[newItemPosition];
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return mContentHashes[oldItemPosition] == newer.mContentHashes[newItemPosition];
+            }
+        }, false);
+    }
+}
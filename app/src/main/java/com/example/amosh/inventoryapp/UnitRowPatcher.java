@@ -0,0 +1,163 @@
+package com.example.amosh.inventoryapp;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.support.v4.util.LongSparseArray;
+import android.text.TextUtils;
+
+import com.example.amosh.inventoryapp.data.UnitContract;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the rows of the inventory list fresh when single units change. {@link
+ * com.example.amosh.inventoryapp.data.UnitProvider} notifies those changes on the unit's own URI,
+ * which the list loader doesn't observe. This observer collects the changed ids, re-queries just
+ * the ones on screen and patches them into the {@link UnitAdapter}, instead of the loader reloading
+ * every loaded row.
+ *
+ * <p>Patched rows keep their position until the next full reload, even if the change affects
+ * the sort order or the search. Before API 16 observers aren't told which URI changed, so every
+ * notification falls back to a full reload.
+ */
+class UnitRowPatcher extends ContentObserver {
+
+    /** Time to collect row changes before querying them, in milliseconds */
+    private static final long COALESCE_MILLIS = 100;
+
+    /** Above this many changed rows, one full reload is cheaper than patching */
+    private static final int MAX_PATCHED_ROWS = 200;
+
+    private final ContentResolver mContentResolver;
+
+    private final UnitAdapter mAdapter;
+
+    /** Called instead of patching when the changed rows aren't known */
+    private final Runnable mFullReload;
+
+    private final Handler mHandler = new Handler();
+
+    /** Targeted queries run one at a time, in the order the changes came in */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    /** Ids of the changed units not queried yet, used as a set */
+    private final LongSparseArray<Boolean> mChangedIds = new LongSparseArray<>();
+
+    private final Runnable mPatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            patchChangedRows();
+        }
+    };
+
+    UnitRowPatcher(ContentResolver contentResolver, UnitAdapter adapter, Runnable fullReload) {
+        super(new Handler());
+        mContentResolver = contentResolver;
+        mAdapter = adapter;
+        mFullReload = fullReload;
+    }
+
+    /**
+     * Start observing changes to units.
+     */
+    void register() {
+        mContentResolver.registerContentObserver(UnitEntry.CONTENT_URI, true, this);
+    }
+
+    /**
+     * Stop observing changes and drop the ones not patched yet.
+     */
+    void unregister() {
+        mContentResolver.unregisterContentObserver(this);
+        mHandler.removeCallbacks(mPatchRunnable);
+        mExecutor.shutdownNow();
+    }
+
+    @Override
+    public void onChange(boolean selfChange) {
+        // Only called directly before API 16, without the changed URI
+        if (Build.VERSION.SDK_INT < 16) {
+            mFullReload.run();
+        }
+    }
+
+    @Override
+    public void onChange(boolean selfChange, Uri uri) {
+        long id = getUnitId(uri);
+        if (id == -1) {
+            // Units were added or removed, the list loader reloads for those itself
+            return;
+        }
+        mChangedIds.put(id, Boolean.TRUE);
+        mHandler.removeCallbacks(mPatchRunnable);
+        mHandler.postDelayed(mPatchRunnable, COALESCE_MILLIS);
+    }
+
+    /**
+     * Return the _id of a single unit URI such as "units/3", or -1 for any other URI.
+     */
+    private static long getUnitId(Uri uri) {
+        if (uri == null) {
+            return -1;
+        }
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() != 2 || !UnitContract.PATH_UNITS.equals(segments.get(0))
+                || !TextUtils.isDigitsOnly(segments.get(1))) {
+            return -1;
+        }
+        return ContentUris.parseId(uri);
+    }
+
+    private void patchChangedRows() {
+        // Only rows on screen need patching, the others are read fresh when paged in
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < mChangedIds.size(); i++) {
+            long id = mChangedIds.keyAt(i);
+            if (mAdapter.isShown(id)) {
+                ids.add(String.valueOf(id));
+            }
+        }
+        mChangedIds.clear();
+        if (ids.isEmpty()) {
+            return;
+        }
+        if (ids.size() > MAX_PATCHED_ROWS) {
+            mFullReload.run();
+            return;
+        }
+
+        final String selection = UnitEntry._ID + " IN ("
+                + TextUtils.join(",", Collections.nCopies(ids.size(), "?")) + ")";
+        final String[] selectionArgs = ids.toArray(new String[ids.size()]);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Cursor cursor = mContentResolver.query(UnitEntry.CONTENT_URI,
+                        UnitEntry.PROJECTION, selection, selectionArgs, null);
+                if (cursor == null) {
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            mAdapter.patchRows(cursor);
+                        } finally {
+                            cursor.close();
+                        }
+                    }
+                });
+            }
+        });
+    }
+}
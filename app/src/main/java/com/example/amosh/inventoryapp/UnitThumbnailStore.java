@@ -0,0 +1,226 @@
+package com.example.amosh.inventoryapp;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.media.ThumbnailUtils;
+import android.net.Uri;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.example.amosh.inventoryapp.data.UnitContract;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a small, fixed-size WebP copy of every unit image in app-private storage, named after the
+ * unit's _id and the time it was made, and records its path in
+ * {@link UnitEntry#COLUMN_UNIT_THUMBNAIL_PATH}. A new image gets a new file name, so cached bitmaps
+ * of the old one are never shown for it. The list reads these local files instead of going back to
+ * the document provider the image was picked from.
+ */
+public class UnitThumbnailStore {
+
+    private static final String LOG_TAG = UnitThumbnailStore.class.getSimpleName();
+
+    /** Directory in the app's files dir holding the thumbnails */
+    private static final String THUMBNAIL_DIR = "thumbnails";
+
+    /** Width and height of a thumbnail, in pixels */
+    private static final int THUMBNAIL_SIZE = 256;
+
+    /** WebP quality of a thumbnail */
+    private static final int THUMBNAIL_QUALITY = 80;
+
+    /** Number of units read at a time when backfilling */
+    private static final int BACKFILL_PAGE_SIZE = 100;
+
+    private static UnitThumbnailStore sInstance;
+
+    private final ContentResolver mContentResolver;
+
+    private final File mDirectory;
+
+    /** Thumbnails are written one at a time, in the order they were requested */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Return the app wide thumbnail store.
+     */
+    public static synchronized UnitThumbnailStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new UnitThumbnailStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private UnitThumbnailStore(Context context) {
+        mContentResolver = context.getContentResolver();
+        mDirectory = new File(context.getFilesDir(), THUMBNAIL_DIR);
+    }
+
+    /**
+     * Generate the thumbnail of the given unit from its image in the background, replacing any
+     * previous one.
+     */
+    public void generateAsync(final long id, final String imageUri) {
+        if (TextUtils.isEmpty(imageUri)) {
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                generate(id, imageUri);
+            }
+        });
+    }
+
+    /**
+     * Generate thumbnails in the background for every unit that has an image but no thumbnail yet,
+     * e.g. units saved before thumbnails existed.
+     */
+    public void backfillAsync() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                backfill();
+            }
+        });
+    }
+
+    /**
+     * Delete the given thumbnail file, if there is one.
+     */
+    public void delete(String thumbnailPath) {
+        if (thumbnailPath == null) {
+            return;
+        }
+        File file = new File(thumbnailPath);
+        if (file.exists() && !file.delete()) {
+            Log.e(LOG_TAG, "Failed to delete thumbnail " + file);
+        }
+    }
+
+    /**
+     * Delete every thumbnail in the background, after all units have been deleted.
+     */
+    public void deleteAllAsync() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = mDirectory.listFiles();
+                if (files == null) {
+                    return;
+                }
+                for (File file : files) {
+                    delete(file.getAbsolutePath());
+                }
+            }
+        });
+    }
+
+    private void backfill() {
+        String[] projection = {UnitEntry._ID, UnitEntry.COLUMN_UNIT_IMAGE_URI};
+        String selection = UnitEntry.COLUMN_UNIT_THUMBNAIL_PATH + " IS NULL AND "
+                + UnitEntry.COLUMN_UNIT_IMAGE_URI + " IS NOT NULL";
+        // Walk the units in keyset pages, because every thumbnail written changes the rows that
+        // match the selection and would shift an open cursor's window
+        long lastId = 0;
+        while (true) {
+            Uri page = UnitEntry.CONTENT_URI.buildUpon()
+                    .appendQueryParameter(UnitContract.QUERY_PARAMETER_AFTER_ID, String.valueOf(lastId))
+                    .appendQueryParameter(UnitContract.QUERY_PARAMETER_LIMIT, String.valueOf(BACKFILL_PAGE_SIZE))
+                    .build();
+            Cursor cursor = mContentResolver.query(page, projection, selection, null, null);
+            if (cursor == null) {
+                return;
+            }
+            try {
+                if (cursor.getCount() == 0) {
+                    return;
+                }
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(0);
+                    generate(lastId, cursor.getString(1));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Decode the image, crop it to a centred square of {@link #THUMBNAIL_SIZE} pixels, write it as
+     * WebP and store its path on the unit's row.
+     */
+    private void generate(long id, String imageUri) {
+        Bitmap image = UnitImageLoader.decodeSampled(mContentResolver, Uri.parse(imageUri),
+                THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+        if (image == null) {
+            return;
+        }
+        Bitmap thumbnail = ThumbnailUtils.extractThumbnail(image, THUMBNAIL_SIZE, THUMBNAIL_SIZE,
+                ThumbnailUtils.OPTIONS_RECYCLE_INPUT);
+
+        File file = new File(mDirectory, id + "-" + System.currentTimeMillis() + ".webp");
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Failed to create " + mDirectory);
+            return;
+        }
+        // Write to a temporary file first, so the list never reads a half written thumbnail
+        File temporary = new File(mDirectory, id + ".tmp");
+        try {
+            OutputStream out = new FileOutputStream(temporary);
+            try {
+                thumbnail.compress(Bitmap.CompressFormat.WEBP, THUMBNAIL_QUALITY, out);
+            } finally {
+                out.close();
+            }
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Failed to rename " + temporary + " to " + file);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to write thumbnail for unit " + id, e);
+            temporary.delete();
+            return;
+        } finally {
+            thumbnail.recycle();
+        }
+
+        Uri unitUri = ContentUris.withAppendedId(UnitEntry.CONTENT_URI, id);
+        String previousPath = getThumbnailPath(unitUri);
+        ContentValues values = new ContentValues();
+        values.put(UnitEntry.COLUMN_UNIT_THUMBNAIL_PATH, file.getAbsolutePath());
+        if (mContentResolver.update(unitUri, values, null, null) == 0) {
+            // The unit was deleted while its thumbnail was being made
+            delete(file.getAbsolutePath());
+            return;
+        }
+        delete(previousPath);
+    }
+
+    /**
+     * Return the thumbnail path currently stored for the unit with the given URI, or null.
+     */
+    private String getThumbnailPath(Uri unitUri) {
+        Cursor cursor = mContentResolver.query(unitUri,
+                new String[]{UnitEntry.COLUMN_UNIT_THUMBNAIL_PATH}, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.amosh.inventoryapp;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.SQLException;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+import com.example.amosh.inventoryapp.data.UnitValidator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Writes units saved in the editor to the {@link com.example.amosh.inventoryapp.data.UnitProvider}
+ * on a background thread, so the editor can close at once. Values are checked with
+ * {@link UnitValidator} before they are queued, so invalid input is still reported while the
+ * editor is open. Until a write commits it is listed by {@link #getPending()}, for the list to
+ * show; a write that fails stays listed, marked failed, until it is retried or discarded.
+ */
+public class UnitWriteQueue {
+
+    private static final String LOG_TAG = UnitWriteQueue.class.getSimpleName();
+
+    /**
+     * Receives changes to the pending writes, on the main thread.
+     */
+    public interface Listener {
+
+        /**
+         * Called when a write is queued, committed, retried or discarded.
+         */
+        void onPendingChanged();
+
+        /**
+         * Called when a write fails. It stays pending until {@link #retry(PendingWrite)} or
+         * {@link #discard(PendingWrite)}.
+         */
+        void onWriteFailed(PendingWrite write, Exception e);
+    }
+
+    /**
+     * A queued insert or update of one unit.
+     */
+    public static final class PendingWrite {
+
+        private final long mId;
+        private final Uri mUri;
+        private final ContentValues mValues;
+        private final boolean mImageChanged;
+        private boolean mFailed;
+
+        PendingWrite(long id, Uri uri, ContentValues values, boolean imageChanged) {
+            mId = id;
+            mUri = uri;
+            mValues = values;
+            mImageChanged = imageChanged;
+        }
+
+        /**
+         * Id standing in for the unit's _id until it is written, always negative so it never
+         * matches a stored unit.
+         */
+        public long getId() {
+            return mId;
+        }
+
+        /** The URI of the unit updated, or null for an insert */
+        public Uri getUri() {
+            return mUri;
+        }
+
+        /** The values written. Don't modify them. */
+        public ContentValues getValues() {
+            return mValues;
+        }
+
+        public boolean isInsert() {
+            return mUri == null;
+        }
+
+        /** Whether the last attempt failed. Only read on the main thread. */
+        public boolean isFailed() {
+            return mFailed;
+        }
+    }
+
+    private static UnitWriteQueue sInstance;
+
+    private final ContentResolver mContentResolver;
+
+    private final Context mContext;
+
+    /** Single writer thread, so writes commit in the order they were saved */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Writes not committed yet, in save order. Only read and written on the main thread. */
+    private final List<PendingWrite> mPending = new ArrayList<>();
+
+    /** Last id handed to a pending write, counting down from -1 */
+    private long mLastId;
+
+    /** Only read and written on the main thread */
+    private Listener mListener;
+
+    /**
+     * Return the app wide write queue.
+     */
+    public static synchronized UnitWriteQueue getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new UnitWriteQueue(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private UnitWriteQueue(Context context) {
+        mContext = context;
+        mContentResolver = context.getContentResolver();
+    }
+
+    /**
+     * Set the listener told about pending writes, or null to stop telling. Must be called on the
+     * main thread.
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Queue the insert of a new unit. Must be called on the main thread.
+     *
+     * @throws IllegalArgumentException if the provider would reject the values
+     */
+    public PendingWrite insert(ContentValues values) {
+        UnitValidator.validateInsert(values);
+        return enqueue(new PendingWrite(--mLastId, null, new ContentValues(values), true));
+    }
+
+    /**
+     * Queue the update of an existing unit. Must be called on the main thread.
+     *
+     * @param imageChanged whether a new image was picked, so the thumbnail is made again
+     * @throws IllegalArgumentException if the provider would reject the values
+     */
+    public PendingWrite update(Uri unitUri, ContentValues values, boolean imageChanged) {
+        UnitValidator.validateUpdate(values);
+        return enqueue(new PendingWrite(--mLastId, unitUri, new ContentValues(values), imageChanged));
+    }
+
+    /**
+     * Return the writes not committed yet, in save order. Must be called on the main thread.
+     */
+    public List<PendingWrite> getPending() {
+        return Collections.unmodifiableList(new ArrayList<>(mPending));
+    }
+
+    /**
+     * Queue a failed write again. Must be called on the main thread.
+     */
+    public void retry(PendingWrite write) {
+        if (!write.mFailed || !mPending.contains(write)) {
+            return;
+        }
+        write.mFailed = false;
+        submit(write);
+        notifyPendingChanged();
+    }
+
+    /**
+     * Give up on a failed write. Must be called on the main thread.
+     */
+    public void discard(PendingWrite write) {
+        if (write.mFailed && mPending.remove(write)) {
+            notifyPendingChanged();
+        }
+    }
+
+    private PendingWrite enqueue(PendingWrite write) {
+        mPending.add(write);
+        submit(write);
+        notifyPendingChanged();
+        return write;
+    }
+
+    private void submit(final PendingWrite write) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    commit(write);
+                    postCommitted(write);
+                } catch (SQLException | IllegalArgumentException e) {
+                    Log.e(LOG_TAG, "Failed to save " + write.mValues, e);
+                    postFailed(write, e);
+                }
+            }
+        });
+    }
+
+    private void commit(PendingWrite write) {
+        String imageUri = write.mValues.getAsString(UnitEntry.COLUMN_UNIT_IMAGE_URI);
+        if (write.isInsert()) {
+            Uri newUri = mContentResolver.insert(UnitEntry.CONTENT_URI, write.mValues);
+            if (newUri == null) {
+                throw new SQLException("Insert of " + write.mValues + " failed");
+            }
+            UnitThumbnailStore.getInstance(mContext).generateAsync(ContentUris.parseId(newUri),
+                    imageUri);
+            return;
+        }
+        if (mContentResolver.update(write.mUri, write.mValues, null, null) == 0) {
+            throw new SQLException("Unit " + write.mUri + " no longer exists");
+        }
+        if (write.mImageChanged) {
+            UnitThumbnailStore.getInstance(mContext).generateAsync(ContentUris.parseId(write.mUri),
+                    imageUri);
+        }
+    }
+
+    private void postCommitted(final PendingWrite write) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mPending.remove(write);
+                notifyPendingChanged();
+            }
+        });
+    }
+
+    private void postFailed(final PendingWrite write, final Exception e) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                write.mFailed = true;
+                if (mListener != null) {
+                    mListener.onWriteFailed(write, e);
+                }
+                notifyPendingChanged();
+            }
+        });
+    }
+
+    private void notifyPendingChanged() {
+        if (mListener != null) {
+            mListener.onPendingChanged();
+        }
+    }
+}
@@ -32,18 +32,356 @@ public class UnitContract {
      */
     public static final String PATH_UNITS = "units";
 
+    /**
+     * Path appended to {@link UnitEntry#CONTENT_URI} for full-text search over unit names.
+     */
+    public static final String PATH_SEARCH = "search";
+
+    /**
+     * Path appended to {@link UnitEntry#CONTENT_URI} for the stock summary.
+     */
+    public static final String PATH_SUMMARY = "summary";
+
+    /**
+     * Path appended to {@link UnitEntry#CONTENT_URI} for the units that need reordering.
+     */
+    public static final String PATH_LOW_STOCK = "low_stock";
+
+    /**
+     * Path appended to {@link UnitEntry#CONTENT_URI} for the changes to push to the sync server.
+     */
+    public static final String PATH_CHANGES = "changes";
+
+    /**
+     * Path appended to {@link UnitEntry#CONTENT_URI} for looking a unit up by its SKU.
+     */
+    public static final String PATH_SKU = "sku";
+
+    /**
+     * Path appended to {@link #BASE_CONTENT_URI} for the stock rooms.
+     */
+    public static final String PATH_LOCATIONS = "locations";
+
+    /**
+     * Path appended to {@link LocationEntry#CONTENT_URI} for the stock totals per location.
+     */
+    public static final String PATH_TOTALS = "totals";
+
+    /**
+     * Path appended to the URI of a single unit for its sales per day.
+     */
+    public static final String PATH_SALES = "sales";
+
+    /**
+     * Name of the provider call method that sells units of a single supply. The unit id is passed
+     * in {@link #EXTRA_UNIT_ID} and the number of units in {@link #EXTRA_COUNT}; the quantity never
+     * drops below zero. The returned Bundle holds the number of updated rows in
+     * {@link #EXTRA_ROWS_AFFECTED}.
+     */
+    public static final String METHOD_SELL = "sell";
+
+    /**
+     * Name of the provider call method that looks up the unit with the SKU in {@link #EXTRA_SKU}
+     * and sells {@link #EXTRA_COUNT} (1 when missing) of it, in one transaction, like
+     * {@link #METHOD_SELL}. The returned Bundle holds the _id of the unit in
+     * {@link #EXTRA_UNIT_ID}, -1 if no unit has the SKU, and the number of updated rows in
+     * {@link #EXTRA_ROWS_AFFECTED}, 0 if the unit is out of stock.
+     */
+    public static final String METHOD_SELL_BY_SKU = "sell_by_sku";
+
+    /**
+     * Name of the provider call method that moves {@link #EXTRA_COUNT} units of the unit in
+     * {@link #EXTRA_UNIT_ID} from the location in {@link #EXTRA_FROM_LOCATION_ID} to the one in
+     * {@link #EXTRA_TO_LOCATION_ID}, in one transaction. Nothing moves unless the source holds at
+     * least that many. The returned Bundle holds 1 in {@link #EXTRA_ROWS_AFFECTED} if the stock
+     * moved, 0 if it didn't.
+     */
+    public static final String METHOD_TRANSFER_STOCK = "transfer_stock";
+
+    /**
+     * Name of the provider call method that rebuilds the full-text search index from the units
+     * table, for databases whose index is missing rows or has grown fragmented.
+     */
+    public static final String METHOD_REBUILD_SEARCH_INDEX = "rebuild_search_index";
+
+    /**
+     * Name of the provider call method that returns the statistics of the provider's in-memory
+     * unit cache in {@link #EXTRA_CACHE_HITS}, {@link #EXTRA_CACHE_MISSES} and
+     * {@link #EXTRA_CACHE_BYTES}. Returns null when the cache is disabled.
+     */
+    public static final String METHOD_GET_CACHE_STATS = "get_cache_stats";
+
+    /**
+     * Name of the provider call method that returns a snapshot of the provider's metrics. The
+     * Bundle holds one Bundle per operation, under {@link #METRICS_QUERY}, {@link #METRICS_INSERT},
+     * {@link #METRICS_UPDATE}, {@link #METRICS_DELETE} and {@link #METRICS_BATCH}, each with the
+     * {@code METRIC_} values of that operation. Pass true in {@link #EXTRA_RESET} to set every
+     * counter back to zero after taking the snapshot.
+     */
+    public static final String METHOD_GET_METRICS = "metrics";
+
+    /**
+     * Name of the provider call method that rolls stock movements older than
+     * {@link #EXTRA_RETENTION_DAYS} days (a default from the app's config when missing) into
+     * per-day totals in {@link UnitMovementDayEntry#TABLE_NAME}, whole days at a time. The returned
+     * Bundle holds the number of movements rolled up in {@link #EXTRA_ROWS_AFFECTED}.
+     */
+    public static final String METHOD_COMPACT_MOVEMENTS = "compact_movements";
+
+    /**
+     * Name of the provider call method that applies changes received from the sync server, passed
+     * as an ArrayList of ContentValues in {@link #EXTRA_CHANGES} with the columns of
+     * {@link UnitChanges}. They don't become local changes to push back. A change without
+     * {@link UnitEntry#COLUMN_UNIT_VERSION} was pulled, and is skipped if the unit has local changes
+     * not pushed yet. A change with it acknowledges a push: the unit's server version and synced
+     * quantity are always updated, and the rest only if the unit is still at that version. An
+     * optional {@link #EXTRA_PULL_WATERMARK} is stored in the same transaction.
+     */
+    public static final String METHOD_APPLY_REMOTE_CHANGES = "apply_remote_changes";
+
+    /**
+     * Name of the provider call method that returns the sync watermarks in
+     * {@link #EXTRA_PUSH_WATERMARK} and {@link #EXTRA_PULL_WATERMARK}.
+     */
+    public static final String METHOD_GET_SYNC_STATE = "get_sync_state";
+
+    /**
+     * Name of the provider call method that stores the local version up to which changes have been
+     * pushed, passed in {@link #EXTRA_PUSH_WATERMARK}.
+     */
+    public static final String METHOD_SET_PUSH_WATERMARK = "set_push_watermark";
+
+    /**
+     * Name of the provider call method that changes the price of every unit whose _id is in
+     * {@link #EXTRA_UNIT_IDS} by {@link #EXTRA_BASIS_POINTS} hundredths of a percent, rounded to
+     * the nearest cent, with one SQL statement in one transaction. A change of -10000 (-100%) or
+     * less is rejected. The returned Bundle holds the number of updated rows in
+     * {@link #EXTRA_ROWS_AFFECTED}.
+     */
+    public static final String METHOD_REPRICE_UNITS = "reprice_units";
+
+    /**
+     * Name of the provider call method that adds {@link #EXTRA_COUNT} to the quantity of every unit
+     * whose _id is in {@link #EXTRA_UNIT_IDS}, with one SQL statement in one transaction, recording
+     * a restock in the movement ledger for each. The returned Bundle holds the number of updated
+     * rows in {@link #EXTRA_ROWS_AFFECTED}.
+     */
+    public static final String METHOD_RESTOCK_UNITS = "restock_units";
+
+    /**
+     * Name of the provider call method that deletes every unit whose _id is in
+     * {@link #EXTRA_UNIT_IDS}, with one SQL statement in one transaction. The returned Bundle holds
+     * the number of deleted rows in {@link #EXTRA_ROWS_AFFECTED} and the paths of their local
+     * thumbnails, for the caller to delete, in {@link #EXTRA_THUMBNAIL_PATHS}.
+     */
+    public static final String METHOD_DELETE_UNITS = "delete_units";
+
+    /** Bundle key for the _id of the unit a provider call method acts on. */
+    public static final String EXTRA_UNIT_ID = "unit_id";
+
+    /** Bundle key for the long array of unit _ids a provider call method acts on. */
+    public static final String EXTRA_UNIT_IDS = "unit_ids";
+
+    /** Bundle key for a relative change in hundredths of a percent, e.g. 250 for +2.5%. */
+    public static final String EXTRA_BASIS_POINTS = "basis_points";
+
+    /** Bundle key for the string array of local thumbnail paths of deleted units. */
+    public static final String EXTRA_THUMBNAIL_PATHS = "thumbnail_paths";
+
+    /** Bundle key for the SKU of the unit a provider call method acts on. */
+    public static final String EXTRA_SKU = "sku";
+
+    /** Bundle key for the _id of the location stock is taken from. */
+    public static final String EXTRA_FROM_LOCATION_ID = "from_location_id";
+
+    /** Bundle key for the _id of the location stock is moved to. */
+    public static final String EXTRA_TO_LOCATION_ID = "to_location_id";
+
+    /** Bundle key for the number of units a provider call method acts on. */
+    public static final String EXTRA_COUNT = "count";
+
+    /** Bundle key for the number of rows a provider call method changed. */
+    public static final String EXTRA_ROWS_AFFECTED = "rows_affected";
+
+    /** Bundle key for the list of ContentValues of changes from the sync server. */
+    public static final String EXTRA_CHANGES = "changes";
+
+    /** Bundle key for the highest local version pushed to the sync server. */
+    public static final String EXTRA_PUSH_WATERMARK = "push_watermark";
+
+    /** Bundle key for the highest server version pulled from the sync server. */
+    public static final String EXTRA_PULL_WATERMARK = "pull_watermark";
+
+    /** Bundle key for the number of days of single stock movements to keep. */
+    public static final String EXTRA_RETENTION_DAYS = "retention_days";
+
+    /** Bundle key asking a provider call method to reset what it reports. */
+    public static final String EXTRA_RESET = "reset";
+
+    /** Bundle key for the number of queries answered from the provider's unit cache. */
+    public static final String EXTRA_CACHE_HITS = "cache_hits";
+
+    /** Bundle key for the number of unit queries the provider's cache had to pass to SQLite. */
+    public static final String EXTRA_CACHE_MISSES = "cache_misses";
+
+    /** Bundle key for the estimated memory used by the provider's unit cache, in bytes. */
+    public static final String EXTRA_CACHE_BYTES = "cache_bytes";
+
+    /** {@link #METHOD_GET_METRICS} key of the metrics of queries */
+    public static final String METRICS_QUERY = "query";
+
+    /** {@link #METHOD_GET_METRICS} key of the metrics of inserts */
+    public static final String METRICS_INSERT = "insert";
+
+    /** {@link #METHOD_GET_METRICS} key of the metrics of updates, including sales */
+    public static final String METRICS_UPDATE = "update";
+
+    /** {@link #METHOD_GET_METRICS} key of the metrics of deletes */
+    public static final String METRICS_DELETE = "delete";
+
+    /** {@link #METHOD_GET_METRICS} key of the metrics of bulk inserts and batches */
+    public static final String METRICS_BATCH = "batch";
+
+    /** Number of times an operation ran, as a long. */
+    public static final String METRIC_COUNT = "count";
+
+    /** Number of times an operation failed, as a long. */
+    public static final String METRIC_ERRORS = "errors";
+
+    /** Total time spent in an operation, in nanoseconds, as a long. */
+    public static final String METRIC_TOTAL_NANOS = "total_nanos";
+
+    /** Time of the slowest run of an operation, in nanoseconds, as a long. */
+    public static final String METRIC_MAX_NANOS = "max_nanos";
+
+    /** Rows returned by queries, or changed by writes, as a long. */
+    public static final String METRIC_ROWS = "rows";
+
+    /**
+     * Latency histogram of an operation, as a long array. Element 0 counts runs under 1
+     * microsecond, element i runs from 2^(i-1) up to 2^i microseconds, and the last element
+     * everything slower.
+     */
+    public static final String METRIC_LATENCY_HISTOGRAM = "latency_histogram";
+
+    /**
+     * Query parameter on {@link UnitEntry#CONTENT_URI} limiting the number of rows returned.
+     */
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+    /**
+     * Query parameter on {@link UnitEntry#CONTENT_URI} skipping the given number of rows. Only used
+     * together with {@link #QUERY_PARAMETER_LIMIT}.
+     */
+    public static final String QUERY_PARAMETER_OFFSET = "offset";
+
+    /**
+     * Query parameter on {@link UnitEntry#CONTENT_URI} for keyset paging: only units with an _id
+     * greater than the given one are returned, in _id order. Pass the _id of the last row of the
+     * previous page to get the next one without the cost of an offset.
+     */
+    public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+    /**
+     * Query parameter on {@link UnitEntry#CONTENT_URI} returning only units whose name starts with
+     * the given text, ignoring case.
+     */
+    public static final String QUERY_PARAMETER_SEARCH = "search";
+
+    /**
+     * Query parameter on {@link UnitEntry#CONTENT_URI} choosing the sort order, one of
+     * {@link #SORT_NAME}, {@link #SORT_PRICE} or {@link #SORT_QUANTITY}. Ties are ordered by _id.
+     * Can't be combined with {@link #QUERY_PARAMETER_AFTER_ID}.
+     */
+    public static final String QUERY_PARAMETER_SORT = "sort";
+
+    /**
+     * Query parameter on {@link UnitSales} URIs: the first day to return, in days since the epoch
+     * in UTC.
+     */
+    public static final String QUERY_PARAMETER_FROM_DAY = "from_day";
+
+    /**
+     * Query parameter on {@link UnitSales} URIs: the last day to return, in days since the epoch
+     * in UTC.
+     */
+    public static final String QUERY_PARAMETER_TO_DAY = "to_day";
+
+    /**
+     * Query parameter on {@link UnitChanges#CONTENT_URI}: only changes with a local version
+     * greater than this one are returned.
+     */
+    public static final String QUERY_PARAMETER_AFTER_VERSION = "after_version";
+
+    /** Sort units by name, ignoring case */
+    public static final String SORT_NAME = "name";
+
+    /** Sort units by price, cheapest first */
+    public static final String SORT_PRICE = "price";
+
+    /** Sort units by quantity, lowest stock first */
+    public static final String SORT_QUANTITY = "quantity";
+
     /**
      * Inner class that defines constant values for the pets database table.
      * Each entry in the table represents a single pet.
      */
     public static final class UnitEntry implements BaseColumns {
 
-        /** The content URI to access the pet data in the provider */
+        /**
+         * The content URI to access the pet data in the provider. Inserts and deletes are notified
+         * on this URI; updates of a single unit, including sales, only on that unit's URI, so
+         * observe this URI with descendants to hear about every change.
+         */
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_UNITS);
 
+        /**
+         * The content URI for full-text search over unit names. Append the search text as a path
+         * segment, e.g. "units/search/green tea"; every word matches as a prefix and the results
+         * are ranked with names starting with the text first.
+         */
+        public static final Uri CONTENT_SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        /**
+         * The content URI for the units at or below their {@link #COLUMN_UNIT_REORDER_LEVEL}, most
+         * urgent first unless {@link #QUERY_PARAMETER_SORT} says otherwise. Reading it costs the
+         * number of units returned, not the size of the table. Any change to the units notifies it.
+         */
+        public static final Uri CONTENT_LOW_STOCK_URI = Uri.withAppendedPath(CONTENT_URI, PATH_LOW_STOCK);
+
+        /**
+         * The content URI for the unit with a given {@link #COLUMN_UNIT_SKU}. Append the SKU as a
+         * path segment, e.g. "units/sku/4006381333931"; the unit is read through the unique SKU
+         * index. Any change to the units notifies it.
+         */
+        public static final Uri CONTENT_SKU_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SKU);
+
         /** Name of database table for pets */
         public final static String TABLE_NAME = "units";
 
+        /**
+         * Name of the FTS4 table indexing unit names. Its docid is the unit's _id and it is kept in
+         * sync with {@link #TABLE_NAME} by triggers.
+         */
+        public final static String SEARCH_TABLE_NAME = "units_search";
+
+        /**
+         * Name of the table holding the _id of every unit at or below its reorder level, in its
+         * unit_id column. Triggers keep it in sync with {@link #TABLE_NAME}.
+         */
+        public final static String LOW_STOCK_TABLE_NAME = "low_stock";
+
+        /**
+         * Name of the table holding the {@link #COLUMN_UNIT_SYNC_ID}, local version and server
+         * version of every deleted unit whose deletion hasn't been pushed to the sync server.
+         */
+        public final static String TOMBSTONE_TABLE_NAME = "unit_tombstones";
+
+        /**
+         * Name of the single row table holding the local change counter and the sync watermarks.
+         */
+        public final static String SYNC_STATE_TABLE_NAME = "sync_state";
+
         /**
          * Unique ID number for the pet (only for use in the database table).
          *
@@ -59,9 +397,9 @@ public class UnitContract {
         public final static String COLUMN_UNIT_NAME ="name";
 
         /**
-         * Price of the unit.
+         * Price of the unit in cents, see {@link UnitPrice} for converting it from and to text.
          *
-         * Type: Float
+         * Type: INTEGER
          */
         public final static String COLUMN_UNIT_PRICE = "price";
 
@@ -77,6 +415,71 @@ public class UnitContract {
          * Type: String
          */
         public final static String COLUMN_UNIT_IMAGE_URI = "image_uri";
+
+        /**
+         * Absolute path of the unit's thumbnail in app-private storage, or null until it has been
+         * generated from {@link #COLUMN_UNIT_IMAGE_URI}.
+         * Type: String
+         */
+        public final static String COLUMN_UNIT_THUMBNAIL_PATH = "thumbnail_path";
+
+        /**
+         * Quantity at or below which the unit needs reordering, {@link UnitSummary#LOW_STOCK_QUANTITY}
+         * unless set.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_UNIT_REORDER_LEVEL = "reorder_level";
+
+        /**
+         * Stock keeping unit or barcode of the unit, or null. No two units have the same SKU.
+         *
+         * Type: TEXT
+         */
+        public final static String COLUMN_UNIT_SKU = "sku";
+
+        /**
+         * Id of the unit shared with the sync server and every other device, assigned when the unit
+         * is inserted.
+         *
+         * Type: TEXT
+         */
+        public final static String COLUMN_UNIT_SYNC_ID = "sync_id";
+
+        /**
+         * Local version of the unit: the value of a counter increased by every local insert or
+         * change of a synced column. Changes applied from the sync server don't change it.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_UNIT_VERSION = "version";
+
+        /**
+         * Version of the unit on the sync server when it was last pushed or pulled, 0 if never.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_UNIT_SERVER_VERSION = "server_version";
+
+        /**
+         * Quantity of the unit on the sync server when it was last pushed or pulled, used to merge
+         * concurrent stock changes.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_UNIT_SYNCED_QUANTITY = "synced_quantity";
+
+        /**
+         * Every column of a unit, in the order screens and {@link UnitRowReader} use. Keeping the
+         * column set in one place lets readers resolve it once per cursor.
+         */
+        public static final String[] PROJECTION = {
+                _ID,
+                COLUMN_UNIT_NAME,
+                COLUMN_UNIT_QUANTITY,
+                COLUMN_UNIT_PRICE,
+                COLUMN_UNIT_IMAGE_URI,
+                COLUMN_UNIT_THUMBNAIL_PATH};
         /**
          * The MIME type of the {@link #CONTENT_URI} for a list of pets.
          */
@@ -91,5 +494,326 @@ public class UnitContract {
 
     }
 
+    /**
+     * The stock summary: a single row of aggregates over every unit, computed in SQL. Any change
+     * to the units notifies it.
+     */
+    public static final class UnitSummary {
+
+        /** The content URI of the stock summary */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(UnitEntry.CONTENT_URI, PATH_SUMMARY);
+
+        /**
+         * Default {@link UnitEntry#COLUMN_UNIT_REORDER_LEVEL} of a unit.
+         */
+        public static final int LOW_STOCK_QUANTITY = 5;
+
+        /**
+         * Number of distinct units.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_UNIT_COUNT = "unit_count";
+
+        /**
+         * Sum of the quantities of all units.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_TOTAL_QUANTITY = "total_quantity";
+
+        /**
+         * Value of all stock in cents, the sum of quantity times price.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_TOTAL_VALUE = "total_value";
+
+        /**
+         * Number of units with a quantity at or below their reorder level.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_LOW_STOCK_COUNT = "low_stock_count";
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI}.
+         */
+        public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_UNITS + "/" + PATH_SUMMARY;
+
+        private UnitSummary() {}
+    }
+
+    /**
+     * The stock movement ledger: one row appended for every change of a unit's quantity, in the
+     * same transaction as the change. {@link UnitEntry#COLUMN_UNIT_QUANTITY} is the running
+     * total of a unit's movements, including those already rolled up into
+     * {@link UnitMovementDayEntry}. Movements of deleted units are kept.
+     */
+    public static final class UnitMovementEntry implements BaseColumns {
+
+        /** Name of the database table for stock movements */
+        public static final String TABLE_NAME = "movements";
+
+        /** Stock a unit already had when the ledger was introduced */
+        public static final int KIND_OPENING_BALANCE = 0;
+
+        /** Units sold through {@link #METHOD_SELL} */
+        public static final int KIND_SALE = 1;
+
+        /** Stock added, by creating a unit or raising its quantity */
+        public static final int KIND_RESTOCK = 2;
+
+        /** Stock lowered by editing a unit's quantity */
+        public static final int KIND_ADJUSTMENT = 3;
+
+        /**
+         * _id of the unit whose quantity changed.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_UNIT_ID = "unit_id";
+
+        /**
+         * What changed the quantity, one of the {@code KIND_} constants.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_KIND = "kind";
+
+        /**
+         * Change of the quantity, negative when stock went out.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_DELTA = "delta";
+
+        /**
+         * Time of the change, in milliseconds since the epoch.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_TIME = "time";
+
+        private UnitMovementEntry() {}
+    }
+
+    /**
+     * Stock movements rolled up per unit, kind and day by {@link #METHOD_COMPACT_MOVEMENTS}.
+     */
+    public static final class UnitMovementDayEntry {
+
+        /** Name of the database table for daily movement totals */
+        public static final String TABLE_NAME = "movement_days";
+
+        /** Length of a day, in milliseconds */
+        public static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+        /**
+         * _id of the unit.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_UNIT_ID = "unit_id";
+
+        /**
+         * Kind of the movements, one of the {@code UnitMovementEntry.KIND_} constants.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_KIND = "kind";
+
+        /**
+         * Day of the movements, in days since the epoch in UTC.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_DAY = "day";
+
+        /**
+         * Sum of the deltas of the movements.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_DELTA = "delta";
+
+        /**
+         * Number of movements rolled up.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_MOVEMENT_COUNT = "movement_count";
+
+        private UnitMovementDayEntry() {}
+    }
+
+    /**
+     * Units sold per day of a single unit, one row per day with sales, oldest first. Reads both
+     * the rolled up days and the recent movements. Sales of the unit notify its URI.
+     */
+    public static final class UnitSales {
+
+        /**
+         * Day of the sales, in days since the epoch in UTC.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_DAY = "day";
+
+        /**
+         * Number of units sold that day.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_UNITS_SOLD = "units_sold";
+
+        /**
+         * The MIME type of a sales URI.
+         */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_UNITS + "/" + PATH_SALES;
+
+        /**
+         * Return the URI of the sales per day of the unit with the given _id, e.g. "units/3/sales".
+         * Narrow it down with {@link #QUERY_PARAMETER_FROM_DAY} and {@link #QUERY_PARAMETER_TO_DAY}.
+         */
+        public static Uri buildSalesUri(long unitId) {
+            return UnitEntry.CONTENT_URI.buildUpon()
+                    .appendPath(String.valueOf(unitId))
+                    .appendPath(PATH_SALES)
+                    .build();
+        }
+
+        private UnitSales() {}
+    }
+
+    /**
+     * Local changes to push to the sync server, in local version order: one row per inserted or
+     * changed unit, and one per deleted unit with {@link #COLUMN_DELETED} set and only the sync
+     * columns. Page through them with {@link #QUERY_PARAMETER_AFTER_VERSION} and
+     * {@link #QUERY_PARAMETER_LIMIT}.
+     */
+    public static final class UnitChanges {
+
+        /** The content URI of the local changes */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(UnitEntry.CONTENT_URI, PATH_CHANGES);
+
+        /**
+         * Whether the unit was deleted, 1 or 0.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_DELETED = "deleted";
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI}.
+         */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_UNITS + "/" + PATH_CHANGES;
+
+        private UnitChanges() {}
+    }
+
+    /**
+     * The stock rooms. Every unit's {@link UnitEntry#COLUMN_UNIT_QUANTITY} is the sum of its stock
+     * at every location, kept in {@link #STOCK_TABLE_NAME}. Changes to that total which don't name
+     * a location, such as sales and edits, are made at the {@link #MAIN_LOCATION_ID main location};
+     * a removal larger than the main location's stock takes the rest from the other locations, so
+     * no location's stock goes below zero. {@link #METHOD_TRANSFER_STOCK} moves stock between
+     * locations without changing the total.
+     * Deleting a location moves its stock to the main location, which can't be deleted.
+     */
+    public static final class LocationEntry implements BaseColumns {
+
+        /** The content URI of the locations. Transfers and location edits are notified here. */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_LOCATIONS);
 
-}
\ No newline at end of file
+        /** Name of the table of locations */
+        public static final String TABLE_NAME = "locations";
+
+        /**
+         * Name of the table holding the quantity of each unit at each location, keyed by unit_id
+         * and location_id. The main location has a row for every unit.
+         */
+        public static final String STOCK_TABLE_NAME = "unit_stock";
+
+        /** _id of the main location, which every unit is stocked at */
+        public static final long MAIN_LOCATION_ID = 1;
+
+        /**
+         * Name of the location, unique among locations.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_LOCATION_NAME = "name";
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of locations.
+         */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_LOCATIONS;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single location.
+         */
+        public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_LOCATIONS;
+
+        /**
+         * Return the URI of the units stocked at the location with the given _id, e.g.
+         * "locations/2/units". Its rows have the columns of {@link UnitEntry#PROJECTION} in _id
+         * order, with the quantity at that location; narrow it down with
+         * {@link #QUERY_PARAMETER_LIMIT}. It is read through the covering index of the stock
+         * table, so a page costs the same as a page of the units table.
+         */
+        public static Uri buildUnitsUri(long locationId) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(String.valueOf(locationId))
+                    .appendPath(PATH_UNITS)
+                    .build();
+        }
+
+        private LocationEntry() {}
+    }
+
+    /**
+     * The stock totals of every location, one row per location in _id order, with the location's
+     * _id and {@link LocationEntry#COLUMN_LOCATION_NAME}. Every location is summed at the same
+     * committed state, so the totals add up to {@link UnitSummary}.
+     */
+    public static final class LocationTotals {
+
+        /** The content URI of the totals per location */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(LocationEntry.CONTENT_URI, PATH_TOTALS);
+
+        /**
+         * Number of units with stock at the location.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_UNIT_COUNT = "unit_count";
+
+        /**
+         * Sum of the quantities at the location.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_TOTAL_QUANTITY = "total_quantity";
+
+        /**
+         * Value of the stock at the location in cents, the sum of quantity times price.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_TOTAL_VALUE = "total_value";
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI}.
+         */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_LOCATIONS + "/" + PATH_TOTALS;
+
+        private LocationTotals() {}
+    }
+}
@@ -3,10 +3,23 @@ package com.example.amosh.inventoryapp.data;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.text.TextUtils;
 
+import com.example.amosh.inventoryapp.R;
+import com.example.amosh.inventoryapp.data.UnitContract.LocationEntry;
+import com.example.amosh.inventoryapp.data.UnitContract.LocationTotals;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitChanges;
 import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitMovementDayEntry;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitMovementEntry;
+
+import java.util.Arrays;
+import java.util.List;
 
 public class UnitDbHelper extends SQLiteOpenHelper {
 
@@ -18,7 +31,217 @@ public class UnitDbHelper extends SQLiteOpenHelper {
     /**
      * Database version. If you change the database schema, you must increment the database version.
      */
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 10;
+
+    /**
+     * Most unit ids bound to one statement, with room left for its other parameters under the
+     * 999 variables older SQLite versions allow.
+     */
+    private static final int MAX_IDS_PER_STATEMENT = 990;
+
+    /** Name of the main location in a new database, which users can rename */
+    private static final String MAIN_LOCATION_NAME = "Main";
+
+    /** Basis points in a whole, i.e. 100% */
+    private static final int BASIS_POINTS_PER_WHOLE = 10000;
+
+    /** Index finding a unit by its SKU, and keeping SKUs unique, added in version 9 */
+    private static final String SQL_CREATE_SKU_INDEX = "CREATE UNIQUE INDEX units_sku_index ON "
+            + UnitEntry.TABLE_NAME + " (" + UnitEntry.COLUMN_UNIT_SKU + ");";
+
+    /** Indexes for searching and sorting units, added in version 2 */
+    private static final String SQL_CREATE_NAME_INDEX = "CREATE INDEX IF NOT EXISTS units_name_index ON "
+            + UnitEntry.TABLE_NAME + " (" + UnitEntry.COLUMN_UNIT_NAME + " COLLATE NOCASE);";
+    private static final String SQL_CREATE_PRICE_INDEX = "CREATE INDEX IF NOT EXISTS units_price_index ON "
+            + UnitEntry.TABLE_NAME + " (" + UnitEntry.COLUMN_UNIT_PRICE + ");";
+    private static final String SQL_CREATE_QUANTITY_INDEX = "CREATE INDEX IF NOT EXISTS units_quantity_index ON "
+            + UnitEntry.TABLE_NAME + " (" + UnitEntry.COLUMN_UNIT_QUANTITY + ");";
+
+    /**
+     * Covering index for the stock summary, added in version 5. The summary reads quantity and
+     * price from it alone, without touching the table.
+     */
+    private static final String SQL_CREATE_STOCK_INDEX = "CREATE INDEX IF NOT EXISTS units_stock_index ON "
+            + UnitEntry.TABLE_NAME + " (" + UnitEntry.COLUMN_UNIT_QUANTITY + ", "
+            + UnitEntry.COLUMN_UNIT_PRICE + ");";
+
+    /** Full-text index over unit names and the triggers keeping it in sync, added in version 3 */
+    private static final String SQL_CREATE_SEARCH_TABLE = "CREATE VIRTUAL TABLE "
+            + UnitEntry.SEARCH_TABLE_NAME + " USING fts4(" + UnitEntry.COLUMN_UNIT_NAME + ");";
+    private static final String SQL_CREATE_SEARCH_INSERT_TRIGGER = "CREATE TRIGGER units_search_insert"
+            + " AFTER INSERT ON " + UnitEntry.TABLE_NAME + " BEGIN"
+            + " INSERT INTO " + UnitEntry.SEARCH_TABLE_NAME + " (docid, " + UnitEntry.COLUMN_UNIT_NAME + ")"
+            + " VALUES (new." + UnitEntry._ID + ", new." + UnitEntry.COLUMN_UNIT_NAME + "); END;";
+    private static final String SQL_CREATE_SEARCH_UPDATE_TRIGGER = "CREATE TRIGGER units_search_update"
+            + " AFTER UPDATE OF " + UnitEntry.COLUMN_UNIT_NAME + " ON " + UnitEntry.TABLE_NAME + " BEGIN"
+            + " UPDATE " + UnitEntry.SEARCH_TABLE_NAME + " SET " + UnitEntry.COLUMN_UNIT_NAME
+            + " = new." + UnitEntry.COLUMN_UNIT_NAME + " WHERE docid = old." + UnitEntry._ID + "; END;";
+    private static final String SQL_CREATE_SEARCH_DELETE_TRIGGER = "CREATE TRIGGER units_search_delete"
+            + " AFTER DELETE ON " + UnitEntry.TABLE_NAME + " BEGIN"
+            + " DELETE FROM " + UnitEntry.SEARCH_TABLE_NAME + " WHERE docid = old." + UnitEntry._ID + "; END;";
+
+    /** Stock movement ledger and its daily roll-up, added in version 6 */
+    private static final String SQL_CREATE_MOVEMENTS_TABLE = "CREATE TABLE " + UnitMovementEntry.TABLE_NAME + " ("
+            + UnitMovementEntry._ID + " INTEGER PRIMARY KEY, "
+            + UnitMovementEntry.COLUMN_UNIT_ID + " INTEGER NOT NULL, "
+            + UnitMovementEntry.COLUMN_KIND + " INTEGER NOT NULL, "
+            + UnitMovementEntry.COLUMN_DELTA + " INTEGER NOT NULL, "
+            + UnitMovementEntry.COLUMN_TIME + " INTEGER NOT NULL);";
+    private static final String SQL_CREATE_MOVEMENT_DAYS_TABLE = "CREATE TABLE " + UnitMovementDayEntry.TABLE_NAME + " ("
+            + UnitMovementDayEntry.COLUMN_UNIT_ID + " INTEGER NOT NULL, "
+            + UnitMovementDayEntry.COLUMN_KIND + " INTEGER NOT NULL, "
+            + UnitMovementDayEntry.COLUMN_DAY + " INTEGER NOT NULL, "
+            + UnitMovementDayEntry.COLUMN_DELTA + " INTEGER NOT NULL, "
+            + UnitMovementDayEntry.COLUMN_MOVEMENT_COUNT + " INTEGER NOT NULL, "
+            + "PRIMARY KEY (" + UnitMovementDayEntry.COLUMN_UNIT_ID + ", " + UnitMovementDayEntry.COLUMN_KIND
+            + ", " + UnitMovementDayEntry.COLUMN_DAY + "));";
+
+    /**
+     * Covering index for the movements of one unit and kind in a time range, so sales per day
+     * read the index alone.
+     */
+    private static final String SQL_CREATE_MOVEMENTS_UNIT_INDEX = "CREATE INDEX movements_unit_index ON "
+            + UnitMovementEntry.TABLE_NAME + " (" + UnitMovementEntry.COLUMN_UNIT_ID + ", "
+            + UnitMovementEntry.COLUMN_KIND + ", " + UnitMovementEntry.COLUMN_TIME + ", "
+            + UnitMovementEntry.COLUMN_DELTA + ");";
+
+    /** Index for finding the movements old enough to be rolled up */
+    private static final String SQL_CREATE_MOVEMENTS_TIME_INDEX = "CREATE INDEX movements_time_index ON "
+            + UnitMovementEntry.TABLE_NAME + " (" + UnitMovementEntry.COLUMN_TIME + ");";
+
+    /**
+     * Table of the units at or below their reorder level and the triggers keeping it in sync,
+     * added in version 7. A partial index would need SQLite 3.8, which API 15 doesn't have.
+     */
+    private static final String SQL_CREATE_LOW_STOCK_TABLE = "CREATE TABLE " + UnitEntry.LOW_STOCK_TABLE_NAME
+            + " (unit_id INTEGER PRIMARY KEY);";
+    private static final String SQL_CREATE_LOW_STOCK_INSERT_TRIGGER = "CREATE TRIGGER units_low_stock_insert"
+            + " AFTER INSERT ON " + UnitEntry.TABLE_NAME
+            + " WHEN new." + UnitEntry.COLUMN_UNIT_QUANTITY + " <= new." + UnitEntry.COLUMN_UNIT_REORDER_LEVEL
+            + " BEGIN INSERT OR IGNORE INTO " + UnitEntry.LOW_STOCK_TABLE_NAME
+            + " (unit_id) VALUES (new." + UnitEntry._ID + "); END;";
+    private static final String SQL_CREATE_LOW_STOCK_UPDATE_TRIGGER = "CREATE TRIGGER units_low_stock_update"
+            + " AFTER UPDATE OF " + UnitEntry.COLUMN_UNIT_QUANTITY + ", " + UnitEntry.COLUMN_UNIT_REORDER_LEVEL
+            + " ON " + UnitEntry.TABLE_NAME + " BEGIN"
+            + " DELETE FROM " + UnitEntry.LOW_STOCK_TABLE_NAME + " WHERE unit_id = old." + UnitEntry._ID
+            + " AND new." + UnitEntry.COLUMN_UNIT_QUANTITY + " > new." + UnitEntry.COLUMN_UNIT_REORDER_LEVEL + ";"
+            + " INSERT OR IGNORE INTO " + UnitEntry.LOW_STOCK_TABLE_NAME + " (unit_id)"
+            + " SELECT new." + UnitEntry._ID + " WHERE new." + UnitEntry.COLUMN_UNIT_QUANTITY
+            + " <= new." + UnitEntry.COLUMN_UNIT_REORDER_LEVEL + "; END;";
+    private static final String SQL_CREATE_LOW_STOCK_DELETE_TRIGGER = "CREATE TRIGGER units_low_stock_delete"
+            + " AFTER DELETE ON " + UnitEntry.TABLE_NAME + " BEGIN"
+            + " DELETE FROM " + UnitEntry.LOW_STOCK_TABLE_NAME + " WHERE unit_id = old." + UnitEntry._ID + "; END;";
+
+    /**
+     * Change tracking for sync, added in version 8. Every local insert, change of a synced column
+     * and delete takes the next value of the change counter as its version, and deletes leave a
+     * tombstone. While the applying flag is set, changes from the sync server are written without
+     * becoming local changes.
+     */
+    private static final String SQL_CREATE_SYNC_STATE_TABLE = "CREATE TABLE " + UnitEntry.SYNC_STATE_TABLE_NAME + " ("
+            + "_id INTEGER PRIMARY KEY CHECK (_id = 0), "
+            + "change_counter INTEGER NOT NULL, "
+            + "applying INTEGER NOT NULL DEFAULT 0, "
+            + "push_watermark INTEGER NOT NULL DEFAULT 0, "
+            + "pull_watermark INTEGER NOT NULL DEFAULT 0);";
+    private static final String SQL_CREATE_TOMBSTONE_TABLE = "CREATE TABLE " + UnitEntry.TOMBSTONE_TABLE_NAME + " ("
+            + UnitEntry.COLUMN_UNIT_SYNC_ID + " TEXT PRIMARY KEY, "
+            + UnitEntry.COLUMN_UNIT_VERSION + " INTEGER NOT NULL, "
+            + UnitEntry.COLUMN_UNIT_SERVER_VERSION + " INTEGER NOT NULL);";
+    private static final String SQL_CREATE_TOMBSTONE_VERSION_INDEX = "CREATE INDEX unit_tombstones_version_index ON "
+            + UnitEntry.TOMBSTONE_TABLE_NAME + " (" + UnitEntry.COLUMN_UNIT_VERSION + ");";
+    private static final String SQL_CREATE_VERSION_INDEX = "CREATE INDEX units_version_index ON "
+            + UnitEntry.TABLE_NAME + " (" + UnitEntry.COLUMN_UNIT_VERSION + ");";
+    private static final String SQL_CREATE_SYNC_ID_INDEX = "CREATE UNIQUE INDEX units_sync_id_index ON "
+            + UnitEntry.TABLE_NAME + " (" + UnitEntry.COLUMN_UNIT_SYNC_ID + ");";
+    private static final String SQL_NOT_APPLYING = "(SELECT applying FROM "
+            + UnitEntry.SYNC_STATE_TABLE_NAME + ") = 0";
+    private static final String SQL_NEXT_CHANGE = "UPDATE " + UnitEntry.SYNC_STATE_TABLE_NAME
+            + " SET change_counter = change_counter + 1;";
+    private static final String SQL_CHANGE_COUNTER = "(SELECT change_counter FROM "
+            + UnitEntry.SYNC_STATE_TABLE_NAME + ")";
+    private static final String SQL_CREATE_SYNC_INSERT_TRIGGER = "CREATE TRIGGER units_sync_insert"
+            + " AFTER INSERT ON " + UnitEntry.TABLE_NAME + " WHEN " + SQL_NOT_APPLYING + " BEGIN "
+            + SQL_NEXT_CHANGE
+            + " UPDATE " + UnitEntry.TABLE_NAME + " SET " + UnitEntry.COLUMN_UNIT_VERSION + " = "
+            + SQL_CHANGE_COUNTER + ", " + UnitEntry.COLUMN_UNIT_SYNC_ID + " = IFNULL(new."
+            + UnitEntry.COLUMN_UNIT_SYNC_ID + ", lower(hex(randomblob(16))))"
+            + " WHERE " + UnitEntry._ID + " = new." + UnitEntry._ID + "; END;";
+    /** The version and sync columns aren't listed, so setting them doesn't fire it again */
+    private static final String SQL_CREATE_SYNC_UPDATE_TRIGGER = "CREATE TRIGGER units_sync_update"
+            + " AFTER UPDATE OF " + UnitEntry.COLUMN_UNIT_NAME + ", " + UnitEntry.COLUMN_UNIT_PRICE + ", "
+            + UnitEntry.COLUMN_UNIT_QUANTITY + ", " + UnitEntry.COLUMN_UNIT_IMAGE_URI + ", "
+            + UnitEntry.COLUMN_UNIT_REORDER_LEVEL + " ON " + UnitEntry.TABLE_NAME
+            + " WHEN " + SQL_NOT_APPLYING + " BEGIN "
+            + SQL_NEXT_CHANGE
+            + " UPDATE " + UnitEntry.TABLE_NAME + " SET " + UnitEntry.COLUMN_UNIT_VERSION + " = "
+            + SQL_CHANGE_COUNTER + " WHERE " + UnitEntry._ID + " = new." + UnitEntry._ID + "; END;";
+    private static final String SQL_CREATE_SYNC_DELETE_TRIGGER = "CREATE TRIGGER units_sync_delete"
+            + " AFTER DELETE ON " + UnitEntry.TABLE_NAME + " WHEN " + SQL_NOT_APPLYING
+            + " AND old." + UnitEntry.COLUMN_UNIT_SYNC_ID + " IS NOT NULL BEGIN "
+            + SQL_NEXT_CHANGE
+            + " INSERT OR REPLACE INTO " + UnitEntry.TOMBSTONE_TABLE_NAME + " ("
+            + UnitEntry.COLUMN_UNIT_SYNC_ID + ", " + UnitEntry.COLUMN_UNIT_VERSION + ", "
+            + UnitEntry.COLUMN_UNIT_SERVER_VERSION + ") VALUES (old." + UnitEntry.COLUMN_UNIT_SYNC_ID
+            + ", " + SQL_CHANGE_COUNTER + ", old." + UnitEntry.COLUMN_UNIT_SERVER_VERSION + "); END;";
+
+    /** Stock rooms and the stock of every unit at each of them, added in version 10 */
+    private static final String SQL_CREATE_LOCATIONS_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " ("
+            + LocationEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + LocationEntry.COLUMN_LOCATION_NAME + " TEXT NOT NULL UNIQUE);";
+    private static final String SQL_CREATE_STOCK_TABLE = "CREATE TABLE " + LocationEntry.STOCK_TABLE_NAME + " ("
+            + "unit_id INTEGER NOT NULL, "
+            + "location_id INTEGER NOT NULL, "
+            + "quantity INTEGER NOT NULL DEFAULT 0 CHECK (quantity >= 0), "
+            + "PRIMARY KEY (unit_id, location_id));";
+    /**
+     * Covers the list of a location and its totals: the units of one location are a range of the
+     * index holding their quantities, so neither reads the stock table itself.
+     */
+    private static final String SQL_CREATE_STOCK_LOCATION_INDEX = "CREATE INDEX unit_stock_location_index ON "
+            + LocationEntry.STOCK_TABLE_NAME + " (location_id, unit_id, quantity);";
+    /** A new unit's stock is at the main location */
+    private static final String SQL_CREATE_STOCK_INSERT_TRIGGER = "CREATE TRIGGER units_stock_insert"
+            + " AFTER INSERT ON " + UnitEntry.TABLE_NAME + " BEGIN"
+            + " INSERT INTO " + LocationEntry.STOCK_TABLE_NAME + " (unit_id, location_id, quantity)"
+            + " VALUES (new." + UnitEntry._ID + ", " + LocationEntry.MAIN_LOCATION_ID
+            + ", new." + UnitEntry.COLUMN_UNIT_QUANTITY + "); END;";
+    /**
+     * Applies a change to a unit's total to its stock. Additions go to the main location. A
+     * removal is taken from the main location first and what that can't cover from the other
+     * locations in _id order: every row the second statement visits re-reads the unit's stock
+     * total, which already holds the rows debited before it, and takes at most the part of the
+     * removal still outstanding. The total never drops below zero, so neither does any location.
+     */
+    private static final String SQL_CREATE_STOCK_UPDATE_TRIGGER = "CREATE TRIGGER units_stock_update"
+            + " AFTER UPDATE OF " + UnitEntry.COLUMN_UNIT_QUANTITY + " ON " + UnitEntry.TABLE_NAME
+            + " WHEN new." + UnitEntry.COLUMN_UNIT_QUANTITY + " != old." + UnitEntry.COLUMN_UNIT_QUANTITY
+            + " BEGIN UPDATE " + LocationEntry.STOCK_TABLE_NAME + " SET quantity = quantity + MAX(new."
+            + UnitEntry.COLUMN_UNIT_QUANTITY + " - old." + UnitEntry.COLUMN_UNIT_QUANTITY
+            + ", -quantity) WHERE unit_id = new." + UnitEntry._ID + " AND location_id = "
+            + LocationEntry.MAIN_LOCATION_ID + ";"
+            + " UPDATE " + LocationEntry.STOCK_TABLE_NAME + " SET quantity = quantity - MIN(quantity,"
+            + " (SELECT SUM(s.quantity) FROM " + LocationEntry.STOCK_TABLE_NAME + " s"
+            + " WHERE s.unit_id = " + LocationEntry.STOCK_TABLE_NAME + ".unit_id) - new."
+            + UnitEntry.COLUMN_UNIT_QUANTITY + ")"
+            + " WHERE unit_id = new." + UnitEntry._ID + " AND location_id != "
+            + LocationEntry.MAIN_LOCATION_ID + " AND quantity > 0 AND new."
+            + UnitEntry.COLUMN_UNIT_QUANTITY + " < old." + UnitEntry.COLUMN_UNIT_QUANTITY + "; END;";
+    private static final String SQL_CREATE_STOCK_DELETE_TRIGGER = "CREATE TRIGGER units_stock_delete"
+            + " AFTER DELETE ON " + UnitEntry.TABLE_NAME + " BEGIN"
+            + " DELETE FROM " + LocationEntry.STOCK_TABLE_NAME + " WHERE unit_id = old."
+            + UnitEntry._ID + "; END;";
+
+    /** Size of the write-ahead log, in pages, at which a commit checkpoints it */
+    private final int mWalAutoCheckpointPages;
+
+    /**
+     * Statements of sales by _id and by SKU, compiled once per open database. They are only bound
+     * and run inside a write transaction, which holds the one primary connection, so two sales
+     * never use them at once.
+     */
+    private SaleStatements mSaleStatements;
+    private SaleStatements mSkuSaleStatements;
 
     /**
      * Constructs a new instance of {@link UnitDbHelper}.
@@ -26,7 +249,64 @@ public class UnitDbHelper extends SQLiteOpenHelper {
      * @param context of the app
      */
     public UnitDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Constructs a new instance of {@link UnitDbHelper} on a database file other than the app's,
+     * for tests and benchmarks. Pass null for an in-memory database.
+     *
+     * @param context of the app
+     * @param name    of the database file
+     */
+    public UnitDbHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        mWalAutoCheckpointPages = context.getResources()
+                .getInteger(R.integer.database_wal_autocheckpoint_pages);
+        if (Build.VERSION.SDK_INT >= 16) {
+            // Open the database in WAL mode from the start, with its pool of read connections
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mSaleStatements != null) {
+            mSaleStatements.close();
+            mSaleStatements = null;
+        }
+        if (mSkuSaleStatements != null) {
+            mSkuSaleStatements.close();
+            mSkuSaleStatements = null;
+        }
+        super.close();
+    }
+
+    /**
+     * The database is used in write-ahead logging mode, so loaders and other readers keep reading
+     * the last committed state on their own connections while a sale or an import holds the write
+     * lock, and writers never wait for readers. Also applies the checkpoint policy from
+     * {@link R.integer#database_wal_autocheckpoint_pages}.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (db.isReadOnly()) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < 16) {
+            db.enableWriteAheadLogging();
+        }
+        // Commits on the primary connection checkpoint the log, and a transaction is what pins
+        // the pragma to that connection
+        db.beginTransaction();
+        try {
+            DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint = " + mWalAutoCheckpointPages,
+                    null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
     }
     /**
      * This is called when the database is created for the first time.
@@ -39,47 +319,864 @@ public class UnitDbHelper extends SQLiteOpenHelper {
                 + UnitEntry.COLUMN_UNIT_NAME+ " TEXT NOT NULL, "
                 + UnitEntry.COLUMN_UNIT_PRICE + " INTEGER NOT NULL, "
                 + UnitEntry.COLUMN_UNIT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
-                + UnitEntry.COLUMN_UNIT_IMAGE_URI + " TEXT );";
+                + UnitEntry.COLUMN_UNIT_REORDER_LEVEL + " INTEGER NOT NULL DEFAULT "
+                + UnitContract.UnitSummary.LOW_STOCK_QUANTITY + ", "
+                + UnitEntry.COLUMN_UNIT_IMAGE_URI + " TEXT, "
+                + UnitEntry.COLUMN_UNIT_THUMBNAIL_PATH + " TEXT, "
+                + UnitEntry.COLUMN_UNIT_SYNC_ID + " TEXT, "
+                + UnitEntry.COLUMN_UNIT_VERSION + " INTEGER NOT NULL DEFAULT 0, "
+                + UnitEntry.COLUMN_UNIT_SERVER_VERSION + " INTEGER NOT NULL DEFAULT 0, "
+                + UnitEntry.COLUMN_UNIT_SYNCED_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                + UnitEntry.COLUMN_UNIT_SKU + " TEXT );";
 
         // Execute the SQL statement
         db.execSQL(SQL_CREATE_UNITS_TABLE);
+        createIndexes(db);
+        createSearchIndex(db);
+        db.execSQL(SQL_CREATE_STOCK_INDEX);
+        createLedger(db);
+        createLowStockTable(db);
+        createChangeTracking(db, 0);
+        db.execSQL(SQL_CREATE_SKU_INDEX);
+        createLocations(db);
     }
 
     /**
-     * This is called when the database needs to be upgraded.
+     * This is called when the database needs to be upgraded. Each step brings the schema one
+     * version further, so a database can be upgraded from any older version.
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // The database is still at version 1, so there's nothing to do be done here.
+        if (oldVersion < 2) {
+            createIndexes(db);
+        }
+        if (oldVersion < 3) {
+            createSearchIndex(db);
+            rebuildSearchIndex(db);
+        }
+        if (oldVersion < 4) {
+            // Existing rows get their thumbnails from UnitThumbnailStore's backfill
+            db.execSQL("ALTER TABLE " + UnitEntry.TABLE_NAME + " ADD COLUMN "
+                    + UnitEntry.COLUMN_UNIT_THUMBNAIL_PATH + " TEXT");
+        }
+        if (oldVersion < 5) {
+            // Prices were stored as whatever the editor's text field held, convert them to cents.
+            // Text that isn't a number becomes 0, as it already did in sums.
+            db.execSQL("UPDATE " + UnitEntry.TABLE_NAME + " SET " + UnitEntry.COLUMN_UNIT_PRICE
+                    + " = CAST(ROUND(" + UnitEntry.COLUMN_UNIT_PRICE + " * 100) AS INTEGER)");
+            db.execSQL(SQL_CREATE_STOCK_INDEX);
+        }
+        if (oldVersion < 6) {
+            createLedger(db);
+            // Open the ledger with the stock every unit has now, so quantities stay the sum of
+            // their movements
+            db.execSQL("INSERT INTO " + UnitMovementEntry.TABLE_NAME + " ("
+                    + UnitMovementEntry.COLUMN_UNIT_ID + ", " + UnitMovementEntry.COLUMN_KIND + ", "
+                    + UnitMovementEntry.COLUMN_DELTA + ", " + UnitMovementEntry.COLUMN_TIME + ")"
+                    + " SELECT " + UnitEntry._ID + ", " + UnitMovementEntry.KIND_OPENING_BALANCE + ", "
+                    + UnitEntry.COLUMN_UNIT_QUANTITY + ", " + System.currentTimeMillis()
+                    + " FROM " + UnitEntry.TABLE_NAME
+                    + " WHERE " + UnitEntry.COLUMN_UNIT_QUANTITY + " != 0");
+        }
+        if (oldVersion < 7) {
+            db.execSQL("ALTER TABLE " + UnitEntry.TABLE_NAME + " ADD COLUMN "
+                    + UnitEntry.COLUMN_UNIT_REORDER_LEVEL + " INTEGER NOT NULL DEFAULT "
+                    + UnitContract.UnitSummary.LOW_STOCK_QUANTITY);
+            createLowStockTable(db);
+            db.execSQL("INSERT INTO " + UnitEntry.LOW_STOCK_TABLE_NAME + " (unit_id)"
+                    + " SELECT " + UnitEntry._ID + " FROM " + UnitEntry.TABLE_NAME
+                    + " WHERE " + UnitEntry.COLUMN_UNIT_QUANTITY + " <= "
+                    + UnitEntry.COLUMN_UNIT_REORDER_LEVEL);
+        }
+        if (oldVersion < 8) {
+            String[] columns = {
+                    UnitEntry.COLUMN_UNIT_SYNC_ID + " TEXT",
+                    UnitEntry.COLUMN_UNIT_VERSION + " INTEGER NOT NULL DEFAULT 0",
+                    UnitEntry.COLUMN_UNIT_SERVER_VERSION + " INTEGER NOT NULL DEFAULT 0",
+                    UnitEntry.COLUMN_UNIT_SYNCED_QUANTITY + " INTEGER NOT NULL DEFAULT 0"};
+            for (String column : columns) {
+                db.execSQL("ALTER TABLE " + UnitEntry.TABLE_NAME + " ADD COLUMN " + column);
+            }
+            // Every existing unit is a local change that was never pushed
+            db.execSQL("UPDATE " + UnitEntry.TABLE_NAME + " SET " + UnitEntry.COLUMN_UNIT_SYNC_ID
+                    + " = lower(hex(randomblob(16))), " + UnitEntry.COLUMN_UNIT_VERSION + " = "
+                    + UnitEntry._ID);
+            createChangeTracking(db, DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX("
+                    + UnitEntry._ID + "), 0) FROM " + UnitEntry.TABLE_NAME, null));
+        }
+        if (oldVersion < 9) {
+            // Existing units have no SKU, and NULLs don't collide in the unique index
+            db.execSQL("ALTER TABLE " + UnitEntry.TABLE_NAME + " ADD COLUMN "
+                    + UnitEntry.COLUMN_UNIT_SKU + " TEXT");
+            db.execSQL(SQL_CREATE_SKU_INDEX);
+        }
+        if (oldVersion < 10) {
+            createLocations(db);
+            // All existing stock is at the main location
+            db.execSQL("INSERT INTO " + LocationEntry.STOCK_TABLE_NAME
+                    + " (unit_id, location_id, quantity) SELECT " + UnitEntry._ID + ", "
+                    + LocationEntry.MAIN_LOCATION_ID + ", " + UnitEntry.COLUMN_UNIT_QUANTITY
+                    + " FROM " + UnitEntry.TABLE_NAME);
+        }
+    }
+
+    /**
+     * Create the indexes used by name search and by sorting on name, price and quantity.
+     */
+    private static void createIndexes(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_NAME_INDEX);
+        db.execSQL(SQL_CREATE_PRICE_INDEX);
+        db.execSQL(SQL_CREATE_QUANTITY_INDEX);
+    }
+
+    /**
+     * Create the full-text search table over unit names and the triggers that keep it in sync
+     * with the units table.
+     */
+    private static void createSearchIndex(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_SEARCH_TABLE);
+        db.execSQL(SQL_CREATE_SEARCH_INSERT_TRIGGER);
+        db.execSQL(SQL_CREATE_SEARCH_UPDATE_TRIGGER);
+        db.execSQL(SQL_CREATE_SEARCH_DELETE_TRIGGER);
+    }
+
+    /**
+     * Create the stock movement ledger, its daily roll-up and their indexes.
+     */
+    private static void createLedger(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_MOVEMENTS_TABLE);
+        db.execSQL(SQL_CREATE_MOVEMENT_DAYS_TABLE);
+        db.execSQL(SQL_CREATE_MOVEMENTS_UNIT_INDEX);
+        db.execSQL(SQL_CREATE_MOVEMENTS_TIME_INDEX);
+    }
+
+    /**
+     * Create the table of units that need reordering and the triggers that keep it in sync with
+     * the units table, for every insert, update, sale and delete.
+     */
+    private static void createLowStockTable(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_LOW_STOCK_TABLE);
+        db.execSQL(SQL_CREATE_LOW_STOCK_INSERT_TRIGGER);
+        db.execSQL(SQL_CREATE_LOW_STOCK_UPDATE_TRIGGER);
+        db.execSQL(SQL_CREATE_LOW_STOCK_DELETE_TRIGGER);
+    }
+
+    /**
+     * Create the sync state, the tombstone table, the indexes used to read changes in version
+     * order and the triggers that track changes, with the change counter starting at
+     * {@code changeCounter}.
+     */
+    private static void createChangeTracking(SQLiteDatabase db, long changeCounter) {
+        db.execSQL(SQL_CREATE_SYNC_STATE_TABLE);
+        db.execSQL("INSERT INTO " + UnitEntry.SYNC_STATE_TABLE_NAME
+                + " (_id, change_counter) VALUES (0, " + changeCounter + ")");
+        db.execSQL(SQL_CREATE_TOMBSTONE_TABLE);
+        db.execSQL(SQL_CREATE_TOMBSTONE_VERSION_INDEX);
+        db.execSQL(SQL_CREATE_VERSION_INDEX);
+        db.execSQL(SQL_CREATE_SYNC_ID_INDEX);
+        db.execSQL(SQL_CREATE_SYNC_INSERT_TRIGGER);
+        db.execSQL(SQL_CREATE_SYNC_UPDATE_TRIGGER);
+        db.execSQL(SQL_CREATE_SYNC_DELETE_TRIGGER);
+    }
+
+    /**
+     * Create the locations with the main one, the stock per location, its covering index and the
+     * triggers that make changes to a unit's total at the main location.
+     */
+    private static void createLocations(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_LOCATIONS_TABLE);
+        ContentValues main = new ContentValues();
+        main.put(LocationEntry._ID, LocationEntry.MAIN_LOCATION_ID);
+        main.put(LocationEntry.COLUMN_LOCATION_NAME, MAIN_LOCATION_NAME);
+        db.insert(LocationEntry.TABLE_NAME, null, main);
+        db.execSQL(SQL_CREATE_STOCK_TABLE);
+        db.execSQL(SQL_CREATE_STOCK_LOCATION_INDEX);
+        db.execSQL(SQL_CREATE_STOCK_INSERT_TRIGGER);
+        db.execSQL(SQL_CREATE_STOCK_UPDATE_TRIGGER);
+        db.execSQL(SQL_CREATE_STOCK_DELETE_TRIGGER);
+    }
+
+    /**
+     * Refill the full-text search table from the units table and merge its segments. Runs in a
+     * transaction, so searches never see a half-built index.
+     */
+    public void rebuildSearchIndex() {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            rebuildSearchIndex(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void rebuildSearchIndex(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + UnitEntry.SEARCH_TABLE_NAME);
+        db.execSQL("INSERT INTO " + UnitEntry.SEARCH_TABLE_NAME
+                + " (docid, " + UnitEntry.COLUMN_UNIT_NAME + ")"
+                + " SELECT " + UnitEntry._ID + ", " + UnitEntry.COLUMN_UNIT_NAME
+                + " FROM " + UnitEntry.TABLE_NAME);
+        db.execSQL("INSERT INTO " + UnitEntry.SEARCH_TABLE_NAME + " (" + UnitEntry.SEARCH_TABLE_NAME
+                + ") VALUES ('optimize')");
+    }
+
+    /**
+     * Sells {@code count} units of the unit with the given id without reading it first, so
+     * concurrent sales never overwrite each other. The quantity never drops below zero. The sale
+     * is appended to the movement ledger in the same transaction, with the number of units
+     * actually sold.
+     *
+     * @return the number of rows updated (0 or 1)
+     */
+    public int buyOne(long id, int count) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            int rowsUpdated = sell(db, id, null, count);
+            db.setTransactionSuccessful();
+            return rowsUpdated;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Looks up the unit with the given SKU and sells {@code count} units of it like
+     * {@link #buyOne(long, int)}, in one transaction.
+     *
+     * @param cachedId the _id of the unit that last had this SKU, or -1. The sale checks it still
+     *                 has the SKU, so a stale id only costs a lookup through the SKU index.
+     */
+    SkuSale sellBySku(String sku, int count, long cachedId) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long id = cachedId;
+            int rowsUpdated = cachedId == -1 ? 0 : sell(db, cachedId, sku, count);
+            // An out of stock unit that still has the SKU is checked by its _id alone
+            if (rowsUpdated == 0 && (cachedId == -1 || !hasSku(db, cachedId, sku))) {
+                // The SKU belongs to another unit or none by now
+                id = findUnitBySku(db, sku);
+                if (id != -1 && id != cachedId) {
+                    rowsUpdated = sell(db, id, sku, count);
+                }
+            }
+            db.setTransactionSuccessful();
+            return new SkuSale(id, rowsUpdated);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Return true if the unit with the given _id has the given SKU. Must be called in a
+     * transaction.
+     */
+    private boolean hasSku(SQLiteDatabase db, long id, String sku) {
+        SQLiteStatement skuCheck = getSaleStatements(db, true).skuCheck;
+        skuCheck.bindLong(1, id);
+        skuCheck.bindString(2, sku);
+        return skuCheck.simpleQueryForLong() != 0;
+    }
+
+    /**
+     * Return the _id of the unit with the given SKU, or -1 if there is none.
+     */
+    private static long findUnitBySku(SQLiteDatabase db, String sku) {
+        Cursor cursor = db.query(UnitEntry.TABLE_NAME, new String[]{UnitEntry._ID},
+                UnitEntry.COLUMN_UNIT_SKU + " = ?", new String[]{sku}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Sell {@code count} units of the unit with the given id, if it still has the given SKU
+     * (any when null) and is in stock, appending the sale to the ledger. Must be called in a
+     * transaction.
+     *
+     * @return the number of rows updated (0 or 1)
+     */
+    private int sell(SQLiteDatabase db, long id, String sku, int count) {
+        SaleStatements statements = getSaleStatements(db, sku != null);
+        SQLiteStatement movement = statements.movement;
+        SQLiteStatement statement = statements.update;
+        // The movement reads the quantity before the update changes it
+        movement.bindLong(1, count);
+        movement.bindLong(2, System.currentTimeMillis());
+        movement.bindLong(3, id);
+        statement.bindLong(1, count);
+        statement.bindLong(2, id);
+        if (sku != null) {
+            movement.bindString(4, sku);
+            statement.bindString(3, sku);
+        }
+        movement.executeInsert();
+        return statement.executeUpdateDelete();
+    }
+
+    /**
+     * Return the sale statements with or without the SKU condition, compiling them on first use
+     * and again after the database was reopened. Must be called in a transaction.
+     */
+    private SaleStatements getSaleStatements(SQLiteDatabase db, boolean bySku) {
+        SaleStatements statements = bySku ? mSkuSaleStatements : mSaleStatements;
+        if (statements != null && statements.db == db) {
+            return statements;
+        }
+        if (statements != null) {
+            statements.close();
+        }
+        statements = new SaleStatements(db, bySku);
+        if (bySku) {
+            mSkuSaleStatements = statements;
+        } else {
+            mSaleStatements = statements;
+        }
+        return statements;
+    }
+
+    /**
+     * Change the price of the units with the given ids by {@code basisPoints} hundredths of a
+     * percent, rounded half up to a whole cent, in one transaction. The prices are computed by
+     * SQLite in integer arithmetic, so no unit is read first and no price goes through a float.
+     *
+     * @return the number of rows updated
+     */
+    public int repriceUnits(long[] ids, int basisPoints) {
+        if (basisPoints <= -BASIS_POINTS_PER_WHOLE) {
+            throw new IllegalArgumentException("a price cannot drop by 100% or more");
+        }
+        ids = distinct(ids);
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            int rowsUpdated = executeForIds(db, "UPDATE " + UnitEntry.TABLE_NAME
+                    + " SET " + UnitEntry.COLUMN_UNIT_PRICE + " = (" + UnitEntry.COLUMN_UNIT_PRICE
+                    + " * ? + " + BASIS_POINTS_PER_WHOLE / 2 + ") / " + BASIS_POINTS_PER_WHOLE,
+                    new long[]{BASIS_POINTS_PER_WHOLE + basisPoints}, ids);
+            db.setTransactionSuccessful();
+            return rowsUpdated;
+        } finally {
+            db.endTransaction();
+        }
     }
 
-    public void buyOne(long id, int quantity) {
+    /**
+     * Add {@code count} to the quantity of the units with the given ids in one transaction, and
+     * append a restock of {@code count} for each of them to the movement ledger.
+     *
+     * @return the number of rows updated
+     */
+    public int restockUnits(long[] ids, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("a restock requires a positive count");
+        }
+        ids = distinct(ids);
         SQLiteDatabase db = getWritableDatabase();
-        int newQuantity = 0;
-        if (quantity > 0) {
-            newQuantity = quantity - 1;
+        db.beginTransaction();
+        try {
+            executeForIds(db, "INSERT INTO " + UnitMovementEntry.TABLE_NAME + " ("
+                    + UnitMovementEntry.COLUMN_UNIT_ID + ", " + UnitMovementEntry.COLUMN_KIND + ", "
+                    + UnitMovementEntry.COLUMN_DELTA + ", " + UnitMovementEntry.COLUMN_TIME + ")"
+                    + " SELECT " + UnitEntry._ID + ", " + UnitMovementEntry.KIND_RESTOCK + ", ?, ?"
+                    + " FROM " + UnitEntry.TABLE_NAME,
+                    new long[]{count, System.currentTimeMillis()}, ids);
+            int rowsUpdated = executeForIds(db, "UPDATE " + UnitEntry.TABLE_NAME
+                    + " SET " + UnitEntry.COLUMN_UNIT_QUANTITY + " = "
+                    + UnitEntry.COLUMN_UNIT_QUANTITY + " + ?", new long[]{count}, ids);
+            db.setTransactionSuccessful();
+            return rowsUpdated;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Delete the units with the given ids in one transaction. The triggers drop them from the
+     * search index and the low stock table and leave tombstones for the sync server.
+     *
+     * @param thumbnailPaths receives the paths of the local thumbnails of the deleted units
+     * @return the number of rows deleted
+     */
+    public int deleteUnits(long[] ids, List<String> thumbnailPaths) {
+        ids = distinct(ids);
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (int from = 0; from < ids.length; from += MAX_IDS_PER_STATEMENT) {
+                int to = Math.min(ids.length, from + MAX_IDS_PER_STATEMENT);
+                String[] selectionArgs = new String[to - from];
+                for (int i = from; i < to; i++) {
+                    selectionArgs[i - from] = String.valueOf(ids[i]);
+                }
+                Cursor cursor = db.query(UnitEntry.TABLE_NAME,
+                        new String[]{UnitEntry.COLUMN_UNIT_THUMBNAIL_PATH},
+                        UnitEntry.COLUMN_UNIT_THUMBNAIL_PATH + " IS NOT NULL AND "
+                                + idsIn(to - from), selectionArgs, null, null, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        thumbnailPaths.add(cursor.getString(0));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            int rowsDeleted = executeForIds(db, "DELETE FROM " + UnitEntry.TABLE_NAME,
+                    new long[0], ids);
+            db.setTransactionSuccessful();
+            return rowsDeleted;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Run {@code sql} restricted to the rows whose _id is in {@code ids}, with {@code args} bound
+     * to its own parameters first. The ids are bound {@link #MAX_IDS_PER_STATEMENT} at a time, so
+     * a selection of up to that many units is a single statement.
+     *
+     * @return the total number of rows changed
+     */
+    private static int executeForIds(SQLiteDatabase db, String sql, long[] args, long[] ids) {
+        int rowsChanged = 0;
+        for (int from = 0; from < ids.length; from += MAX_IDS_PER_STATEMENT) {
+            int to = Math.min(ids.length, from + MAX_IDS_PER_STATEMENT);
+            SQLiteStatement statement = db.compileStatement(sql + " WHERE " + idsIn(to - from));
+            try {
+                int index = 1;
+                for (long arg : args) {
+                    statement.bindLong(index++, arg);
+                }
+                for (int i = from; i < to; i++) {
+                    statement.bindLong(index++, ids[i]);
+                }
+                rowsChanged += statement.executeUpdateDelete();
+            } finally {
+                statement.close();
+            }
+        }
+        return rowsChanged;
+    }
+
+    /** Return "_id IN (?, ?, ...)" with {@code count} parameters */
+    private static String idsIn(int count) {
+        StringBuilder builder = new StringBuilder(UnitEntry._ID).append(" IN (");
+        for (int i = 0; i < count; i++) {
+            builder.append(i == 0 ? "?" : ", ?");
+        }
+        return builder.append(')').toString();
+    }
+
+    /**
+     * Return the given ids sorted and without repeats, so no unit is changed twice when they are
+     * split across statements.
+     */
+    private static long[] distinct(long[] ids) {
+        long[] sorted = Arrays.copyOf(ids, ids.length);
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, count);
+    }
+
+    /**
+     * Append the initial stock of a newly inserted unit to the movement ledger. Must be called in
+     * the transaction that inserted the unit.
+     */
+    static void recordInsertedStock(SQLiteDatabase db, long unitId, long quantity) {
+        if (quantity == 0) {
+            return;
         }
         ContentValues values = new ContentValues();
-        values.put(UnitEntry.COLUMN_UNIT_QUANTITY, newQuantity);
-        String selection = UnitEntry._ID + "=?";
-        String[] selectionArgs = new String[]{(String.valueOf(id))};
-        db.update(UnitEntry.TABLE_NAME,
-                values,
-                selection,
-                selectionArgs);
+        values.put(UnitMovementEntry.COLUMN_UNIT_ID, unitId);
+        values.put(UnitMovementEntry.COLUMN_KIND, UnitMovementEntry.KIND_RESTOCK);
+        values.put(UnitMovementEntry.COLUMN_DELTA, quantity);
+        values.put(UnitMovementEntry.COLUMN_TIME, System.currentTimeMillis());
+        db.insert(UnitMovementEntry.TABLE_NAME, null, values);
+    }
+
+    /**
+     * Compile the statement appending the initial stock of an inserted unit to the ledger, for
+     * inserting many units. Bind the unit _id, the quantity and the time, in that order.
+     */
+    static SQLiteStatement compileInsertedStockStatement(SQLiteDatabase db) {
+        return db.compileStatement("INSERT INTO " + UnitMovementEntry.TABLE_NAME + " ("
+                + UnitMovementEntry.COLUMN_UNIT_ID + ", " + UnitMovementEntry.COLUMN_KIND + ", "
+                + UnitMovementEntry.COLUMN_DELTA + ", " + UnitMovementEntry.COLUMN_TIME + ")"
+                + " VALUES (?, " + UnitMovementEntry.KIND_RESTOCK + ", ?, ?)");
+    }
+
+    /**
+     * Append a movement to the ledger for every unit matching the selection whose quantity is
+     * about to be set to {@code quantity}: a restock if it goes up, an adjustment if it goes down.
+     * Must be called in the transaction that updates the units, before the update.
+     */
+    static void recordQuantityUpdate(SQLiteDatabase db, long quantity, String selection,
+                                     String[] selectionArgs) {
+        String where = UnitEntry.COLUMN_UNIT_QUANTITY + " != ?";
+        if (!TextUtils.isEmpty(selection)) {
+            where += " AND (" + selection + ")";
+        }
+        String[] bindArgs = {String.valueOf(quantity), String.valueOf(quantity),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(quantity)};
+        if (selectionArgs != null) {
+            bindArgs = DatabaseUtils.appendSelectionArgs(bindArgs, selectionArgs);
+        }
+        db.execSQL("INSERT INTO " + UnitMovementEntry.TABLE_NAME + " ("
+                + UnitMovementEntry.COLUMN_UNIT_ID + ", " + UnitMovementEntry.COLUMN_KIND + ", "
+                + UnitMovementEntry.COLUMN_DELTA + ", " + UnitMovementEntry.COLUMN_TIME + ")"
+                + " SELECT " + UnitEntry._ID
+                + ", CASE WHEN " + UnitEntry.COLUMN_UNIT_QUANTITY + " < ? THEN "
+                + UnitMovementEntry.KIND_RESTOCK + " ELSE " + UnitMovementEntry.KIND_ADJUSTMENT + " END"
+                + ", ? - " + UnitEntry.COLUMN_UNIT_QUANTITY + ", ?"
+                + " FROM " + UnitEntry.TABLE_NAME + " WHERE " + where, bindArgs);
+    }
+
+    /**
+     * Roll the movements from before the day {@code retentionDays} days ago into per-day totals,
+     * adding to the totals of days rolled up before, and delete them. Runs in one transaction.
+     *
+     * @return the number of movements rolled up
+     */
+    public int compactMovements(int retentionDays) {
+        long cutoffDay = System.currentTimeMillis() / UnitMovementDayEntry.MILLIS_PER_DAY - retentionDays;
+        String cutoffTime = String.valueOf(cutoffDay * UnitMovementDayEntry.MILLIS_PER_DAY);
+        String day = UnitMovementEntry.COLUMN_TIME + " / " + UnitMovementDayEntry.MILLIS_PER_DAY;
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement delete = db.compileStatement("DELETE FROM " + UnitMovementEntry.TABLE_NAME
+                + " WHERE " + UnitMovementEntry.COLUMN_TIME + " < ?");
+        db.beginTransaction();
+        try {
+            // Only days that still have movements get new totals, merged with any earlier ones
+            db.execSQL("INSERT OR REPLACE INTO " + UnitMovementDayEntry.TABLE_NAME + " ("
+                    + UnitMovementDayEntry.COLUMN_UNIT_ID + ", " + UnitMovementDayEntry.COLUMN_KIND + ", "
+                    + UnitMovementDayEntry.COLUMN_DAY + ", " + UnitMovementDayEntry.COLUMN_DELTA + ", "
+                    + UnitMovementDayEntry.COLUMN_MOVEMENT_COUNT + ")"
+                    + " SELECT unit_id, kind, day, SUM(delta), SUM(movement_count) FROM ("
+                    + "SELECT " + UnitMovementDayEntry.COLUMN_UNIT_ID + " AS unit_id, "
+                    + UnitMovementDayEntry.COLUMN_KIND + " AS kind, "
+                    + UnitMovementDayEntry.COLUMN_DAY + " AS day, "
+                    + UnitMovementDayEntry.COLUMN_DELTA + " AS delta, "
+                    + UnitMovementDayEntry.COLUMN_MOVEMENT_COUNT + " AS movement_count"
+                    + " FROM " + UnitMovementDayEntry.TABLE_NAME
+                    + " WHERE " + UnitMovementDayEntry.COLUMN_DAY + " >= (SELECT MIN("
+                    + UnitMovementEntry.COLUMN_TIME + ") FROM " + UnitMovementEntry.TABLE_NAME + ") / "
+                    + UnitMovementDayEntry.MILLIS_PER_DAY
+                    + " AND " + UnitMovementDayEntry.COLUMN_DAY + " < ?"
+                    + " UNION ALL SELECT " + UnitMovementEntry.COLUMN_UNIT_ID + ", "
+                    + UnitMovementEntry.COLUMN_KIND + ", " + day + ", " + UnitMovementEntry.COLUMN_DELTA
+                    + ", 1 FROM " + UnitMovementEntry.TABLE_NAME
+                    + " WHERE " + UnitMovementEntry.COLUMN_TIME + " < ?)"
+                    + " GROUP BY unit_id, kind, day",
+                    new String[]{String.valueOf(cutoffDay), cutoffTime});
+            delete.bindString(1, cutoffTime);
+            int rowsDeleted = delete.executeUpdateDelete();
+            db.setTransactionSuccessful();
+            return rowsDeleted;
+        } finally {
+            db.endTransaction();
+            delete.close();
+        }
+    }
+
+    /**
+     * Read the units of the given unit sold per day, from {@code fromDay} to {@code toDay}
+     * inclusive, as described by {@link UnitContract.UnitSales}. Both the rolled up days and the
+     * recent movements are read through their indexes.
+     */
+    public Cursor readSales(long unitId, long fromDay, long toDay) {
+        SQLiteDatabase db = getReadableDatabase();
+        String id = String.valueOf(unitId);
+        String sale = String.valueOf(UnitMovementEntry.KIND_SALE);
+        return db.rawQuery("SELECT day AS " + UnitContract.UnitSales.COLUMN_DAY
+                + ", SUM(sold) AS " + UnitContract.UnitSales.COLUMN_UNITS_SOLD + " FROM ("
+                + "SELECT " + UnitMovementDayEntry.COLUMN_DAY + " AS day, -"
+                + UnitMovementDayEntry.COLUMN_DELTA + " AS sold FROM " + UnitMovementDayEntry.TABLE_NAME
+                + " WHERE " + UnitMovementDayEntry.COLUMN_UNIT_ID + " = ? AND "
+                + UnitMovementDayEntry.COLUMN_KIND + " = ? AND " + UnitMovementDayEntry.COLUMN_DAY
+                + " BETWEEN ? AND ?"
+                + " UNION ALL SELECT " + UnitMovementEntry.COLUMN_TIME + " / "
+                + UnitMovementDayEntry.MILLIS_PER_DAY + ", -" + UnitMovementEntry.COLUMN_DELTA
+                + " FROM " + UnitMovementEntry.TABLE_NAME
+                + " WHERE " + UnitMovementEntry.COLUMN_UNIT_ID + " = ? AND "
+                + UnitMovementEntry.COLUMN_KIND + " = ? AND " + UnitMovementEntry.COLUMN_TIME
+                + " >= ? AND " + UnitMovementEntry.COLUMN_TIME + " < ?)"
+                + " GROUP BY day ORDER BY day",
+                new String[]{id, sale, String.valueOf(fromDay), String.valueOf(toDay), id, sale,
+                        String.valueOf(fromDay * UnitMovementDayEntry.MILLIS_PER_DAY),
+                        String.valueOf((toDay + 1) * UnitMovementDayEntry.MILLIS_PER_DAY)});
+    }
+
+    /**
+     * Read up to {@code limit} local changes with a version greater than {@code afterVersion}, in
+     * version order, as described by {@link UnitChanges}. Each side of the union reads at most
+     * {@code limit} rows through its version index, so only that many are sorted.
+     */
+    public Cursor readChanges(long afterVersion, int limit) {
+        SQLiteDatabase db = getReadableDatabase();
+        String after = String.valueOf(afterVersion);
+        String count = String.valueOf(limit);
+        return db.rawQuery("SELECT * FROM (SELECT "
+                + UnitEntry.COLUMN_UNIT_SYNC_ID + ", " + UnitEntry.COLUMN_UNIT_VERSION + ", "
+                + UnitEntry.COLUMN_UNIT_SERVER_VERSION + ", " + UnitEntry.COLUMN_UNIT_SYNCED_QUANTITY
+                + ", 0 AS " + UnitChanges.COLUMN_DELETED + ", " + UnitEntry.COLUMN_UNIT_NAME + ", "
+                + UnitEntry.COLUMN_UNIT_QUANTITY + ", " + UnitEntry.COLUMN_UNIT_PRICE + ", "
+                + UnitEntry.COLUMN_UNIT_IMAGE_URI + ", " + UnitEntry.COLUMN_UNIT_REORDER_LEVEL
+                + " FROM " + UnitEntry.TABLE_NAME + " WHERE " + UnitEntry.COLUMN_UNIT_VERSION
+                + " > ? ORDER BY " + UnitEntry.COLUMN_UNIT_VERSION + " LIMIT ?)"
+                + " UNION ALL SELECT * FROM (SELECT "
+                + UnitEntry.COLUMN_UNIT_SYNC_ID + ", " + UnitEntry.COLUMN_UNIT_VERSION + ", "
+                + UnitEntry.COLUMN_UNIT_SERVER_VERSION + ", 0, 1, NULL, NULL, NULL, NULL, NULL"
+                + " FROM " + UnitEntry.TOMBSTONE_TABLE_NAME + " WHERE " + UnitEntry.COLUMN_UNIT_VERSION
+                + " > ? ORDER BY " + UnitEntry.COLUMN_UNIT_VERSION + " LIMIT ?)"
+                + " ORDER BY " + UnitEntry.COLUMN_UNIT_VERSION + " LIMIT ?",
+                new String[]{after, count, after, count, count});
+    }
+
+    /**
+     * Apply changes from the sync server, as described by
+     * {@link UnitContract#METHOD_APPLY_REMOTE_CHANGES}, in one transaction with the change
+     * tracking triggers switched off. Quantity changes are appended to the movement ledger.
+     *
+     * @param pullWatermark stored with the changes, or -1 to leave it
+     */
+    public void applyRemoteChanges(List<ContentValues> changes, long pullWatermark) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.execSQL("UPDATE " + UnitEntry.SYNC_STATE_TABLE_NAME + " SET applying = 1");
+            long pushWatermark = DatabaseUtils.longForQuery(db, "SELECT push_watermark FROM "
+                    + UnitEntry.SYNC_STATE_TABLE_NAME, null);
+            for (ContentValues change : changes) {
+                applyRemoteChange(db, change, pushWatermark);
+            }
+            if (pullWatermark >= 0) {
+                db.execSQL("UPDATE " + UnitEntry.SYNC_STATE_TABLE_NAME + " SET pull_watermark = ?",
+                        new Object[]{pullWatermark});
+            }
+            db.execSQL("UPDATE " + UnitEntry.SYNC_STATE_TABLE_NAME + " SET applying = 0");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void applyRemoteChange(SQLiteDatabase db, ContentValues change, long pushWatermark) {
+        ContentValues values = new ContentValues(change);
+        String syncId = values.getAsString(UnitEntry.COLUMN_UNIT_SYNC_ID);
+        if (syncId == null) {
+            throw new IllegalArgumentException("Remote change without a sync id");
+        }
+        Long pushedVersion = values.getAsLong(UnitEntry.COLUMN_UNIT_VERSION);
+        boolean deleted = Boolean.TRUE.equals(values.getAsBoolean(UnitChanges.COLUMN_DELETED));
+        values.remove(UnitEntry.COLUMN_UNIT_VERSION);
+        values.remove(UnitChanges.COLUMN_DELETED);
+
+        String bySyncId = UnitEntry.COLUMN_UNIT_SYNC_ID + " = ?";
+        String[] args = {syncId};
+        if (pushedVersion != null && !deleted) {
+            // The server holds what was pushed now, whatever changed locally since
+            ContentValues synced = new ContentValues();
+            synced.put(UnitEntry.COLUMN_UNIT_SERVER_VERSION,
+                    values.getAsLong(UnitEntry.COLUMN_UNIT_SERVER_VERSION));
+            synced.put(UnitEntry.COLUMN_UNIT_SYNCED_QUANTITY,
+                    values.getAsInteger(UnitEntry.COLUMN_UNIT_SYNCED_QUANTITY));
+            db.update(UnitEntry.TABLE_NAME, synced, bySyncId, args);
+        }
+        // Local state the change may replace: the version that was pushed, or for a pulled change
+        // anything pushed already. Newer local changes win here and are resolved on their push.
+        String current = bySyncId + " AND " + UnitEntry.COLUMN_UNIT_VERSION
+                + (pushedVersion != null ? " = " + pushedVersion : " <= " + pushWatermark);
+        if (DatabaseUtils.queryNumEntries(db, UnitEntry.TOMBSTONE_TABLE_NAME,
+                bySyncId + " AND NOT (" + current + ")", new String[]{syncId, syncId}) > 0) {
+            return;
+        }
+        db.delete(UnitEntry.TOMBSTONE_TABLE_NAME, current, args);
+        if (deleted) {
+            db.delete(UnitEntry.TABLE_NAME, current, args);
+            return;
+        }
+        Integer quantity = values.getAsInteger(UnitEntry.COLUMN_UNIT_QUANTITY);
+        if (quantity != null) {
+            recordQuantityUpdate(db, quantity, current, args);
+        }
+        if (db.update(UnitEntry.TABLE_NAME, values, current, args) > 0
+                || DatabaseUtils.queryNumEntries(db, UnitEntry.TABLE_NAME, bySyncId, args) > 0) {
+            return;
+        }
+        long id = db.insert(UnitEntry.TABLE_NAME, null, values);
+        if (id != -1 && quantity != null) {
+            recordInsertedStock(db, id, quantity);
+        }
+    }
+
+    /**
+     * Return the highest local version pushed and the highest server version pulled, in that
+     * order.
+     */
+    public long[] readSyncWatermarks() {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT push_watermark, pull_watermark FROM "
+                + UnitEntry.SYNC_STATE_TABLE_NAME, null);
+        try {
+            cursor.moveToFirst();
+            return new long[]{cursor.getLong(0), cursor.getLong(1)};
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Store the highest local version pushed to the sync server. It never moves back.
+     */
+    public void setPushWatermark(long version) {
+        getWritableDatabase().execSQL("UPDATE " + UnitEntry.SYNC_STATE_TABLE_NAME
+                + " SET push_watermark = MAX(push_watermark, ?)", new Object[]{version});
+    }
+
+    /**
+     * Read a page of the units stocked at the given location, in _id order, with the columns of
+     * {@link UnitEntry#PROJECTION} and the quantity at that location. The location's rows are a
+     * range of the covering stock index, and each unit is then read by its _id.
+     *
+     * @param limit a LIMIT clause of numbers only, or null for all of the rows
+     */
+    public Cursor readLocationUnits(long locationId, String limit) {
+        SQLiteDatabase db = getReadableDatabase();
+        return db.rawQuery("SELECT u." + UnitEntry._ID + " AS " + UnitEntry._ID
+                + ", u." + UnitEntry.COLUMN_UNIT_NAME + " AS " + UnitEntry.COLUMN_UNIT_NAME
+                + ", s.quantity AS " + UnitEntry.COLUMN_UNIT_QUANTITY
+                + ", u." + UnitEntry.COLUMN_UNIT_PRICE + " AS " + UnitEntry.COLUMN_UNIT_PRICE
+                + ", u." + UnitEntry.COLUMN_UNIT_IMAGE_URI + " AS " + UnitEntry.COLUMN_UNIT_IMAGE_URI
+                + ", u." + UnitEntry.COLUMN_UNIT_THUMBNAIL_PATH + " AS "
+                + UnitEntry.COLUMN_UNIT_THUMBNAIL_PATH
+                + " FROM " + LocationEntry.STOCK_TABLE_NAME + " s JOIN " + UnitEntry.TABLE_NAME
+                + " u ON u." + UnitEntry._ID + " = s.unit_id WHERE s.location_id = ?"
+                + " ORDER BY s.unit_id" + (limit == null ? "" : " LIMIT " + limit),
+                new String[]{String.valueOf(locationId)});
+    }
+
+    /**
+     * Sum the stock of every location as described by {@link LocationTotals} in one query, so
+     * every location is read at the same committed state and a transfer is never counted at both
+     * ends or at neither. The locations' rows are consecutive ranges of the covering stock index,
+     * so the grouping needs no sort, and each unit's price is read by its _id.
+     */
+    public Cursor readLocationTotals() {
+        SQLiteDatabase db = getReadableDatabase();
+        return db.rawQuery("SELECT l." + LocationEntry._ID + " AS " + LocationEntry._ID
+                + ", l." + LocationEntry.COLUMN_LOCATION_NAME + " AS " + LocationEntry.COLUMN_LOCATION_NAME
+                + ", IFNULL(SUM(s.quantity > 0), 0) AS " + LocationTotals.COLUMN_UNIT_COUNT
+                + ", IFNULL(SUM(s.quantity), 0) AS " + LocationTotals.COLUMN_TOTAL_QUANTITY
+                + ", IFNULL(SUM(s.quantity * u." + UnitEntry.COLUMN_UNIT_PRICE + "), 0) AS "
+                + LocationTotals.COLUMN_TOTAL_VALUE
+                + " FROM " + LocationEntry.TABLE_NAME + " l LEFT JOIN " + LocationEntry.STOCK_TABLE_NAME
+                + " s ON s.location_id = l." + LocationEntry._ID + " LEFT JOIN " + UnitEntry.TABLE_NAME
+                + " u ON u." + UnitEntry._ID + " = s.unit_id"
+                + " GROUP BY l." + LocationEntry._ID + " ORDER BY l." + LocationEntry._ID, null);
+    }
+
+    /**
+     * Move {@code count} units of the given unit from one location to another in one
+     * transaction, if the source holds at least that many. The unit's total doesn't change.
+     *
+     * @return 1 if the stock moved, 0 if the source holds too few
+     * @throws IllegalArgumentException if the destination location doesn't exist
+     */
+    public int transferStock(long unitId, long fromLocationId, long toLocationId, int count) {
+        SQLiteDatabase db = getWritableDatabase();
+        String unit = String.valueOf(unitId);
+        String to = String.valueOf(toLocationId);
+        db.beginTransaction();
+        try {
+            if (DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME,
+                    LocationEntry._ID + " = ?", new String[]{to}) == 0) {
+                throw new IllegalArgumentException("No location with _id " + toLocationId);
+            }
+            SQLiteStatement take = db.compileStatement("UPDATE " + LocationEntry.STOCK_TABLE_NAME
+                    + " SET quantity = quantity - ? WHERE unit_id = ? AND location_id = ?"
+                    + " AND quantity >= ?");
+            int rowsUpdated;
+            try {
+                take.bindLong(1, count);
+                take.bindLong(2, unitId);
+                take.bindLong(3, fromLocationId);
+                take.bindLong(4, count);
+                rowsUpdated = take.executeUpdateDelete();
+            } finally {
+                take.close();
+            }
+            if (rowsUpdated != 0) {
+                db.execSQL("INSERT OR IGNORE INTO " + LocationEntry.STOCK_TABLE_NAME
+                        + " (unit_id, location_id) VALUES (?, ?)", new String[]{unit, to});
+                db.execSQL("UPDATE " + LocationEntry.STOCK_TABLE_NAME + " SET quantity = quantity + ?"
+                        + " WHERE unit_id = ? AND location_id = ?",
+                        new String[]{String.valueOf(count), unit, to});
+            }
+            db.setTransactionSuccessful();
+            return rowsUpdated;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Delete a location other than the main one, moving its stock to the main location in the
+     * same transaction.
+     *
+     * @return the number of locations deleted (0 or 1)
+     */
+    public int deleteLocation(long locationId) {
+        if (locationId == LocationEntry.MAIN_LOCATION_ID) {
+            throw new IllegalArgumentException("The main location cannot be deleted");
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        String[] location = {String.valueOf(locationId)};
+        db.beginTransaction();
+        try {
+            db.execSQL("UPDATE " + LocationEntry.STOCK_TABLE_NAME + " SET quantity = quantity"
+                    + " + (SELECT s.quantity FROM " + LocationEntry.STOCK_TABLE_NAME + " s"
+                    + " WHERE s.unit_id = " + LocationEntry.STOCK_TABLE_NAME + ".unit_id"
+                    + " AND s.location_id = ?)"
+                    + " WHERE location_id = " + LocationEntry.MAIN_LOCATION_ID
+                    + " AND unit_id IN (SELECT unit_id FROM " + LocationEntry.STOCK_TABLE_NAME
+                    + " WHERE location_id = ?)", new String[]{location[0], location[0]});
+            db.delete(LocationEntry.STOCK_TABLE_NAME, "location_id = ?", location);
+            int rowsDeleted = db.delete(LocationEntry.TABLE_NAME, LocationEntry._ID + " = ?", location);
+            db.setTransactionSuccessful();
+            return rowsDeleted;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Read the stock summary described by {@link UnitContract.UnitSummary} in one pass over
+     * the covering stock index. Units needing reorder are counted from the low stock table.
+     */
+    public Cursor readSummary() {
+        SQLiteDatabase db = getReadableDatabase();
+        return db.rawQuery("SELECT COUNT(*) AS " + UnitContract.UnitSummary.COLUMN_UNIT_COUNT
+                + ", IFNULL(SUM(" + UnitEntry.COLUMN_UNIT_QUANTITY + "), 0) AS "
+                + UnitContract.UnitSummary.COLUMN_TOTAL_QUANTITY
+                + ", IFNULL(SUM(" + UnitEntry.COLUMN_UNIT_QUANTITY + " * " + UnitEntry.COLUMN_UNIT_PRICE
+                + "), 0) AS " + UnitContract.UnitSummary.COLUMN_TOTAL_VALUE
+                + ", (SELECT COUNT(*) FROM " + UnitEntry.LOW_STOCK_TABLE_NAME + ") AS "
+                + UnitContract.UnitSummary.COLUMN_LOW_STOCK_COUNT
+                + " FROM " + UnitEntry.TABLE_NAME, null);
     }
 
     public Cursor readStock() {
 
         SQLiteDatabase db = getReadableDatabase();
-        String[] projection = {UnitEntry._ID,
-                UnitEntry.COLUMN_UNIT_NAME,
-                UnitEntry.COLUMN_UNIT_QUANTITY,
-                UnitEntry.COLUMN_UNIT_PRICE,
-                UnitEntry.COLUMN_UNIT_IMAGE_URI
-        };
-
-        Cursor cursor = db.query(UnitEntry.TABLE_NAME, projection,
+        Cursor cursor = db.query(UnitEntry.TABLE_NAME, UnitEntry.PROJECTION,
                 null,
                 null,
                 null,
@@ -89,5 +1186,65 @@ public class UnitDbHelper extends SQLiteOpenHelper {
         );
         return cursor;
     }
-}
 
+    /**
+     * The compiled statements of a sale: the ledger entry and the update of the quantity, with or
+     * without the SKU condition, and for sales by SKU the check of a unit's SKU by its _id.
+     */
+    private static final class SaleStatements {
+
+        final SQLiteDatabase db;
+        final SQLiteStatement movement;
+        final SQLiteStatement update;
+
+        /** Null without the SKU condition */
+        final SQLiteStatement skuCheck;
+
+        SaleStatements(SQLiteDatabase db, boolean bySku) {
+            this.db = db;
+            String where = " WHERE " + UnitEntry._ID + " = ? AND "
+                    + UnitEntry.COLUMN_UNIT_QUANTITY + " > 0";
+            if (bySku) {
+                where += " AND " + UnitEntry.COLUMN_UNIT_SKU + " = ?";
+            }
+            movement = db.compileStatement("INSERT INTO " + UnitMovementEntry.TABLE_NAME
+                    + " (" + UnitMovementEntry.COLUMN_UNIT_ID + ", "
+                    + UnitMovementEntry.COLUMN_KIND + ", " + UnitMovementEntry.COLUMN_DELTA + ", "
+                    + UnitMovementEntry.COLUMN_TIME + ")"
+                    + " SELECT " + UnitEntry._ID + ", " + UnitMovementEntry.KIND_SALE
+                    + ", -MIN(" + UnitEntry.COLUMN_UNIT_QUANTITY + ", ?), ?"
+                    + " FROM " + UnitEntry.TABLE_NAME + where);
+            update = db.compileStatement("UPDATE " + UnitEntry.TABLE_NAME
+                    + " SET " + UnitEntry.COLUMN_UNIT_QUANTITY
+                    + " = MAX(" + UnitEntry.COLUMN_UNIT_QUANTITY + " - ?, 0)" + where);
+            skuCheck = !bySku ? null : db.compileStatement("SELECT COUNT(*) FROM "
+                    + UnitEntry.TABLE_NAME + " WHERE " + UnitEntry._ID + " = ? AND "
+                    + UnitEntry.COLUMN_UNIT_SKU + " = ?");
+        }
+
+        void close() {
+            movement.close();
+            update.close();
+            if (skuCheck != null) {
+                skuCheck.close();
+            }
+        }
+    }
+
+    /**
+     * The unit a sale by SKU found and whether it sold any.
+     */
+    static final class SkuSale {
+
+        /** _id of the unit with the SKU, or -1 if there is none */
+        final long unitId;
+
+        /** Number of rows updated, 0 if the unit is out of stock */
+        final int rowsUpdated;
+
+        SkuSale(long unitId, int rowsUpdated) {
+            this.unitId = unitId;
+            this.rowsUpdated = rowsUpdated;
+        }
+    }
+}
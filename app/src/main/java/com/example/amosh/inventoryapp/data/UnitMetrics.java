@@ -0,0 +1,135 @@
+package com.example.amosh.inventoryapp.data;
+
+import android.os.Bundle;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the operations of {@link UnitProvider}. Recording only
+ * updates atomic longs, so it takes no locks and allocates nothing, and is cheap enough to stay on
+ * in production. Snapshots are read field by field and may mix values from concurrent operations.
+ */
+class UnitMetrics {
+
+    /** Operations measured, indices into the counters */
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int UPDATE = 2;
+    static final int DELETE = 3;
+    static final int BATCH = 4;
+
+    /** Names of the operations, as used in {@link #toBundle()} */
+    private static final String[] OPERATION_NAMES = {
+            UnitContract.METRICS_QUERY,
+            UnitContract.METRICS_INSERT,
+            UnitContract.METRICS_UPDATE,
+            UnitContract.METRICS_DELETE,
+            UnitContract.METRICS_BATCH};
+
+    /**
+     * Number of latency buckets. Bucket 0 counts operations under 1 microsecond, bucket i those
+     * from 2^(i-1) up to 2^i microseconds, and the last one everything slower.
+     */
+    static final int HISTOGRAM_BUCKETS = 24;
+
+    /** Offsets of the fields of one operation */
+    private static final int COUNT = 0;
+    private static final int ERRORS = 1;
+    private static final int TOTAL_NANOS = 2;
+    private static final int MAX_NANOS = 3;
+    private static final int ROWS = 4;
+    private static final int HISTOGRAM = 5;
+
+    /** Number of fields of one operation */
+    private static final int STRIDE = HISTOGRAM + HISTOGRAM_BUCKETS;
+
+    private final AtomicLongArray mValues = new AtomicLongArray(OPERATION_NAMES.length * STRIDE);
+
+    /**
+     * Record one operation that started at the given {@link System#nanoTime()} and ends now.
+     *
+     * @param rows the number of rows the operation returned or changed, or -1 if it failed
+     */
+    void record(int operation, long startNanos, long rows) {
+        long nanos = System.nanoTime() - startNanos;
+        int base = operation * STRIDE;
+        mValues.incrementAndGet(base + COUNT);
+        if (rows < 0) {
+            mValues.incrementAndGet(base + ERRORS);
+        } else {
+            mValues.addAndGet(base + ROWS, rows);
+        }
+        mValues.addAndGet(base + TOTAL_NANOS, nanos);
+        long max;
+        do {
+            max = mValues.get(base + MAX_NANOS);
+        } while (nanos > max && !mValues.compareAndSet(base + MAX_NANOS, max, nanos));
+        mValues.incrementAndGet(base + HISTOGRAM + bucketOf(nanos));
+    }
+
+    /**
+     * Return the histogram bucket of the given latency.
+     */
+    static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        // Number of bits needed for the micros: 0 for 0, 1 for 1, 2 for 2 and 3, ...
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+    }
+
+    long getCount(int operation) {
+        return mValues.get(operation * STRIDE + COUNT);
+    }
+
+    long getErrors(int operation) {
+        return mValues.get(operation * STRIDE + ERRORS);
+    }
+
+    long getTotalNanos(int operation) {
+        return mValues.get(operation * STRIDE + TOTAL_NANOS);
+    }
+
+    long getMaxNanos(int operation) {
+        return mValues.get(operation * STRIDE + MAX_NANOS);
+    }
+
+    long getRows(int operation) {
+        return mValues.get(operation * STRIDE + ROWS);
+    }
+
+    long[] getHistogram(int operation) {
+        long[] histogram = new long[HISTOGRAM_BUCKETS];
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            histogram[i] = mValues.get(operation * STRIDE + HISTOGRAM + i);
+        }
+        return histogram;
+    }
+
+    /**
+     * Set every counter back to zero.
+     */
+    void reset() {
+        for (int i = 0; i < mValues.length(); i++) {
+            mValues.set(i, 0);
+        }
+    }
+
+    /**
+     * Return a snapshot of every counter, laid out as described by
+     * {@link UnitContract#METHOD_GET_METRICS}.
+     */
+    Bundle toBundle() {
+        Bundle metrics = new Bundle();
+        for (int operation = 0; operation < OPERATION_NAMES.length; operation++) {
+            Bundle values = new Bundle();
+            values.putLong(UnitContract.METRIC_COUNT, getCount(operation));
+            values.putLong(UnitContract.METRIC_ERRORS, getErrors(operation));
+            values.putLong(UnitContract.METRIC_TOTAL_NANOS, getTotalNanos(operation));
+            values.putLong(UnitContract.METRIC_MAX_NANOS, getMaxNanos(operation));
+            values.putLong(UnitContract.METRIC_ROWS, getRows(operation));
+            values.putLongArray(UnitContract.METRIC_LATENCY_HISTOGRAM, getHistogram(operation));
+            metrics.putBundle(OPERATION_NAMES[operation], values);
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.amosh.inventoryapp.data;
+
+import java.math.BigDecimal;
+
+/**
+ * Conversion between the price text people type and read, e.g. "12.50", and the whole number of
+ * cents stored in {@link UnitContract.UnitEntry#COLUMN_UNIT_PRICE}. Uses {@link BigDecimal}, so no
+ * value is ever rounded through a float.
+ */
+public final class UnitPrice {
+
+    /** Number of decimal places of a price */
+    private static final int SCALE = 2;
+
+    private UnitPrice() {}
+
+    /**
+     * Parse a price such as "12", "12.5" or "12.50" into cents.
+     *
+     * @throws IllegalArgumentException if the text isn't a price, is negative or has fractions of
+     *                                  a cent
+     */
+    public static long parseCents(String text) {
+        BigDecimal price;
+        try {
+            price = new BigDecimal(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a price: " + text);
+        }
+        if (price.signum() < 0) {
+            throw new IllegalArgumentException("Price cannot be negative: " + text);
+        }
+        try {
+            return price.movePointRight(SCALE).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Price must be in whole cents: " + text);
+        }
+    }
+
+    /**
+     * Format cents as a price with two decimal places, e.g. 1250 as "12.50".
+     */
+    public static String format(long cents) {
+        return BigDecimal.valueOf(cents, SCALE).toPlainString();
+    }
+}
@@ -1,15 +1,36 @@
 package com.example.amosh.inventoryapp.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.text.TextUtils;
 import android.util.Log;
+import android.util.LruCache;
 
+import com.example.amosh.inventoryapp.R;
+import com.example.amosh.inventoryapp.data.UnitContract.LocationEntry;
+import com.example.amosh.inventoryapp.data.UnitContract.LocationTotals;
 import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitMovementDayEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class UnitProvider extends ContentProvider {
 
@@ -27,6 +48,51 @@ public class UnitProvider extends ContentProvider {
      * URI matcher code for the content URI for a single unit in the units table
      */
     private static final int UNIT_ID = 101;
+
+    /**
+     * URI matcher code for the content URI for a full-text search over unit names
+     */
+    private static final int UNIT_SEARCH = 102;
+
+    /**
+     * URI matcher code for the content URI for the stock summary
+     */
+    private static final int UNIT_SUMMARY = 103;
+
+    /**
+     * URI matcher code for the content URI for the sales per day of a single unit
+     */
+    private static final int UNIT_SALES = 104;
+
+    /**
+     * URI matcher code for the content URI for the units that need reordering
+     */
+    private static final int UNIT_LOW_STOCK = 105;
+
+    /**
+     * URI matcher code for the content URI for the local changes to push to the sync server
+     */
+    private static final int UNIT_CHANGES = 106;
+
+    /**
+     * URI matcher code for the content URI for the unit with a given SKU
+     */
+    private static final int UNIT_SKU = 107;
+
+    /** URI matcher code for the content URI for the locations table */
+    private static final int LOCATIONS = 108;
+
+    /** URI matcher code for the content URI for a single location */
+    private static final int LOCATION_ID = 109;
+
+    /** URI matcher code for the content URI for the units stocked at a location */
+    private static final int LOCATION_UNITS = 110;
+
+    /** URI matcher code for the content URI for the stock totals per location */
+    private static final int LOCATION_TOTALS = 111;
+
+    /** Number of SKUs whose unit _id is remembered for repeat scans */
+    private static final int SKU_CACHE_SIZE = 500;
     /**
      * UriMatcher object to match a content URI to a corresponding code.
      * The input passed into the constructor represents the code to return for the root URI.
@@ -52,20 +118,111 @@ public class UnitProvider extends ContentProvider {
         // For example, "content://com.example.amosh.inventoryapp/units/3" matches, but
         // "content://com.example.amosh.inventoryapp/units" (without a number at the end) doesn't match.
         sUriMatcher.addURI(UnitContract.CONTENT_AUTHORITY, UnitContract.PATH_UNITS + "/#", UNIT_ID);
+
+        // The content URI of the form "content://com.example.amosh.inventoryapp/units/search/*" will
+        // map to the integer code {@link #UNIT_SEARCH}. The last path segment is the search text.
+        sUriMatcher.addURI(UnitContract.CONTENT_AUTHORITY,
+                UnitContract.PATH_UNITS + "/" + UnitContract.PATH_SEARCH + "/*", UNIT_SEARCH);
+
+        // The content URI of the form "content://com.example.amosh.inventoryapp/units/summary" will
+        // map to the integer code {@link #UNIT_SUMMARY}.
+        sUriMatcher.addURI(UnitContract.CONTENT_AUTHORITY,
+                UnitContract.PATH_UNITS + "/" + UnitContract.PATH_SUMMARY, UNIT_SUMMARY);
+
+        // The content URI of the form "content://com.example.amosh.inventoryapp/units/#/sales" will
+        // map to the integer code {@link #UNIT_SALES}.
+        sUriMatcher.addURI(UnitContract.CONTENT_AUTHORITY,
+                UnitContract.PATH_UNITS + "/#/" + UnitContract.PATH_SALES, UNIT_SALES);
+
+        // The content URI of the form "content://com.example.amosh.inventoryapp/units/low_stock"
+        // will map to the integer code {@link #UNIT_LOW_STOCK}.
+        sUriMatcher.addURI(UnitContract.CONTENT_AUTHORITY,
+                UnitContract.PATH_UNITS + "/" + UnitContract.PATH_LOW_STOCK, UNIT_LOW_STOCK);
+
+        // The content URI of the form "content://com.example.amosh.inventoryapp/units/changes"
+        // will map to the integer code {@link #UNIT_CHANGES}.
+        sUriMatcher.addURI(UnitContract.CONTENT_AUTHORITY,
+                UnitContract.PATH_UNITS + "/" + UnitContract.PATH_CHANGES, UNIT_CHANGES);
+
+        // The content URI of the form "content://com.example.amosh.inventoryapp/units/sku/*"
+        // will map to the integer code {@link #UNIT_SKU}. The last path segment is the SKU.
+        sUriMatcher.addURI(UnitContract.CONTENT_AUTHORITY,
+                UnitContract.PATH_UNITS + "/" + UnitContract.PATH_SKU + "/*", UNIT_SKU);
+
+        // The content URIs of the form "content://com.example.amosh.inventoryapp/locations",
+        // ".../locations/#", ".../locations/#/units" and ".../locations/totals" will map to the
+        // integer codes {@link #LOCATIONS}, {@link #LOCATION_ID}, {@link #LOCATION_UNITS} and
+        // {@link #LOCATION_TOTALS}. "totals" isn't a number, so it never matches "#".
+        sUriMatcher.addURI(UnitContract.CONTENT_AUTHORITY, UnitContract.PATH_LOCATIONS, LOCATIONS);
+        sUriMatcher.addURI(UnitContract.CONTENT_AUTHORITY,
+                UnitContract.PATH_LOCATIONS + "/#", LOCATION_ID);
+        sUriMatcher.addURI(UnitContract.CONTENT_AUTHORITY,
+                UnitContract.PATH_LOCATIONS + "/#/" + UnitContract.PATH_UNITS, LOCATION_UNITS);
+        sUriMatcher.addURI(UnitContract.CONTENT_AUTHORITY,
+                UnitContract.PATH_LOCATIONS + "/" + UnitContract.PATH_TOTALS, LOCATION_TOTALS);
     }
+    /**
+     * URI every list cursor is registered on. It is a child of {@link UnitEntry#CONTENT_URI}, so
+     * inserts and deletes notified there reach it, but changes to single units notified on their
+     * own URI don't: list screens patch those rows without re-running the whole list query.
+     */
+    private static final Uri LIST_NOTIFICATION_URI =
+            Uri.withAppendedPath(UnitEntry.CONTENT_URI, "list");
+
     /**
      * Database helper object
      */
     private UnitDbHelper mDbHelper;
 
+    /**
+     * In-memory copy of the units table serving plain list and single unit queries, or null when
+     * disabled by {@link R.bool#unit_cache_enabled}
+     */
+    private UnitSnapshotCache mCache;
+
+    /**
+     * _id of the unit each recently sold SKU belonged to. Sales check the SKU again in SQL, so an
+     * entry that went stale after an edit or delete only costs one lookup through the SKU index.
+     */
+    private final LruCache<String, Long> mSkuIds = new LruCache<>(SKU_CACHE_SIZE);
+
+    /** Counters and latencies of every operation, returned by {@link UnitContract#METHOD_GET_METRICS} */
+    private final UnitMetrics mMetrics = new UnitMetrics();
+
+    /**
+     * URIs changed by the {@link #applyBatch(ArrayList)} running on the current thread, null
+     * outside of a batch
+     */
+    private final ThreadLocal<Set<Uri>> mNotifyUris = new ThreadLocal<>();
+
     @Override
     public boolean onCreate() {
+        // Runs on the main thread while the process starts, so nothing here touches the disk:
+        // the database is opened by the first operation, on the caller's thread
         mDbHelper = new UnitDbHelper(getContext());
+        Resources resources = getContext().getResources();
+        if (resources.getBoolean(R.bool.unit_cache_enabled)) {
+            mCache = new UnitSnapshotCache(
+                    resources.getInteger(R.integer.unit_cache_max_kilobytes) * 1024L);
+        }
         return true;
     }
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        long start = System.nanoTime();
+        Cursor cursor = null;
+        try {
+            cursor = queryUnits(uri, projection, selection, selectionArgs, sortOrder);
+            return cursor;
+        } finally {
+            // Counting the rows runs the query here, which the caller's first read would anyway
+            mMetrics.record(UnitMetrics.QUERY, start, cursor == null ? -1 : cursor.getCount());
+        }
+    }
+
+    private Cursor queryUnits(Uri uri, String[] projection, String selection,
+                              String[] selectionArgs, String sortOrder) {
         // Get readable database
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
 
@@ -76,13 +233,74 @@ public class UnitProvider extends ContentProvider {
         int match = sUriMatcher.match(uri);
         switch (match) {
             case UNITS:
-                // For the UNITS code, query the units table directly with the given
-                // projection, selection, selection arguments, and sort order. The cursor
-                // could contain multiple rows of the units table.
-                cursor = database.query(UnitEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                // Only queries without a selection of their own can come from the cache
+                boolean cacheable = mCache != null && selection == null;
+
+                // Search by name prefix as a range on the NOCASE name index
+                String search = uri.getQueryParameter(UnitContract.QUERY_PARAMETER_SEARCH);
+                if (!TextUtils.isEmpty(search)) {
+                    String prefix = foldAsciiCase(search);
+                    selection = DatabaseUtils.concatenateWhere(selection,
+                            UnitEntry.COLUMN_UNIT_NAME + " COLLATE NOCASE >= ?");
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                            new String[]{prefix});
+                    String upperBound = nextPrefix(prefix);
+                    if (upperBound != null) {
+                        selection = DatabaseUtils.concatenateWhere(selection,
+                                UnitEntry.COLUMN_UNIT_NAME + " COLLATE NOCASE < ?");
+                        selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                                new String[]{upperBound});
+                    }
+                }
+
+                String sort = uri.getQueryParameter(UnitContract.QUERY_PARAMETER_SORT);
+                if (sort != null) {
+                    sortOrder = getSortOrder(sort);
+                }
+
+                // For keyset paging, only return the rows after the given _id, in _id order
+                String afterId = uri.getQueryParameter(UnitContract.QUERY_PARAMETER_AFTER_ID);
+                if (afterId != null) {
+                    if (sort != null) {
+                        throw new IllegalArgumentException("Cannot page by _id and sort by "
+                                + sort + " in " + uri);
+                    }
+                    selection = DatabaseUtils.concatenateWhere(selection, UnitEntry._ID + ">?");
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                            new String[]{String.valueOf(Long.parseLong(afterId))});
+                    sortOrder = UnitEntry._ID + " ASC";
+                }
+
+                // Plain pages in _id order can come from the cache
+                cacheable = cacheable && TextUtils.isEmpty(search) && sort == null
+                        && (sortOrder == null || sortOrder.equalsIgnoreCase(UnitEntry._ID + " ASC"));
+                cursor = null;
+                if (cacheable) {
+                    // Like the LIMIT clause, the offset only counts together with a limit
+                    long limit = parseLong(uri, UnitContract.QUERY_PARAMETER_LIMIT, -1);
+                    long offset = limit < 0 ? 0 : parseLong(uri, UnitContract.QUERY_PARAMETER_OFFSET, 0);
+                    cursor = mCache.queryUnits(database, projection,
+                            afterId == null ? Long.MIN_VALUE : Long.parseLong(afterId), offset, limit);
+                } else if (mCache != null) {
+                    mCache.recordMiss();
+                }
+                if (cursor == null) {
+                    // For the UNITS code, query the units table directly with the given
+                    // projection, selection, selection arguments, and sort order. The cursor
+                    // could contain multiple rows of the units table.
+                    cursor = database.query(UnitEntry.TABLE_NAME, projection, selection,
+                            selectionArgs, null, null, sortOrder, getLimit(uri));
+                }
                 break;
             case UNIT_ID:
+                if (mCache != null) {
+                    cursor = selection == null
+                            ? mCache.queryUnit(database, projection, ContentUris.parseId(uri))
+                            : mCache.recordMiss();
+                    if (cursor != null) {
+                        break;
+                    }
+                }
                 // For the UNIT_ID code, extract out the ID from the URI.
                 // For an example URI such as "content://com.example.amosh.inventoryapp/units/3",
                 // the selection will be "_id=?" and the selection argument will be a
@@ -99,16 +317,222 @@ public class UnitProvider extends ContentProvider {
                 cursor = database.query(UnitEntry.TABLE_NAME, projection, selection, selectionArgs,
                         null, null, sortOrder);
                 break;
+            case UNIT_SEARCH:
+                // Look the matching ids up in the full-text index, then read those rows by _id
+                String matchQuery = toMatchQuery(uri.getLastPathSegment());
+                if (matchQuery == null) {
+                    // Nothing to search for, so nothing matches
+                    selection = DatabaseUtils.concatenateWhere(selection, "0");
+                } else {
+                    selection = DatabaseUtils.concatenateWhere(selection, UnitEntry._ID
+                            + " IN (SELECT docid FROM " + UnitEntry.SEARCH_TABLE_NAME
+                            + " WHERE " + UnitEntry.SEARCH_TABLE_NAME + " MATCH ?)");
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                            new String[]{matchQuery});
+                }
+
+                String searchSort = uri.getQueryParameter(UnitContract.QUERY_PARAMETER_SORT);
+                if (searchSort != null) {
+                    sortOrder = getSortOrder(searchSort);
+                } else if (sortOrder == null) {
+                    // Rank names that start with the search text first, then shorter names
+                    sortOrder = "(" + UnitEntry.COLUMN_UNIT_NAME + " LIKE "
+                            + DatabaseUtils.sqlEscapeString(uri.getLastPathSegment().trim() + "%")
+                            + ") DESC, length(" + UnitEntry.COLUMN_UNIT_NAME + ") ASC, "
+                            + UnitEntry._ID + " ASC";
+                }
+                cursor = database.query(UnitEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder, getLimit(uri));
+                break;
+            case UNIT_SUMMARY:
+                // The summary always has the same columns and covers every unit
+                cursor = mDbHelper.readSummary();
+                // Every insert, update or delete of a unit changes the summary
+                cursor.setNotificationUri(getContext().getContentResolver(), UnitEntry.CONTENT_URI);
+                return cursor;
+            case UNIT_LOW_STOCK:
+                // Look the units up by _id from the low stock table, never scanning the units
+                selection = DatabaseUtils.concatenateWhere(selection, UnitEntry._ID
+                        + " IN (SELECT unit_id FROM " + UnitEntry.LOW_STOCK_TABLE_NAME + ")");
+                String lowStockSort = uri.getQueryParameter(UnitContract.QUERY_PARAMETER_SORT);
+                if (lowStockSort != null) {
+                    sortOrder = getSortOrder(lowStockSort);
+                } else if (sortOrder == null) {
+                    // Furthest below the reorder level first
+                    sortOrder = UnitEntry.COLUMN_UNIT_QUANTITY + " - " + UnitEntry.COLUMN_UNIT_REORDER_LEVEL
+                            + " ASC, " + UnitEntry._ID + " ASC";
+                }
+                cursor = database.query(UnitEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder, getLimit(uri));
+                // Any sale or edit can add units to the list or remove them
+                cursor.setNotificationUri(getContext().getContentResolver(), UnitEntry.CONTENT_URI);
+                return cursor;
+            case UNIT_SALES:
+                long unitId = Long.parseLong(uri.getPathSegments().get(1));
+                // Without bounds, every day from the epoch to today
+                long today = System.currentTimeMillis() / UnitMovementDayEntry.MILLIS_PER_DAY;
+                long fromDay = Math.max(0, parseLong(uri, UnitContract.QUERY_PARAMETER_FROM_DAY, 0));
+                long toDay = Math.min(today, parseLong(uri, UnitContract.QUERY_PARAMETER_TO_DAY, today));
+                cursor = mDbHelper.readSales(unitId, fromDay, toDay);
+                // Sales are notified on the unit's own URI
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        ContentUris.withAppendedId(UnitEntry.CONTENT_URI, unitId));
+                return cursor;
+            case UNIT_SKU:
+                // At most one unit, found through the unique SKU index
+                selection = DatabaseUtils.concatenateWhere(selection,
+                        UnitEntry.COLUMN_UNIT_SKU + " = ?");
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                        new String[]{uri.getLastPathSegment()});
+                cursor = database.query(UnitEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                // Any edit can give the SKU to another unit or take it away
+                cursor.setNotificationUri(getContext().getContentResolver(), UnitEntry.CONTENT_URI);
+                return cursor;
+            case LOCATIONS:
+            case LOCATION_ID:
+                if (match == LOCATION_ID) {
+                    selection = DatabaseUtils.concatenateWhere(selection, LocationEntry._ID + " = ?");
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                            new String[]{String.valueOf(ContentUris.parseId(uri))});
+                }
+                cursor = database.query(LocationEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder);
+                cursor.setNotificationUri(getContext().getContentResolver(), LocationEntry.CONTENT_URI);
+                return cursor;
+            case LOCATION_UNITS:
+                // In _id order through the covering stock index, like the default list order
+                cursor = mDbHelper.readLocationUnits(
+                        Long.parseLong(uri.getPathSegments().get(1)), getLimit(uri));
+                // Sales and edits change the main location's stock, transfers any location's
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        UnitContract.BASE_CONTENT_URI);
+                return cursor;
+            case LOCATION_TOTALS:
+                cursor = mDbHelper.readLocationTotals();
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        UnitContract.BASE_CONTENT_URI);
+                return cursor;
+            case UNIT_CHANGES:
+                // Always in version order with the sync columns, read page by page
+                String limit = uri.getQueryParameter(UnitContract.QUERY_PARAMETER_LIMIT);
+                cursor = mDbHelper.readChanges(
+                        parseLong(uri, UnitContract.QUERY_PARAMETER_AFTER_VERSION, 0),
+                        limit == null ? Integer.MAX_VALUE : Integer.parseInt(limit));
+                cursor.setNotificationUri(getContext().getContentResolver(), UnitEntry.CONTENT_URI);
+                return cursor;
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI " + uri);
         }
         //set notification URI on the Cursor,
         //so we know what content URI the Cursor was created for,
         //If the data at this URI changed, then we know we need to update the Cursor.
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        cursor.setNotificationUri(getContext().getContentResolver(),
+                match == UNIT_ID ? uri : LIST_NOTIFICATION_URI);
         return cursor;
     }
     
+    /**
+     * Return the ORDER BY clause for a {@link UnitContract#QUERY_PARAMETER_SORT} value. Every
+     * order matches one of the indexes created by {@link UnitDbHelper}.
+     */
+    private static String getSortOrder(String sort) {
+        switch (sort) {
+            case UnitContract.SORT_NAME:
+                return UnitEntry.COLUMN_UNIT_NAME + " COLLATE NOCASE ASC, " + UnitEntry._ID + " ASC";
+            case UnitContract.SORT_PRICE:
+                return UnitEntry.COLUMN_UNIT_PRICE + " ASC, " + UnitEntry._ID + " ASC";
+            case UnitContract.SORT_QUANTITY:
+                return UnitEntry.COLUMN_UNIT_QUANTITY + " ASC, " + UnitEntry._ID + " ASC";
+            default:
+                throw new IllegalArgumentException("Cannot sort units by " + sort);
+        }
+    }
+
+    /**
+     * Lower-case the ASCII letters of the given text, the same way SQLite's NOCASE collation does.
+     * Other characters are left as they are, because NOCASE compares them exactly.
+     */
+    private static String foldAsciiCase(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] >= 'A' && chars[i] <= 'Z') {
+                chars[i] = (char) (chars[i] + ('a' - 'A'));
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Return the smallest string that sorts after every string starting with the given prefix, or
+     * null if there is none.
+     */
+    private static String nextPrefix(String prefix) {
+        for (int i = prefix.length() - 1; i >= 0; i--) {
+            char last = prefix.charAt(i);
+            if (last == '@') {
+                // 'A' to 'Z' fold to lower case, so '[' is the next character NOCASE can see
+                return prefix.substring(0, i) + '[';
+            }
+            if (last != Character.MAX_VALUE) {
+                return prefix.substring(0, i) + (char) (last + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Turn free search text into an FTS MATCH expression where every word matches as a prefix,
+     * e.g. "green te" becomes "green* te*". Returns null when the text has no words.
+     */
+    private static String toMatchQuery(String text) {
+        StringBuilder matchQuery = new StringBuilder();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            // Skip anything the FTS tokenizer treats as a separator, including its query syntax
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                if (matchQuery.length() > 0) {
+                    matchQuery.append(' ');
+                }
+                matchQuery.append(text, start, i).append('*');
+            }
+        }
+        return matchQuery.length() == 0 ? null : matchQuery.toString();
+    }
+
+    /**
+     * Build the SQL LIMIT clause from the limit and offset query parameters of the given URI, or
+     * return null when the URI has no limit.
+     */
+    private static String getLimit(Uri uri) {
+        String limit = uri.getQueryParameter(UnitContract.QUERY_PARAMETER_LIMIT);
+        if (limit == null) {
+            return null;
+        }
+        long rowCount = Long.parseLong(limit);
+        String offset = uri.getQueryParameter(UnitContract.QUERY_PARAMETER_OFFSET);
+        if (offset == null) {
+            return String.valueOf(rowCount);
+        }
+        return Long.parseLong(offset) + "," + rowCount;
+    }
+
+    /**
+     * Return the value of a numeric query parameter, or the default if the URI doesn't have it.
+     */
+    private static long parseLong(Uri uri, String parameter, long defaultValue) {
+        String value = uri.getQueryParameter(parameter);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
     @Override
     public String getType(Uri uri) {
         final int match = sUriMatcher.match(uri);
@@ -117,6 +541,26 @@ public class UnitProvider extends ContentProvider {
                 return UnitEntry.CONTENT_LIST_TYPE;
             case UNIT_ID:
                 return UnitEntry.CONTENT_ITEM_TYPE;
+            case UNIT_SEARCH:
+                return UnitEntry.CONTENT_LIST_TYPE;
+            case UNIT_SUMMARY:
+                return UnitContract.UnitSummary.CONTENT_ITEM_TYPE;
+            case UNIT_SALES:
+                return UnitContract.UnitSales.CONTENT_LIST_TYPE;
+            case UNIT_LOW_STOCK:
+                return UnitEntry.CONTENT_LIST_TYPE;
+            case UNIT_CHANGES:
+                return UnitContract.UnitChanges.CONTENT_LIST_TYPE;
+            case UNIT_SKU:
+                return UnitEntry.CONTENT_ITEM_TYPE;
+            case LOCATIONS:
+                return LocationEntry.CONTENT_LIST_TYPE;
+            case LOCATION_ID:
+                return LocationEntry.CONTENT_ITEM_TYPE;
+            case LOCATION_UNITS:
+                return UnitEntry.CONTENT_LIST_TYPE;
+            case LOCATION_TOTALS:
+                return LocationTotals.CONTENT_LIST_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
         }
@@ -124,12 +568,22 @@ public class UnitProvider extends ContentProvider {
 
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
-        final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case UNITS:
-                return insertUnit(uri, contentValues);
-            default:
-                throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        long start = System.nanoTime();
+        Uri newUri = null;
+        try {
+            final int match = sUriMatcher.match(uri);
+            switch (match) {
+                case UNITS:
+                    newUri = insertUnit(uri, contentValues);
+                    return newUri;
+                case LOCATIONS:
+                    newUri = insertLocation(uri, contentValues);
+                    return newUri;
+                default:
+                    throw new IllegalArgumentException("Insertion is not supported for " + uri);
+            }
+        } finally {
+            mMetrics.record(UnitMetrics.INSERT, start, newUri == null ? -1 : 1);
         }
     }
 
@@ -138,48 +592,83 @@ public class UnitProvider extends ContentProvider {
      * for that specific row in the database.
      */
     private Uri insertUnit(Uri uri, ContentValues values) {
+        UnitValidator.validateInsert(values);
+
         // Get writeable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
-        //Check that the name is not null
-        String name = values.getAsString(UnitEntry.COLUMN_UNIT_NAME);
-        if (name != null && name.isEmpty()) {
-            throw new IllegalArgumentException("supply requires a name");
-        }
-
-        //Check that the imageUri is not null
-        String imageUri = values.getAsString(UnitEntry.COLUMN_UNIT_IMAGE_URI);
-        if (imageUri != null && imageUri.isEmpty()) {
-            throw new IllegalArgumentException("supply requires an image");
-        }
-        //Check the Quantity is not null
-        Integer quantity = values.getAsInteger(UnitEntry.COLUMN_UNIT_QUANTITY);
-        if (quantity != null && quantity < 0) {
-            throw new IllegalArgumentException("supply requires valid quantity");
-
-        }
 
-        //Check the Quantity is not null
-        Float price = values.getAsFloat(UnitEntry.COLUMN_UNIT_PRICE);
-        if (price != null && price < 0) {
-            throw new IllegalArgumentException("please add valid unit price");
+        // Insert the new unit with the given values, and its stock into the movement ledger
+        long id;
+        database.beginTransaction();
+        try {
+            id = database.insert(UnitEntry.TABLE_NAME, null, values);
+            if (id != -1) {
+                Integer quantity = values.getAsInteger(UnitEntry.COLUMN_UNIT_QUANTITY);
+                UnitDbHelper.recordInsertedStock(database, id, quantity == null ? 0 : quantity);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
-
-        // Insert the new unit with the given values
-        long id = database.insert(UnitEntry.TABLE_NAME, null, values);
         // If the ID is -1, then the insertion failed. Log an error and return null.
         if (id == -1) {
             Log.e(LOG_TAG, "Failed to insert row for " + uri);
             return null;
         }
+        writeThrough(ContentUris.withAppendedId(UnitEntry.CONTENT_URI, id));
         // Notify all listeners that the data has changed for the unit content URI
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
 
         // Return the new URI with the ID (of the newly inserted row) appended at the end
         return ContentUris.withAppendedId(uri, id);
     }
 
+    /**
+     * Insert a location with the name given in the values, and return its content URI.
+     */
+    private Uri insertLocation(Uri uri, ContentValues values) {
+        validateLocationName(values);
+        long id = mDbHelper.getWritableDatabase().insert(LocationEntry.TABLE_NAME, null, values);
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+        notifyChange(LocationEntry.CONTENT_URI);
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Check that the values hold a name for a location and nothing else, throwing an
+     * {@link IllegalArgumentException} otherwise.
+     */
+    private static void validateLocationName(ContentValues values) {
+        String name = values.getAsString(LocationEntry.COLUMN_LOCATION_NAME);
+        if (TextUtils.isEmpty(name) || values.size() != 1) {
+            throw new IllegalArgumentException("location requires a name and nothing else");
+        }
+    }
+
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = System.nanoTime();
+        int rowsDeleted = -1;
+        try {
+            if (sUriMatcher.match(uri) == LOCATION_ID) {
+                // Its stock goes back to the main location, so every unit list can change
+                rowsDeleted = mDbHelper.deleteLocation(ContentUris.parseId(uri));
+                if (rowsDeleted != 0) {
+                    notifyChange(LocationEntry.CONTENT_URI);
+                }
+                return rowsDeleted;
+            }
+            rowsDeleted = deleteUnits(uri, selection, selectionArgs);
+            return rowsDeleted;
+        } finally {
+            mMetrics.record(UnitMetrics.DELETE, start, rowsDeleted);
+        }
+    }
+
+    private int deleteUnits(Uri uri, String selection, String[] selectionArgs) {
 
         // Get writeable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
@@ -202,10 +691,11 @@ public class UnitProvider extends ContentProvider {
             default:
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
         }
-        // If 1 or more rows were deleted, then notify all listeners that the data at the
-        // given URI has changed
+        // If 1 or more rows were deleted, then notify all listeners that the set of units has
+        // changed, even for a single unit, because lists have to drop its row
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            writeThroughRemoval(uri);
+            notifyChange(UnitEntry.CONTENT_URI);
         }
         // Return the number of rows deleted
         return rowsDeleted;
@@ -213,19 +703,37 @@ public class UnitProvider extends ContentProvider {
     @Override
     public int update(Uri uri, ContentValues contentValues, String selection,
                       String[] selectionArgs) {
-        final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case UNITS:
-                return updateUnit(uri, contentValues, selection, selectionArgs);
-            case UNIT_ID:
-                // For the UNIT_ID code, extract out the ID from the URI,
-                // so we know which row to update. Selection will be "_id=?" and selection
-                // arguments will be a String array containing the actual ID.
-                selection = UnitEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                return updateUnit(uri, contentValues, selection, selectionArgs);
-            default:
-                throw new IllegalArgumentException("Update is not supported for " + uri);
+        long start = System.nanoTime();
+        int rowsUpdated = -1;
+        try {
+            final int match = sUriMatcher.match(uri);
+            switch (match) {
+                case UNITS:
+                    rowsUpdated = updateUnit(uri, contentValues, selection, selectionArgs);
+                    return rowsUpdated;
+                case UNIT_ID:
+                    // For the UNIT_ID code, extract out the ID from the URI,
+                    // so we know which row to update. Selection will be "_id=?" and selection
+                    // arguments will be a String array containing the actual ID.
+                    selection = UnitEntry._ID + "=?";
+                    selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                    rowsUpdated = updateUnit(uri, contentValues, selection, selectionArgs);
+                    return rowsUpdated;
+                case LOCATION_ID:
+                    // Only the name of a location can change; its stock moves by transfers
+                    validateLocationName(contentValues);
+                    rowsUpdated = mDbHelper.getWritableDatabase().update(LocationEntry.TABLE_NAME,
+                            contentValues, LocationEntry._ID + "=?",
+                            new String[]{String.valueOf(ContentUris.parseId(uri))});
+                    if (rowsUpdated != 0) {
+                        notifyChange(LocationEntry.CONTENT_URI);
+                    }
+                    return rowsUpdated;
+                default:
+                    throw new IllegalArgumentException("Update is not supported for " + uri);
+            }
+        } finally {
+            mMetrics.record(UnitMetrics.UPDATE, start, rowsUpdated);
         }
     }
 
@@ -235,60 +743,491 @@ public class UnitProvider extends ContentProvider {
      * Return the number of rows that were successfully updated.
      */
     private int updateUnit(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
-        // If the {@link unitEntry#COLUMN_UNIT_NAME} key is present,
-        // check that the name value is not null.
-        if (values.containsKey(UnitEntry.COLUMN_UNIT_NAME)) {
-            String name = values.getAsString(UnitEntry.COLUMN_UNIT_NAME);
-            if (name == null) {
-                throw new IllegalArgumentException("unit requires a name");
+        UnitValidator.validateUpdate(values);
+
+        // If there are no values to update, then don't try to update the database
+        if (values.size() == 0) {
+            return 0;
+        }
+
+        // Otherwise, get writeable database to update the data
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        // Perform the update on the database and get the number of rows affected. A new quantity
+        // is appended to the movement ledger in the same transaction.
+        int rowsUpdated;
+        database.beginTransaction();
+        try {
+            Integer quantity = values.getAsInteger(UnitEntry.COLUMN_UNIT_QUANTITY);
+            if (quantity != null) {
+                UnitDbHelper.recordQuantityUpdate(database, quantity, selection, selectionArgs);
             }
+            rowsUpdated = database.update(UnitEntry.TABLE_NAME, values, selection, selectionArgs);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        // If 1 or more rows were updated, then notify all listeners that the data at the
+        // given URI has changed. An update of a single unit is notified on its own URI only.
+        if (rowsUpdated != 0) {
+            writeThrough(uri);
+            notifyChange(uri);
+        }
+        // Return the number of rows updated
+        return rowsUpdated;
+    }
+
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        long start = System.nanoTime();
+        int rowsInserted = -1;
+        try {
+            rowsInserted = bulkInsertUnits(uri, values);
+            return rowsInserted;
+        } finally {
+            mMetrics.record(UnitMetrics.BATCH, start, rowsInserted);
+        }
+    }
+
+    /**
+     * Insert all the given units in one transaction, or none of them: a row that fails validation
+     * or a database constraint throws and nothing is inserted.
+     */
+    private int bulkInsertUnits(Uri uri, ContentValues[] values) {
+        final int match = sUriMatcher.match(uri);
+        if (match != UNITS) {
+            throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+        // Validate everything up front, so a bad row doesn't leave half a catalog behind
+        for (ContentValues row : values) {
+            UnitValidator.validateInsert(row);
         }
 
-        // If the {@link unitEntry#COLUMN_UNIT_IMAGE_URI} key is present,
-        // check that the name value is not null.
-        if (values.containsKey(UnitEntry.COLUMN_UNIT_IMAGE_URI)) {
-            String imageUri = values.getAsString(UnitEntry.COLUMN_UNIT_IMAGE_URI);
-            if (imageUri == null) {
-                throw new IllegalArgumentException("unit requires an image");
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        // One compiled INSERT per distinct column set, reused for every row that has it
+        Map<String, SQLiteStatement> statements = new HashMap<>();
+        SQLiteStatement movement = UnitDbHelper.compileInsertedStockStatement(database);
+        long time = System.currentTimeMillis();
+        int rowsInserted = 0;
+        database.beginTransaction();
+        try {
+            for (ContentValues row : values) {
+                if (row.size() == 0) {
+                    continue;
+                }
+                List<String> columns = new ArrayList<>(row.keySet());
+                Collections.sort(columns);
+                String key = TextUtils.join(",", columns);
+                SQLiteStatement statement = statements.get(key);
+                if (statement == null) {
+                    statement = database.compileStatement("INSERT INTO " + UnitEntry.TABLE_NAME
+                            + " (" + key + ") VALUES ("
+                            + TextUtils.join(",", Collections.nCopies(columns.size(), "?")) + ")");
+                    statements.put(key, statement);
+                }
+                statement.clearBindings();
+                for (int i = 0; i < columns.size(); i++) {
+                    bindValue(statement, i + 1, row.get(columns.get(i)));
+                }
+                // A row the database rejects, e.g. for a duplicate SKU, throws here and rolls the
+                // whole batch back, rows are never skipped
+                long id = statement.executeInsert();
+                rowsInserted++;
+                Integer quantity = row.getAsInteger(UnitEntry.COLUMN_UNIT_QUANTITY);
+                if (quantity != null && quantity != 0) {
+                    movement.bindLong(1, id);
+                    movement.bindLong(2, quantity);
+                    movement.bindLong(3, time);
+                    movement.executeInsert();
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            for (SQLiteStatement statement : statements.values()) {
+                statement.close();
             }
+            movement.close();
         }
 
-        // If the {@link unitEntry#COLUMN_UNIT_WEIGHT} key is present,
-        // check that the weight value is valid.
-        if (values.containsKey(UnitEntry.COLUMN_UNIT_QUANTITY)) {
-            // Check that the weight is greater than or equal to 0 kg
-            Integer quantity = values.getAsInteger(UnitEntry.COLUMN_UNIT_QUANTITY);
-            if (quantity != null && quantity < 0) {
-                throw new IllegalArgumentException("unit requires valid quantity");
+        // A single notification for the whole batch
+        if (rowsInserted != 0) {
+            writeThrough(uri);
+            notifyChange(uri);
+        }
+        return rowsInserted;
+    }
+
+    /**
+     * Bind a {@link ContentValues} value to the given 1-based statement parameter, keeping its
+     * storage class.
+     */
+    private static void bindValue(SQLiteStatement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof Float || value instanceof Double) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        long start = System.nanoTime();
+        boolean successful = false;
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        mNotifyUris.set(new HashSet<Uri>());
+        database.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+            successful = true;
+            return results;
+        } finally {
+            database.endTransaction();
+            mMetrics.record(UnitMetrics.BATCH, start, successful ? operations.size() : -1);
+            Set<Uri> uris = mNotifyUris.get();
+            mNotifyUris.remove();
+            // The batch may have been rolled back, so reload the cache from what was committed
+            if (mCache != null && !uris.isEmpty()) {
+                mCache.invalidate();
             }
+            // insert/update/delete only collected their URIs, notify them once the batch is done
+            for (Uri uri : uris) {
+                getContext().getContentResolver().notifyChange(uri, null);
+            }
+        }
+    }
+
+    /**
+     * Bring the cache up to date after a committed change to the given URI: a single unit is
+     * copied again from the database, anything else drops the cache. Changes inside
+     * {@link #applyBatch(ArrayList)} are handled once the batch ends.
+     */
+    private void writeThrough(Uri uri) {
+        if (mCache == null || mNotifyUris.get() != null) {
+            return;
+        }
+        if (sUriMatcher.match(uri) == UNIT_ID) {
+            mCache.refreshUnit(mDbHelper.getReadableDatabase(), ContentUris.parseId(uri));
+        } else {
+            mCache.invalidate();
+        }
+    }
+
+    /**
+     * Like {@link #writeThrough(Uri)}, after a change that may have removed units. A table that
+     * was too large for the cache is counted again on the next query, since it may fit now; inside
+     * a batch too, whose removals are only known here.
+     */
+    private void writeThroughRemoval(Uri uri) {
+        if (mCache != null) {
+            mCache.recordRowsRemoved();
+        }
+        writeThrough(uri);
+    }
+
+    /**
+     * Notify listeners that the data at the given URI has changed, or remember the URI until the
+     * end of the batch when called from {@link #applyBatch(ArrayList)}.
+     */
+    private void notifyChange(Uri uri) {
+        Set<Uri> batchUris = mNotifyUris.get();
+        if (batchUris != null) {
+            batchUris.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
         }
+    }
 
-        // check that the price value is valid.
-        if (values.containsKey(UnitEntry.COLUMN_UNIT_PRICE)) {
-            // Check that the price is greater than or equal to 0 $
-            Float price = values.getAsFloat(UnitEntry.COLUMN_UNIT_PRICE);
-            if (price != null && price < 0) {
-                throw new IllegalArgumentException("please add valid unit price");
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (UnitContract.METHOD_SELL.equals(method)) {
+            return sellUnit(extras);
+        }
+        if (UnitContract.METHOD_SELL_BY_SKU.equals(method)) {
+            return sellUnitBySku(extras);
+        }
+        if (UnitContract.METHOD_REBUILD_SEARCH_INDEX.equals(method)) {
+            mDbHelper.rebuildSearchIndex();
+            return null;
+        }
+        if (UnitContract.METHOD_COMPACT_MOVEMENTS.equals(method)) {
+            return compactMovements(extras);
+        }
+        if (UnitContract.METHOD_APPLY_REMOTE_CHANGES.equals(method)) {
+            return applyRemoteChanges(extras);
+        }
+        if (UnitContract.METHOD_GET_SYNC_STATE.equals(method)) {
+            long[] watermarks = mDbHelper.readSyncWatermarks();
+            Bundle result = new Bundle();
+            result.putLong(UnitContract.EXTRA_PUSH_WATERMARK, watermarks[0]);
+            result.putLong(UnitContract.EXTRA_PULL_WATERMARK, watermarks[1]);
+            return result;
+        }
+        if (UnitContract.METHOD_SET_PUSH_WATERMARK.equals(method)) {
+            if (extras == null || !extras.containsKey(UnitContract.EXTRA_PUSH_WATERMARK)) {
+                throw new IllegalArgumentException("set_push_watermark requires a watermark");
             }
+            mDbHelper.setPushWatermark(extras.getLong(UnitContract.EXTRA_PUSH_WATERMARK));
+            return null;
+        }
+        if (UnitContract.METHOD_REPRICE_UNITS.equals(method)
+                || UnitContract.METHOD_RESTOCK_UNITS.equals(method)) {
+            return updateUnits(method, extras);
+        }
+        if (UnitContract.METHOD_DELETE_UNITS.equals(method)) {
+            return deleteUnits(extras);
+        }
+        if (UnitContract.METHOD_TRANSFER_STOCK.equals(method)) {
+            return transferStock(extras);
+        }
+        if (UnitContract.METHOD_GET_CACHE_STATS.equals(method)) {
+            return getCacheStats();
         }
+        if (UnitContract.METHOD_GET_METRICS.equals(method)) {
+            Bundle metrics = mMetrics.toBundle();
+            if (extras != null && extras.getBoolean(UnitContract.EXTRA_RESET)) {
+                mMetrics.reset();
+            }
+            return metrics;
+        }
+        return super.call(method, arg, extras);
+    }
 
+    /**
+     * Decrement the quantity of the unit given in the extras by {@link UnitContract#EXTRA_COUNT}
+     * (1 when missing) without reading it first, and notify the unit's URI so loaders holding it
+     * requery.
+     */
+    private Bundle sellUnit(Bundle extras) {
+        if (extras == null || !extras.containsKey(UnitContract.EXTRA_UNIT_ID)) {
+            throw new IllegalArgumentException("sell requires a unit id");
+        }
+        long id = extras.getLong(UnitContract.EXTRA_UNIT_ID);
+        int count = extras.getInt(UnitContract.EXTRA_COUNT, 1);
+        if (count <= 0) {
+            throw new IllegalArgumentException("sell requires a positive count");
+        }
 
-        // If there are no values to update, then don't try to update the database
-        if (values.size() == 0) {
-            return 0;
+        long start = System.nanoTime();
+        int rowsUpdated = -1;
+        try {
+            rowsUpdated = mDbHelper.buyOne(id, count);
+        } finally {
+            mMetrics.record(UnitMetrics.UPDATE, start, rowsUpdated);
+        }
+        if (rowsUpdated != 0) {
+            Uri unitUri = ContentUris.withAppendedId(UnitEntry.CONTENT_URI, id);
+            writeThrough(unitUri);
+            notifyChange(unitUri);
         }
 
-        // Otherwise, get writeable database to update the data
-        SQLiteDatabase database = mDbHelper.getWritableDatabase();
-        // Perform the update on the database and get the number of rows affected
-        int rowsUpdated = database.update(UnitEntry.TABLE_NAME, values, selection, selectionArgs);
-        // If 1 or more rows were updated, then notify all listeners that the data at the
-        // given URI has changed
+        Bundle result = new Bundle();
+        result.putInt(UnitContract.EXTRA_ROWS_AFFECTED, rowsUpdated);
+        return result;
+    }
+
+    /**
+     * Sell {@link UnitContract#EXTRA_COUNT} (1 when missing) of the unit with the SKU given in the
+     * extras, starting from the _id the SKU had last time, and notify the unit's URI.
+     */
+    private Bundle sellUnitBySku(Bundle extras) {
+        String sku = extras == null ? null : extras.getString(UnitContract.EXTRA_SKU);
+        if (TextUtils.isEmpty(sku)) {
+            throw new IllegalArgumentException("sell_by_sku requires a SKU");
+        }
+        int count = extras.getInt(UnitContract.EXTRA_COUNT, 1);
+        if (count <= 0) {
+            throw new IllegalArgumentException("sell_by_sku requires a positive count");
+        }
+
+        Long cachedId = mSkuIds.get(sku);
+        long start = System.nanoTime();
+        UnitDbHelper.SkuSale sale = null;
+        try {
+            sale = mDbHelper.sellBySku(sku, count, cachedId == null ? -1 : cachedId);
+        } finally {
+            mMetrics.record(UnitMetrics.UPDATE, start, sale == null ? -1 : sale.rowsUpdated);
+        }
+        if (sale.unitId == -1) {
+            mSkuIds.remove(sku);
+        } else {
+            mSkuIds.put(sku, sale.unitId);
+        }
+        if (sale.rowsUpdated != 0) {
+            Uri unitUri = ContentUris.withAppendedId(UnitEntry.CONTENT_URI, sale.unitId);
+            writeThrough(unitUri);
+            notifyChange(unitUri);
+        }
+
+        Bundle result = new Bundle();
+        result.putLong(UnitContract.EXTRA_UNIT_ID, sale.unitId);
+        result.putInt(UnitContract.EXTRA_ROWS_AFFECTED, sale.rowsUpdated);
+        return result;
+    }
+
+    /**
+     * Reprice or restock the units whose ids are in the extras, each with one set-based statement,
+     * then reload the cache and notify every unit list once for all of them.
+     */
+    private Bundle updateUnits(String method, Bundle extras) {
+        long[] ids = getUnitIds(method, extras);
+        long start = System.nanoTime();
+        int rowsUpdated = -1;
+        try {
+            if (UnitContract.METHOD_REPRICE_UNITS.equals(method)) {
+                if (!extras.containsKey(UnitContract.EXTRA_BASIS_POINTS)) {
+                    throw new IllegalArgumentException(method + " requires a price change");
+                }
+                rowsUpdated = mDbHelper.repriceUnits(ids,
+                        extras.getInt(UnitContract.EXTRA_BASIS_POINTS));
+            } else {
+                rowsUpdated = mDbHelper.restockUnits(ids, extras.getInt(UnitContract.EXTRA_COUNT));
+            }
+        } finally {
+            mMetrics.record(UnitMetrics.UPDATE, start, rowsUpdated);
+        }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            writeThrough(UnitEntry.CONTENT_URI);
+            notifyChange(UnitEntry.CONTENT_URI);
         }
-        // Return the number of rows updated
-        return rowsUpdated;
+        Bundle result = new Bundle();
+        result.putInt(UnitContract.EXTRA_ROWS_AFFECTED, rowsUpdated);
+        return result;
     }
-}
 
+    /**
+     * Delete the units whose ids are in the extras with one set-based statement, and return the
+     * paths of their thumbnails along with the number of rows deleted.
+     */
+    private Bundle deleteUnits(Bundle extras) {
+        long[] ids = getUnitIds(UnitContract.METHOD_DELETE_UNITS, extras);
+        ArrayList<String> thumbnailPaths = new ArrayList<>();
+        long start = System.nanoTime();
+        int rowsDeleted = -1;
+        try {
+            rowsDeleted = mDbHelper.deleteUnits(ids, thumbnailPaths);
+        } finally {
+            mMetrics.record(UnitMetrics.DELETE, start, rowsDeleted);
+        }
+        if (rowsDeleted != 0) {
+            writeThroughRemoval(UnitEntry.CONTENT_URI);
+            notifyChange(UnitEntry.CONTENT_URI);
+        }
+        Bundle result = new Bundle();
+        result.putInt(UnitContract.EXTRA_ROWS_AFFECTED, rowsDeleted);
+        result.putStringArray(UnitContract.EXTRA_THUMBNAIL_PATHS,
+                thumbnailPaths.toArray(new String[thumbnailPaths.size()]));
+        return result;
+    }
+
+    /**
+     * Move stock of the unit given in the extras between two locations. The unit's total doesn't
+     * change, so only the location URIs are notified.
+     */
+    private Bundle transferStock(Bundle extras) {
+        if (extras == null || !extras.containsKey(UnitContract.EXTRA_UNIT_ID)
+                || !extras.containsKey(UnitContract.EXTRA_FROM_LOCATION_ID)
+                || !extras.containsKey(UnitContract.EXTRA_TO_LOCATION_ID)) {
+            throw new IllegalArgumentException("transfer_stock requires a unit and two locations");
+        }
+        long fromLocationId = extras.getLong(UnitContract.EXTRA_FROM_LOCATION_ID);
+        long toLocationId = extras.getLong(UnitContract.EXTRA_TO_LOCATION_ID);
+        if (fromLocationId == toLocationId) {
+            throw new IllegalArgumentException("transfer_stock requires two different locations");
+        }
+        int count = extras.getInt(UnitContract.EXTRA_COUNT, 1);
+        if (count <= 0) {
+            throw new IllegalArgumentException("transfer_stock requires a positive count");
+        }
+
+        long start = System.nanoTime();
+        int rowsUpdated = -1;
+        try {
+            rowsUpdated = mDbHelper.transferStock(extras.getLong(UnitContract.EXTRA_UNIT_ID),
+                    fromLocationId, toLocationId, count);
+        } finally {
+            mMetrics.record(UnitMetrics.UPDATE, start, rowsUpdated);
+        }
+        if (rowsUpdated != 0) {
+            notifyChange(LocationEntry.CONTENT_URI);
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(UnitContract.EXTRA_ROWS_AFFECTED, rowsUpdated);
+        return result;
+    }
+
+    private static long[] getUnitIds(String method, Bundle extras) {
+        long[] ids = extras == null ? null : extras.getLongArray(UnitContract.EXTRA_UNIT_IDS);
+        if (ids == null) {
+            throw new IllegalArgumentException(method + " requires unit ids");
+        }
+        return ids;
+    }
+
+    /**
+     * Apply a page of changes from the sync server in one transaction, then reload the cache and
+     * notify every unit list, since any unit may have been inserted, changed or deleted.
+     */
+    private Bundle applyRemoteChanges(Bundle extras) {
+        ArrayList<ContentValues> changes = extras == null ? null
+                : extras.<ContentValues>getParcelableArrayList(UnitContract.EXTRA_CHANGES);
+        if (changes == null) {
+            throw new IllegalArgumentException("apply_remote_changes requires a list of changes");
+        }
+        long start = System.nanoTime();
+        int rowsApplied = -1;
+        try {
+            mDbHelper.applyRemoteChanges(changes,
+                    extras.getLong(UnitContract.EXTRA_PULL_WATERMARK, -1));
+            rowsApplied = changes.size();
+        } finally {
+            mMetrics.record(UnitMetrics.BATCH, start, rowsApplied);
+        }
+        if (!changes.isEmpty()) {
+            // Remote changes can delete units as well as add and change them
+            writeThroughRemoval(UnitEntry.CONTENT_URI);
+            notifyChange(UnitEntry.CONTENT_URI);
+        }
+        Bundle result = new Bundle();
+        result.putInt(UnitContract.EXTRA_ROWS_AFFECTED, rowsApplied);
+        return result;
+    }
+
+    /**
+     * Roll old stock movements up into daily totals, keeping the number of days of single
+     * movements given in the extras or configured by {@link R.integer#movement_retention_days}.
+     */
+    private Bundle compactMovements(Bundle extras) {
+        int retentionDays = getContext().getResources().getInteger(R.integer.movement_retention_days);
+        if (extras != null) {
+            retentionDays = extras.getInt(UnitContract.EXTRA_RETENTION_DAYS, retentionDays);
+        }
+        if (retentionDays < 0) {
+            throw new IllegalArgumentException("compacting movements requires a retention of 0 days or more");
+        }
+        Bundle result = new Bundle();
+        result.putInt(UnitContract.EXTRA_ROWS_AFFECTED, mDbHelper.compactMovements(retentionDays));
+        return result;
+    }
+
+    private Bundle getCacheStats() {
+        if (mCache == null) {
+            return null;
+        }
+        Bundle result = new Bundle();
+        result.putLong(UnitContract.EXTRA_CACHE_HITS, mCache.getHitCount());
+        result.putLong(UnitContract.EXTRA_CACHE_MISSES, mCache.getMissCount());
+        result.putLong(UnitContract.EXTRA_CACHE_BYTES, mCache.getSizeBytes());
+        return result;
+    }
+}
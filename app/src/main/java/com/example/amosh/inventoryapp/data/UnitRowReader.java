@@ -0,0 +1,62 @@
+package com.example.amosh.inventoryapp.data;
+
+import android.database.Cursor;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+
+/**
+ * Typed access to the rows of a units cursor. The column indices of {@link UnitEntry#PROJECTION}
+ * are looked up once when the reader is created, so reading a row is a plain index access with no
+ * name lookups, boxing or String parsing. Columns missing from the cursor read as 0 or null.
+ */
+public class UnitRowReader {
+
+    private final Cursor mCursor;
+
+    private final int mIdColumn;
+    private final int mNameColumn;
+    private final int mQuantityColumn;
+    private final int mPriceColumn;
+    private final int mImageUriColumn;
+    private final int mThumbnailPathColumn;
+
+    public UnitRowReader(Cursor cursor) {
+        mCursor = cursor;
+        mIdColumn = cursor.getColumnIndex(UnitEntry._ID);
+        mNameColumn = cursor.getColumnIndex(UnitEntry.COLUMN_UNIT_NAME);
+        mQuantityColumn = cursor.getColumnIndex(UnitEntry.COLUMN_UNIT_QUANTITY);
+        mPriceColumn = cursor.getColumnIndex(UnitEntry.COLUMN_UNIT_PRICE);
+        mImageUriColumn = cursor.getColumnIndex(UnitEntry.COLUMN_UNIT_IMAGE_URI);
+        mThumbnailPathColumn = cursor.getColumnIndex(UnitEntry.COLUMN_UNIT_THUMBNAIL_PATH);
+    }
+
+    /** The cursor this reader reads from */
+    public Cursor getCursor() {
+        return mCursor;
+    }
+
+    public long getId() {
+        return mIdColumn == -1 ? 0 : mCursor.getLong(mIdColumn);
+    }
+
+    public String getName() {
+        return mNameColumn == -1 ? null : mCursor.getString(mNameColumn);
+    }
+
+    public int getQuantity() {
+        return mQuantityColumn == -1 ? 0 : mCursor.getInt(mQuantityColumn);
+    }
+
+    /** The price in cents */
+    public long getPriceCents() {
+        return mPriceColumn == -1 ? 0 : mCursor.getLong(mPriceColumn);
+    }
+
+    public String getImageUri() {
+        return mImageUriColumn == -1 ? null : mCursor.getString(mImageUriColumn);
+    }
+
+    public String getThumbnailPath() {
+        return mThumbnailPathColumn == -1 ? null : mCursor.getString(mThumbnailPathColumn);
+    }
+}
@@ -0,0 +1,370 @@
+package com.example.amosh.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copy of the units table for {@link UnitProvider}, kept column by column in primitive
+ * arrays sorted by _id, with names interned. It is loaded from SQLite on the first query it can
+ * serve and written through by the provider after every change, so reads in _id order and reads
+ * of single units never touch the database.
+ *
+ * <p>When the table grows beyond the memory cap the copy is dropped and every query goes to
+ * SQLite. Loading stops at the cap, so it never holds much more than the cap either. The table
+ * stays too large through invalidations, which follow inserts and updates, and is only counted
+ * again after units were removed. All methods are thread safe.
+ */
+class UnitSnapshotCache {
+
+    private static final String LOG_TAG = UnitSnapshotCache.class.getSimpleName();
+
+    /** Estimated bytes per row for the primitive columns and the String references */
+    private static final int ROW_BYTES = 8 + 4 + 8 + 3 * 4;
+
+    /** Estimated bytes of a String besides its characters */
+    private static final int STRING_BYTES = 40;
+
+    private final long mMaxBytes;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    /** Whether the arrays hold the whole table */
+    private boolean mLoaded;
+
+    /** Whether the table didn't fit under {@link #mMaxBytes} the last time it was loaded */
+    private boolean mTooLarge;
+
+    /** Number of rows the cache held when the table stopped fitting */
+    private int mTooLargeRows;
+
+    /** Whether units were removed since the table stopped fitting, so it may fit again */
+    private boolean mRowsRemoved;
+
+    private int mSize;
+    private long[] mIds = new long[0];
+    private String[] mNames = new String[0];
+    private int[] mQuantities = new int[0];
+    private long[] mPrices = new long[0];
+    private String[] mImageUris = new String[0];
+    private String[] mThumbnailPaths = new String[0];
+
+    /** Estimated memory held by the arrays and their Strings */
+    private long mBytes;
+
+    /**
+     * @param maxBytes the most memory the copy of the table may take
+     */
+    UnitSnapshotCache(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Return the units in _id order, after the given _id, skipping {@code offset} rows and
+     * returning at most {@code limit} rows (all of them if negative). Returns null, and counts a
+     * miss, if the table doesn't fit in the cache or the projection has a column it doesn't keep.
+     */
+    synchronized Cursor queryUnits(SQLiteDatabase db, String[] projection, long afterId,
+                                   long offset, long limit) {
+        int[] kinds = getColumnKinds(projection);
+        if (kinds == null || !ensureLoaded(db)) {
+            return recordMiss();
+        }
+        int start = search(afterId);
+        start = start >= 0 ? start + 1 : -start - 1;
+        start = offset >= mSize - start ? mSize : (int) (start + offset);
+        int end = limit < 0 || limit >= mSize - start ? mSize : (int) (start + limit);
+        mHits.incrementAndGet();
+        return copy(projection, kinds, start, end);
+    }
+
+    /**
+     * Return the unit with the given _id, or null, counting a miss, under the same conditions as
+     * {@link #queryUnits(SQLiteDatabase, String[], long, long, long)}.
+     */
+    synchronized Cursor queryUnit(SQLiteDatabase db, String[] projection, long id) {
+        int[] kinds = getColumnKinds(projection);
+        if (kinds == null || !ensureLoaded(db)) {
+            return recordMiss();
+        }
+        int index = search(id);
+        mHits.incrementAndGet();
+        return index < 0 ? copy(projection, kinds, 0, 0) : copy(projection, kinds, index, index + 1);
+    }
+
+    /**
+     * Count a query the cache couldn't serve, because of its selection or sort order. Always
+     * returns null.
+     */
+    Cursor recordMiss() {
+        mMisses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Copy the committed row of the unit with the given _id from the database, after it was
+     * inserted or updated. Removes it if it no longer exists.
+     */
+    synchronized void refreshUnit(SQLiteDatabase db, long id) {
+        if (!mLoaded) {
+            return;
+        }
+        Cursor cursor = db.query(UnitEntry.TABLE_NAME, UnitEntry.PROJECTION, UnitEntry._ID + "=?",
+                new String[]{String.valueOf(id)}, null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                removeUnit(id);
+                return;
+            }
+            int index = search(id);
+            if (index >= 0) {
+                mBytes -= rowBytes(index);
+            } else {
+                index = -index - 1;
+                insertAt(index);
+            }
+            setRow(index, new UnitRowReader(cursor));
+            mBytes += rowBytes(index);
+        } finally {
+            cursor.close();
+        }
+        checkSize();
+    }
+
+    /**
+     * Remove the unit with the given _id after it was deleted.
+     */
+    synchronized void removeUnit(long id) {
+        if (!mLoaded) {
+            return;
+        }
+        int index = search(id);
+        if (index < 0) {
+            return;
+        }
+        mBytes -= rowBytes(index);
+        int moved = mSize - index - 1;
+        System.arraycopy(mIds, index + 1, mIds, index, moved);
+        System.arraycopy(mNames, index + 1, mNames, index, moved);
+        System.arraycopy(mQuantities, index + 1, mQuantities, index, moved);
+        System.arraycopy(mPrices, index + 1, mPrices, index, moved);
+        System.arraycopy(mImageUris, index + 1, mImageUris, index, moved);
+        System.arraycopy(mThumbnailPaths, index + 1, mThumbnailPaths, index, moved);
+        mSize--;
+        mNames[mSize] = null;
+        mImageUris[mSize] = null;
+        mThumbnailPaths[mSize] = null;
+    }
+
+    /**
+     * Drop the copy after a change the cache can't follow row by row, such as an update or delete
+     * with a selection. The next query loads the table again, unless it was too large and no units
+     * were removed since, see {@link #recordRowsRemoved()}.
+     */
+    synchronized void invalidate() {
+        clear();
+    }
+
+    /**
+     * Note that units were deleted, so a table that was too large is counted again by the next
+     * query and loaded if it has fewer rows than when it stopped fitting.
+     */
+    synchronized void recordRowsRemoved() {
+        mRowsRemoved = true;
+    }
+
+    long getHitCount() {
+        return mHits.get();
+    }
+
+    long getMissCount() {
+        return mMisses.get();
+    }
+
+    /** Estimated memory used by the cached rows, in bytes */
+    synchronized long getSizeBytes() {
+        return mBytes;
+    }
+
+    /**
+     * Return the kind of every column of the projection, or null if one isn't kept. A null
+     * projection means every column of the table, which may be more than the cache keeps.
+     */
+    private static int[] getColumnKinds(String[] projection) {
+        if (projection == null) {
+            return null;
+        }
+        int[] kinds = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            kinds[i] = UnitSnapshotCursor.getColumnKind(projection[i]);
+            if (kinds[i] == -1) {
+                return null;
+            }
+        }
+        return kinds;
+    }
+
+    /**
+     * Load the whole table if it isn't loaded yet. Returns false if it doesn't fit.
+     */
+    private boolean ensureLoaded(SQLiteDatabase db) {
+        if (mLoaded) {
+            return true;
+        }
+        if (mTooLarge) {
+            // Counting reads the smallest index once, far less than loading up to the cap
+            if (!mRowsRemoved
+                    || DatabaseUtils.queryNumEntries(db, UnitEntry.TABLE_NAME) >= mTooLargeRows) {
+                mRowsRemoved = false;
+                return false;
+            }
+            mTooLarge = false;
+        }
+        Cursor cursor = db.query(UnitEntry.TABLE_NAME, UnitEntry.PROJECTION, null, null, null, null,
+                UnitEntry._ID + " ASC");
+        try {
+            UnitRowReader row = new UnitRowReader(cursor);
+            // The arrays grow with the rows read rather than being sized for the whole table
+            while (cursor.moveToNext()) {
+                ensureCapacity(mSize + 1);
+                setRow(mSize, row);
+                mBytes += rowBytes(mSize);
+                mSize++;
+                if (mBytes > mMaxBytes) {
+                    break;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        mLoaded = true;
+        return checkSize();
+    }
+
+    /**
+     * Drop the copy if it has grown beyond the memory cap. Returns false if it was dropped.
+     */
+    private boolean checkSize() {
+        if (mBytes <= mMaxBytes) {
+            return true;
+        }
+        Log.i(LOG_TAG, "Units take more than " + mMaxBytes + " bytes, reading them from SQLite");
+        mTooLargeRows = mSize;
+        clear();
+        mTooLarge = true;
+        mRowsRemoved = false;
+        return false;
+    }
+
+    private void clear() {
+        mLoaded = false;
+        mSize = 0;
+        mBytes = 0;
+        mIds = new long[0];
+        mNames = new String[0];
+        mQuantities = new int[0];
+        mPrices = new long[0];
+        mImageUris = new String[0];
+        mThumbnailPaths = new String[0];
+    }
+
+    /**
+     * Binary search the sorted ids, returning the index of the id or (-(insertion point) - 1).
+     */
+    private int search(long id) {
+        return Arrays.binarySearch(mIds, 0, mSize, id);
+    }
+
+    /** Make room for a row at the given index, shifting the rows after it */
+    private void insertAt(int index) {
+        ensureCapacity(mSize + 1);
+        int moved = mSize - index;
+        System.arraycopy(mIds, index, mIds, index + 1, moved);
+        System.arraycopy(mNames, index, mNames, index + 1, moved);
+        System.arraycopy(mQuantities, index, mQuantities, index + 1, moved);
+        System.arraycopy(mPrices, index, mPrices, index + 1, moved);
+        System.arraycopy(mImageUris, index, mImageUris, index + 1, moved);
+        System.arraycopy(mThumbnailPaths, index, mThumbnailPaths, index + 1, moved);
+        mSize++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mIds.length) {
+            return;
+        }
+        // Doubling stops at the rows the cap can hold even if their Strings were empty
+        long maxRows = mMaxBytes / ROW_BYTES + 1;
+        int newCapacity = (int) Math.max(capacity,
+                Math.min(Math.max(16, mIds.length * 2L), maxRows));
+        mIds = Arrays.copyOf(mIds, newCapacity);
+        mNames = Arrays.copyOf(mNames, newCapacity);
+        mQuantities = Arrays.copyOf(mQuantities, newCapacity);
+        mPrices = Arrays.copyOf(mPrices, newCapacity);
+        mImageUris = Arrays.copyOf(mImageUris, newCapacity);
+        mThumbnailPaths = Arrays.copyOf(mThumbnailPaths, newCapacity);
+    }
+
+    private void setRow(int index, UnitRowReader row) {
+        mIds[index] = row.getId();
+        String name = row.getName();
+        mNames[index] = name == null ? null : name.intern();
+        mQuantities[index] = row.getQuantity();
+        mPrices[index] = row.getPriceCents();
+        mImageUris[index] = row.getImageUri();
+        mThumbnailPaths[index] = row.getThumbnailPath();
+    }
+
+    private long rowBytes(int index) {
+        return ROW_BYTES + stringBytes(mNames[index]) + stringBytes(mImageUris[index])
+                + stringBytes(mThumbnailPaths[index]);
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : STRING_BYTES + 2 * value.length();
+    }
+
+    /**
+     * Copy rows {@code start} to {@code end} of the requested columns into a cursor, so later
+     * writes don't change what it returns.
+     */
+    private Cursor copy(String[] projection, int[] kinds, int start, int end) {
+        int count = end - start;
+        long[] ids = null;
+        String[] names = null;
+        int[] quantities = null;
+        long[] prices = null;
+        String[] imageUris = null;
+        String[] thumbnailPaths = null;
+        for (int kind : kinds) {
+            switch (kind) {
+                case UnitSnapshotCursor.ID:
+                    ids = Arrays.copyOfRange(mIds, start, end);
+                    break;
+                case UnitSnapshotCursor.NAME:
+                    names = Arrays.copyOfRange(mNames, start, end);
+                    break;
+                case UnitSnapshotCursor.QUANTITY:
+                    quantities = Arrays.copyOfRange(mQuantities, start, end);
+                    break;
+                case UnitSnapshotCursor.PRICE:
+                    prices = Arrays.copyOfRange(mPrices, start, end);
+                    break;
+                case UnitSnapshotCursor.IMAGE_URI:
+                    imageUris = Arrays.copyOfRange(mImageUris, start, end);
+                    break;
+                default:
+                    thumbnailPaths = Arrays.copyOfRange(mThumbnailPaths, start, end);
+                    break;
+            }
+        }
+        return new UnitSnapshotCursor(projection, kinds, count, ids, names, quantities, prices,
+                imageUris, thumbnailPaths);
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.amosh.inventoryapp.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+
+/**
+ * Read-only cursor over a copy of some rows of {@link UnitSnapshotCache}, kept column by column in
+ * primitive arrays. Only the columns of {@link UnitEntry#PROJECTION} exist.
+ */
+class UnitSnapshotCursor extends AbstractCursor {
+
+    /** Kinds of column, one per column of {@link UnitEntry#PROJECTION} */
+    static final int ID = 0;
+    static final int NAME = 1;
+    static final int QUANTITY = 2;
+    static final int PRICE = 3;
+    static final int IMAGE_URI = 4;
+    static final int THUMBNAIL_PATH = 5;
+
+    private final String[] mColumnNames;
+
+    /** Kind of each column in {@link #mColumnNames} */
+    private final int[] mColumnKinds;
+
+    private final int mCount;
+    private final long[] mIds;
+    private final String[] mNames;
+    private final int[] mQuantities;
+    private final long[] mPrices;
+    private final String[] mImageUris;
+    private final String[] mThumbnailPaths;
+
+    UnitSnapshotCursor(String[] columnNames, int[] columnKinds, int count, long[] ids,
+                       String[] names, int[] quantities, long[] prices, String[] imageUris,
+                       String[] thumbnailPaths) {
+        mColumnNames = columnNames;
+        mColumnKinds = columnKinds;
+        mCount = count;
+        mIds = ids;
+        mNames = names;
+        mQuantities = quantities;
+        mPrices = prices;
+        mImageUris = imageUris;
+        mThumbnailPaths = thumbnailPaths;
+    }
+
+    /**
+     * Return the kind of the given column name, or -1 if the snapshot doesn't have it.
+     */
+    static int getColumnKind(String column) {
+        for (int kind = 0; kind < UnitEntry.PROJECTION.length; kind++) {
+            if (UnitEntry.PROJECTION[kind].equals(column)) {
+                return kind;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public int getType(int column) {
+        switch (mColumnKinds[column]) {
+            case ID:
+            case QUANTITY:
+            case PRICE:
+                return Cursor.FIELD_TYPE_INTEGER;
+            default:
+                return getString(column) == null ? Cursor.FIELD_TYPE_NULL : Cursor.FIELD_TYPE_STRING;
+        }
+    }
+
+    @Override
+    public String getString(int column) {
+        int row = getPosition();
+        switch (mColumnKinds[column]) {
+            case ID:
+                return String.valueOf(mIds[row]);
+            case NAME:
+                return mNames[row];
+            case QUANTITY:
+                return String.valueOf(mQuantities[row]);
+            case PRICE:
+                return String.valueOf(mPrices[row]);
+            case IMAGE_URI:
+                return mImageUris[row];
+            default:
+                return mThumbnailPaths[row];
+        }
+    }
+
+    @Override
+    public long getLong(int column) {
+        int row = getPosition();
+        switch (mColumnKinds[column]) {
+            case ID:
+                return mIds[row];
+            case QUANTITY:
+                return mQuantities[row];
+            case PRICE:
+                return mPrices[row];
+            default:
+                return parseLong(getString(column));
+        }
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return getType(column) == Cursor.FIELD_TYPE_NULL;
+    }
+
+    /** Text columns read as numbers the way SQLite converts them: 0 unless the text is a number */
+    private static long parseLong(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
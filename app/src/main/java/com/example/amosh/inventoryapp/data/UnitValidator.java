@@ -0,0 +1,130 @@
+package com.example.amosh.inventoryapp.data;
+
+import android.content.ContentValues;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+
+/**
+ * The rules unit values must follow to be written, shared by {@link UnitProvider} and by callers
+ * that check values before queueing a write, so both reject exactly the same input.
+ */
+public final class UnitValidator {
+
+    private UnitValidator() {}
+
+    /**
+     * Check that the values for a new unit are valid, throwing an {@link IllegalArgumentException}
+     * otherwise.
+     */
+    public static void validateInsert(ContentValues values) {
+        //Check that the name is not null
+        String name = values.getAsString(UnitEntry.COLUMN_UNIT_NAME);
+        if (name != null && name.isEmpty()) {
+            throw new IllegalArgumentException("supply requires a name");
+        }
+
+        //Check that the imageUri is not null
+        String imageUri = values.getAsString(UnitEntry.COLUMN_UNIT_IMAGE_URI);
+        if (imageUri != null && imageUri.isEmpty()) {
+            throw new IllegalArgumentException("supply requires an image");
+        }
+        //Check the Quantity is not null
+        Integer quantity = values.getAsInteger(UnitEntry.COLUMN_UNIT_QUANTITY);
+        if (quantity != null && quantity < 0) {
+            throw new IllegalArgumentException("supply requires valid quantity");
+
+        }
+
+        validateReorderLevel(values);
+        validatePrice(values);
+        validateSku(values);
+    }
+
+    /**
+     * Check that the values present in an update are valid, throwing an
+     * {@link IllegalArgumentException} otherwise.
+     */
+    public static void validateUpdate(ContentValues values) {
+        // If the {@link unitEntry#COLUMN_UNIT_NAME} key is present,
+        // check that the name value is not null.
+        if (values.containsKey(UnitEntry.COLUMN_UNIT_NAME)) {
+            String name = values.getAsString(UnitEntry.COLUMN_UNIT_NAME);
+            if (name == null) {
+                throw new IllegalArgumentException("unit requires a name");
+            }
+        }
+
+        // If the {@link unitEntry#COLUMN_UNIT_IMAGE_URI} key is present,
+        // check that the name value is not null.
+        if (values.containsKey(UnitEntry.COLUMN_UNIT_IMAGE_URI)) {
+            String imageUri = values.getAsString(UnitEntry.COLUMN_UNIT_IMAGE_URI);
+            if (imageUri == null) {
+                throw new IllegalArgumentException("unit requires an image");
+            }
+        }
+
+        // If the {@link unitEntry#COLUMN_UNIT_WEIGHT} key is present,
+        // check that the weight value is valid.
+        if (values.containsKey(UnitEntry.COLUMN_UNIT_QUANTITY)) {
+            // Check that the weight is greater than or equal to 0 kg
+            Integer quantity = values.getAsInteger(UnitEntry.COLUMN_UNIT_QUANTITY);
+            if (quantity != null && quantity < 0) {
+                throw new IllegalArgumentException("unit requires valid quantity");
+            }
+        }
+
+        validateReorderLevel(values);
+
+        // check that the price value is valid.
+        validatePrice(values);
+        validateSku(values);
+    }
+
+    /**
+     * Check that the reorder level, if present, is a non-negative number, throwing an
+     * {@link IllegalArgumentException} otherwise.
+     */
+    private static void validateReorderLevel(ContentValues values) {
+        if (!values.containsKey(UnitEntry.COLUMN_UNIT_REORDER_LEVEL)) {
+            return;
+        }
+        Integer reorderLevel = values.getAsInteger(UnitEntry.COLUMN_UNIT_REORDER_LEVEL);
+        if (reorderLevel == null || reorderLevel < 0) {
+            throw new IllegalArgumentException("unit requires a valid reorder level");
+        }
+    }
+
+    /**
+     * Check that the SKU, if present, is either null, to clear it, or text without leading or
+     * trailing white space, throwing an {@link IllegalArgumentException} otherwise. Scanners and
+     * the editor trim what they read, so an untrimmed SKU would never be found.
+     */
+    private static void validateSku(ContentValues values) {
+        if (!values.containsKey(UnitEntry.COLUMN_UNIT_SKU)) {
+            return;
+        }
+        String sku = values.getAsString(UnitEntry.COLUMN_UNIT_SKU);
+        if (sku != null && (sku.isEmpty() || !sku.trim().equals(sku))) {
+            throw new IllegalArgumentException("unit requires a valid SKU");
+        }
+    }
+
+    /**
+     * Check that the price, if present, is a whole, non-negative number of cents, throwing an
+     * {@link IllegalArgumentException} otherwise. Fractional prices are rejected rather than
+     * rounded, so a caller still passing prices in dollars fails loudly.
+     */
+    private static void validatePrice(ContentValues values) {
+        Object value = values.get(UnitEntry.COLUMN_UNIT_PRICE);
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Float || value instanceof Double) {
+            throw new IllegalArgumentException("unit price must be in whole cents");
+        }
+        Long price = values.getAsLong(UnitEntry.COLUMN_UNIT_PRICE);
+        if (price == null || price < 0) {
+            throw new IllegalArgumentException("please add valid unit price");
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.amosh.inventoryapp.sync;
+
+/**
+ * Decides what becomes of a local change the server rejected because the unit changed there too.
+ */
+public interface ConflictResolver {
+
+    /**
+     * Return the unit to push in place of the local change, to be based on the server's version,
+     * or null to take the server's unit as it is.
+     *
+     * @param local  the rejected local change, possibly a deletion
+     * @param server the unit as the server holds it, possibly a deletion
+     */
+    UnitChange resolve(UnitChange local, UnitChange server);
+}
@@ -0,0 +1,22 @@
+package com.example.amosh.inventoryapp.sync;
+
+/**
+ * Resolves conflicts the way concurrent stock keeping needs: stock moved on both sides adds up,
+ * so sales made on two devices are both counted, while the name, price, image and reorder level
+ * are taken from the server, the last write to reach it winning. An edit wins over a deletion on
+ * the other side.
+ */
+public class MergingConflictResolver implements ConflictResolver {
+
+    @Override
+    public UnitChange resolve(UnitChange local, UnitChange server) {
+        if (local.isDeleted()) {
+            return null;
+        }
+        if (server.isDeleted()) {
+            return local;
+        }
+        int localDelta = local.getQuantity() - local.getSyncedQuantity();
+        return server.withQuantity(Math.max(0, server.getQuantity() + localDelta));
+    }
+}
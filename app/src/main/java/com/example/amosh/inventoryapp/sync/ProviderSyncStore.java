@@ -0,0 +1,142 @@
+package com.example.amosh.inventoryapp.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.amosh.inventoryapp.data.UnitContract;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitChanges;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link SyncStore} over the {@link com.example.amosh.inventoryapp.data.UnitProvider}: local changes
+ * are read from {@link UnitChanges#CONTENT_URI} and server changes written with
+ * {@link UnitContract#METHOD_APPLY_REMOTE_CHANGES}, which keeps the provider's cache and loaders
+ * up to date. Must not be used on the main thread.
+ */
+public class ProviderSyncStore implements SyncStore {
+
+    private final ContentResolver mContentResolver;
+
+    public ProviderSyncStore(Context context) {
+        mContentResolver = context.getApplicationContext().getContentResolver();
+    }
+
+    @Override
+    public List<UnitChange> readLocalChanges(long afterVersion, int limit) {
+        Uri uri = UnitChanges.CONTENT_URI.buildUpon()
+                .appendQueryParameter(UnitContract.QUERY_PARAMETER_AFTER_VERSION,
+                        String.valueOf(afterVersion))
+                .appendQueryParameter(UnitContract.QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                .build();
+        Cursor cursor = mContentResolver.query(uri, null, null, null, null);
+        if (cursor == null) {
+            throw new IllegalStateException("Query of " + uri + " failed");
+        }
+        try {
+            int syncIdColumn = cursor.getColumnIndexOrThrow(UnitEntry.COLUMN_UNIT_SYNC_ID);
+            int versionColumn = cursor.getColumnIndexOrThrow(UnitEntry.COLUMN_UNIT_VERSION);
+            int serverVersionColumn = cursor.getColumnIndexOrThrow(UnitEntry.COLUMN_UNIT_SERVER_VERSION);
+            int syncedQuantityColumn = cursor.getColumnIndexOrThrow(UnitEntry.COLUMN_UNIT_SYNCED_QUANTITY);
+            int deletedColumn = cursor.getColumnIndexOrThrow(UnitChanges.COLUMN_DELETED);
+            int nameColumn = cursor.getColumnIndexOrThrow(UnitEntry.COLUMN_UNIT_NAME);
+            int quantityColumn = cursor.getColumnIndexOrThrow(UnitEntry.COLUMN_UNIT_QUANTITY);
+            int priceColumn = cursor.getColumnIndexOrThrow(UnitEntry.COLUMN_UNIT_PRICE);
+            int imageUriColumn = cursor.getColumnIndexOrThrow(UnitEntry.COLUMN_UNIT_IMAGE_URI);
+            int reorderLevelColumn = cursor.getColumnIndexOrThrow(UnitEntry.COLUMN_UNIT_REORDER_LEVEL);
+            List<UnitChange> changes = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                String syncId = cursor.getString(syncIdColumn);
+                long version = cursor.getLong(versionColumn);
+                long serverVersion = cursor.getLong(serverVersionColumn);
+                if (cursor.getInt(deletedColumn) != 0) {
+                    changes.add(UnitChange.deletion(syncId, version, serverVersion));
+                } else {
+                    changes.add(UnitChange.unit(syncId, version, serverVersion,
+                            cursor.getInt(syncedQuantityColumn), cursor.getString(nameColumn),
+                            cursor.getInt(quantityColumn), cursor.getLong(priceColumn),
+                            cursor.getString(imageUriColumn), cursor.getInt(reorderLevelColumn)));
+                }
+            }
+            return changes;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public long getPushWatermark() {
+        return getSyncState().getLong(UnitContract.EXTRA_PUSH_WATERMARK);
+    }
+
+    @Override
+    public void setPushWatermark(long version) {
+        Bundle extras = new Bundle();
+        extras.putLong(UnitContract.EXTRA_PUSH_WATERMARK, version);
+        mContentResolver.call(UnitEntry.CONTENT_URI, UnitContract.METHOD_SET_PUSH_WATERMARK,
+                null, extras);
+    }
+
+    @Override
+    public long getPullWatermark() {
+        return getSyncState().getLong(UnitContract.EXTRA_PULL_WATERMARK);
+    }
+
+    private Bundle getSyncState() {
+        return mContentResolver.call(UnitEntry.CONTENT_URI, UnitContract.METHOD_GET_SYNC_STATE,
+                null, null);
+    }
+
+    @Override
+    public void applyPulledChanges(List<UnitChange> changes, long pullWatermark) {
+        Bundle extras = toExtras(changes, false);
+        extras.putLong(UnitContract.EXTRA_PULL_WATERMARK, pullWatermark);
+        mContentResolver.call(UnitEntry.CONTENT_URI, UnitContract.METHOD_APPLY_REMOTE_CHANGES,
+                null, extras);
+    }
+
+    @Override
+    public void applyPushResults(List<UnitChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        mContentResolver.call(UnitEntry.CONTENT_URI, UnitContract.METHOD_APPLY_REMOTE_CHANGES,
+                null, toExtras(changes, true));
+    }
+
+    /**
+     * Return the changes as the extras of {@link UnitContract#METHOD_APPLY_REMOTE_CHANGES}, with
+     * the local versions pushed if {@code pushed}.
+     */
+    private static Bundle toExtras(List<UnitChange> changes, boolean pushed) {
+        ArrayList<ContentValues> list = new ArrayList<>(changes.size());
+        for (UnitChange change : changes) {
+            ContentValues values = new ContentValues();
+            values.put(UnitEntry.COLUMN_UNIT_SYNC_ID, change.getSyncId());
+            values.put(UnitEntry.COLUMN_UNIT_SERVER_VERSION, change.getServerVersion());
+            if (pushed) {
+                values.put(UnitEntry.COLUMN_UNIT_VERSION, change.getVersion());
+            }
+            if (change.isDeleted()) {
+                values.put(UnitChanges.COLUMN_DELETED, true);
+            } else {
+                values.put(UnitEntry.COLUMN_UNIT_SYNCED_QUANTITY, change.getSyncedQuantity());
+                values.put(UnitEntry.COLUMN_UNIT_NAME, change.getName());
+                values.put(UnitEntry.COLUMN_UNIT_QUANTITY, change.getQuantity());
+                values.put(UnitEntry.COLUMN_UNIT_PRICE, change.getPriceCents());
+                values.put(UnitEntry.COLUMN_UNIT_IMAGE_URI, change.getImageUri());
+                values.put(UnitEntry.COLUMN_UNIT_REORDER_LEVEL, change.getReorderLevel());
+            }
+            list.add(values);
+        }
+        Bundle extras = new Bundle();
+        extras.putParcelableArrayList(UnitContract.EXTRA_CHANGES, list);
+        return extras;
+    }
+}
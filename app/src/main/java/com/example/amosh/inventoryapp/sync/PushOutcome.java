@@ -0,0 +1,48 @@
+package com.example.amosh.inventoryapp.sync;
+
+/**
+ * What the sync server did with one pushed change: accepted it at a new server version, or
+ * rejected it because the unit changed on the server since the version the change is based on.
+ */
+public final class PushOutcome {
+
+    private final long mServerVersion;
+    private final UnitChange mServerChange;
+
+    private PushOutcome(long serverVersion, UnitChange serverChange) {
+        mServerVersion = serverVersion;
+        mServerChange = serverChange;
+    }
+
+    /**
+     * Return the outcome of a change the server now holds at the given version.
+     */
+    public static PushOutcome accepted(long serverVersion) {
+        return new PushOutcome(serverVersion, null);
+    }
+
+    /**
+     * Return the outcome of a change in conflict with the unit as the server holds it, which may
+     * be a deletion.
+     */
+    public static PushOutcome conflict(UnitChange serverChange) {
+        if (serverChange == null) {
+            throw new IllegalArgumentException("A conflict requires the server's unit");
+        }
+        return new PushOutcome(serverChange.getServerVersion(), serverChange);
+    }
+
+    public boolean isAccepted() {
+        return mServerChange == null;
+    }
+
+    /** The new server version if accepted, the server's current version otherwise */
+    public long getServerVersion() {
+        return mServerVersion;
+    }
+
+    /** The unit as the server holds it, or null if the change was accepted */
+    public UnitChange getServerChange() {
+        return mServerChange;
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.amosh.inventoryapp.sync;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The server every device syncs its units with. It numbers every change it accepts with a server
+ * version, increasing across all units.
+ */
+public interface SyncServer {
+
+    /**
+     * Push local changes. A change is accepted if the unit is still at the server version the
+     * change is based on, or if the server has never seen it.
+     *
+     * @return one outcome per change, in the same order
+     */
+    List<PushOutcome> push(List<UnitChange> changes) throws IOException;
+
+    /**
+     * Return up to {@code limit} units changed on the server after {@code afterServerVersion},
+     * deletions included, in server version order.
+     */
+    List<UnitChange> pull(long afterServerVersion, int limit) throws IOException;
+}
@@ -0,0 +1,37 @@
+package com.example.amosh.inventoryapp.sync;
+
+import java.util.List;
+
+/**
+ * The local side of a sync: the tracked changes of the units and the watermarks saying how far
+ * they have been pushed and the server's changes pulled.
+ */
+public interface SyncStore {
+
+    /**
+     * Return up to {@code limit} local changes with a version greater than {@code afterVersion},
+     * in version order.
+     */
+    List<UnitChange> readLocalChanges(long afterVersion, int limit);
+
+    /** Highest local version pushed */
+    long getPushWatermark();
+
+    void setPushWatermark(long version);
+
+    /** Highest server version pulled */
+    long getPullWatermark();
+
+    /**
+     * Write changes pulled from the server, together with the new pull watermark, without making
+     * them local changes. Units with local changes not pushed yet are left as they are.
+     */
+    void applyPulledChanges(List<UnitChange> changes, long pullWatermark);
+
+    /**
+     * Record what the server holds after a push: each change carries the local version pushed
+     * and the server version and state that came of it. Units changed locally since that version
+     * only get the server version and synced quantity.
+     */
+    void applyPushResults(List<UnitChange> changes);
+}
@@ -0,0 +1,142 @@
+package com.example.amosh.inventoryapp.sync;
+
+/**
+ * One change of a unit exchanged with the sync server: the whole synced state of an inserted or
+ * changed unit, or the deletion of one. Units are identified by their sync id, the same on every
+ * device. Instances are immutable.
+ */
+public final class UnitChange {
+
+    private final String mSyncId;
+    private final long mVersion;
+    private final long mServerVersion;
+    private final boolean mDeleted;
+    private final String mName;
+    private final int mQuantity;
+    private final int mSyncedQuantity;
+    private final long mPriceCents;
+    private final String mImageUri;
+    private final int mReorderLevel;
+
+    private UnitChange(String syncId, long version, long serverVersion, boolean deleted, String name,
+                       int quantity, int syncedQuantity, long priceCents, String imageUri,
+                       int reorderLevel) {
+        if (syncId == null) {
+            throw new IllegalArgumentException("A change requires a sync id");
+        }
+        mSyncId = syncId;
+        mVersion = version;
+        mServerVersion = serverVersion;
+        mDeleted = deleted;
+        mName = name;
+        mQuantity = quantity;
+        mSyncedQuantity = syncedQuantity;
+        mPriceCents = priceCents;
+        mImageUri = imageUri;
+        mReorderLevel = reorderLevel;
+    }
+
+    /**
+     * Return the change of an inserted or changed unit.
+     *
+     * @param version        local version of the change, 0 for a unit read from the server
+     * @param serverVersion  version on the server the change is based on, or holds
+     * @param syncedQuantity quantity on the server at {@code serverVersion}
+     */
+    public static UnitChange unit(String syncId, long version, long serverVersion,
+                                  int syncedQuantity, String name, int quantity, long priceCents,
+                                  String imageUri, int reorderLevel) {
+        return new UnitChange(syncId, version, serverVersion, false, name, quantity,
+                syncedQuantity, priceCents, imageUri, reorderLevel);
+    }
+
+    /**
+     * Return the deletion of a unit.
+     */
+    public static UnitChange deletion(String syncId, long version, long serverVersion) {
+        return new UnitChange(syncId, version, serverVersion, true, null, 0, 0, 0, null, 0);
+    }
+
+    public String getSyncId() {
+        return mSyncId;
+    }
+
+    /** Local version of the change, 0 for a unit read from the server */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /** Version on the server the change is based on, or holds */
+    public long getServerVersion() {
+        return mServerVersion;
+    }
+
+    public boolean isDeleted() {
+        return mDeleted;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getQuantity() {
+        return mQuantity;
+    }
+
+    /** Quantity on the server at {@link #getServerVersion()}, to merge stock changes against */
+    public int getSyncedQuantity() {
+        return mSyncedQuantity;
+    }
+
+    public long getPriceCents() {
+        return mPriceCents;
+    }
+
+    public String getImageUri() {
+        return mImageUri;
+    }
+
+    public int getReorderLevel() {
+        return mReorderLevel;
+    }
+
+    /**
+     * Return this change with the given local version.
+     */
+    public UnitChange withVersion(long version) {
+        return new UnitChange(mSyncId, version, mServerVersion, mDeleted, mName, mQuantity,
+                mSyncedQuantity, mPriceCents, mImageUri, mReorderLevel);
+    }
+
+    /**
+     * Return this change as held by the server at the given version, with its quantity as the
+     * synced quantity.
+     */
+    public UnitChange atServerVersion(long serverVersion) {
+        return new UnitChange(mSyncId, mVersion, serverVersion, mDeleted, mName, mQuantity,
+                mQuantity, mPriceCents, mImageUri, mReorderLevel);
+    }
+
+    /**
+     * Return this change based on the given unit as the server holds it, so stock moved since
+     * is measured from the server's quantity.
+     */
+    public UnitChange rebasedOn(UnitChange server) {
+        return new UnitChange(mSyncId, mVersion, server.mServerVersion, mDeleted, mName, mQuantity,
+                server.mQuantity, mPriceCents, mImageUri, mReorderLevel);
+    }
+
+    /**
+     * Return this change with the given quantity.
+     */
+    public UnitChange withQuantity(int quantity) {
+        return new UnitChange(mSyncId, mVersion, mServerVersion, mDeleted, mName, quantity,
+                mSyncedQuantity, mPriceCents, mImageUri, mReorderLevel);
+    }
+
+    @Override
+    public String toString() {
+        return "UnitChange{" + mSyncId + (mDeleted ? " deleted" : " " + mName + " x" + mQuantity)
+                + " v" + mVersion + " s" + mServerVersion + "}";
+    }
+}
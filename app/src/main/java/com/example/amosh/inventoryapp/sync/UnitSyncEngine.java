@@ -0,0 +1,173 @@
+package com.example.amosh.inventoryapp.sync;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Syncs the units of a {@link SyncStore} with a {@link SyncServer}, exchanging only what changed
+ * since the last sync. Local changes after the push watermark are pushed in batches, in version
+ * order, and rejected ones resolved by a {@link ConflictResolver} and pushed again. Then the
+ * server's changes after the pull watermark are pulled in batches. Each watermark moves after
+ * every batch, so an interrupted sync carries on where it stopped. Not thread safe: run one sync
+ * at a time.
+ */
+public class UnitSyncEngine {
+
+    /** Changes pushed or pulled per request */
+    public static final int DEFAULT_BATCH_SIZE = 200;
+
+    /**
+     * Times a batch is pushed again with resolved conflicts before giving up, in case the server's
+     * units keep changing underneath
+     */
+    static final int MAX_PUSH_ATTEMPTS = 3;
+
+    /**
+     * What a sync exchanged.
+     */
+    public static final class Result {
+
+        private final int mPushed;
+        private final int mPulled;
+        private final int mConflicts;
+
+        Result(int pushed, int pulled, int conflicts) {
+            mPushed = pushed;
+            mPulled = pulled;
+            mConflicts = conflicts;
+        }
+
+        /** Local changes pushed */
+        public int getPushed() {
+            return mPushed;
+        }
+
+        /** Server changes pulled */
+        public int getPulled() {
+            return mPulled;
+        }
+
+        /** Pushed changes the server rejected and the resolver settled */
+        public int getConflicts() {
+            return mConflicts;
+        }
+    }
+
+    private final SyncStore mStore;
+    private final SyncServer mServer;
+    private final ConflictResolver mResolver;
+    private final int mBatchSize;
+
+    private int mConflicts;
+
+    public UnitSyncEngine(SyncStore store, SyncServer server) {
+        this(store, server, new MergingConflictResolver(), DEFAULT_BATCH_SIZE);
+    }
+
+    public UnitSyncEngine(SyncStore store, SyncServer server, ConflictResolver resolver,
+                          int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Sync requires a positive batch size");
+        }
+        mStore = store;
+        mServer = server;
+        mResolver = resolver;
+        mBatchSize = batchSize;
+    }
+
+    /**
+     * Push the local changes, then pull the server's.
+     *
+     * @throws IOException if the server can't be reached, or a batch still conflicts after
+     *                     {@link #MAX_PUSH_ATTEMPTS} attempts. What was synced before stays synced.
+     */
+    public Result sync() throws IOException {
+        mConflicts = 0;
+        int pushed = push();
+        int pulled = pull();
+        return new Result(pushed, pulled, mConflicts);
+    }
+
+    private int push() throws IOException {
+        int pushed = 0;
+        long watermark = mStore.getPushWatermark();
+        while (true) {
+            List<UnitChange> batch = mStore.readLocalChanges(watermark, mBatchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+            mStore.applyPushResults(pushBatch(batch));
+            watermark = batch.get(batch.size() - 1).getVersion();
+            mStore.setPushWatermark(watermark);
+            pushed += batch.size();
+            if (batch.size() < mBatchSize) {
+                break;
+            }
+        }
+        return pushed;
+    }
+
+    /**
+     * Push a batch until the server has taken every change or its resolution.
+     *
+     * @return what the server holds of every unit in the batch, with the local versions pushed
+     */
+    private List<UnitChange> pushBatch(List<UnitChange> batch) throws IOException {
+        List<UnitChange> results = new ArrayList<>(batch.size());
+        List<UnitChange> toPush = batch;
+        for (int attempt = 0; !toPush.isEmpty(); attempt++) {
+            if (attempt == MAX_PUSH_ATTEMPTS) {
+                throw new IOException(toPush.size() + " changes still conflict after "
+                        + MAX_PUSH_ATTEMPTS + " attempts");
+            }
+            List<PushOutcome> outcomes = mServer.push(toPush);
+            if (outcomes.size() != toPush.size()) {
+                throw new IOException("Server returned " + outcomes.size() + " outcomes for "
+                        + toPush.size() + " changes");
+            }
+            List<UnitChange> retry = new ArrayList<>();
+            for (int i = 0; i < toPush.size(); i++) {
+                UnitChange change = toPush.get(i);
+                PushOutcome outcome = outcomes.get(i);
+                if (outcome.isAccepted()) {
+                    results.add(change.atServerVersion(outcome.getServerVersion()));
+                    continue;
+                }
+                mConflicts++;
+                UnitChange server = outcome.getServerChange();
+                UnitChange resolved = mResolver.resolve(change, server);
+                if (resolved == null) {
+                    results.add(server.atServerVersion(server.getServerVersion())
+                            .withVersion(change.getVersion()));
+                } else {
+                    retry.add(resolved.rebasedOn(server).withVersion(change.getVersion()));
+                }
+            }
+            toPush = retry;
+        }
+        return results;
+    }
+
+    private int pull() throws IOException {
+        int pulled = 0;
+        long watermark = mStore.getPullWatermark();
+        while (true) {
+            List<UnitChange> page = mServer.pull(watermark, mBatchSize);
+            if (page.isEmpty()) {
+                break;
+            }
+            List<UnitChange> changes = new ArrayList<>(page.size());
+            for (UnitChange change : page) {
+                watermark = Math.max(watermark, change.getServerVersion());
+                changes.add(change.atServerVersion(change.getServerVersion()).withVersion(0));
+            }
+            mStore.applyPulledChanges(changes, watermark);
+            pulled += page.size();
+            if (page.size() < mBatchSize) {
+                break;
+            }
+        }
+        return pulled;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.amosh.inventoryapp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Local unit tests for {@link UnitCsvReader}.
+ */
+public class UnitCsvReaderTest {
+
+    @Test
+    public void readRecord_splitsPlainFields() throws IOException {
+        UnitCsvReader reader = new UnitCsvReader(new StringReader("name,quantity,price\nCheese,5,7.00\n"));
+        assertArrayEquals(new String[]{"name", "quantity", "price"}, reader.readRecord());
+        assertArrayEquals(new String[]{"Cheese", "5", "7.00"}, reader.readRecord());
+        assertNull(reader.readRecord());
+    }
+
+    @Test
+    public void readRecord_handlesQuotedFields() throws IOException {
+        UnitCsvReader reader = new UnitCsvReader(
+                new StringReader("\"Cheese, aged\",\"say \"\"cheese\"\"\",\"two\nlines\"\r\nx,,"));
+        assertArrayEquals(new String[]{"Cheese, aged", "say \"cheese\"", "two\nlines"},
+                reader.readRecord());
+        assertArrayEquals(new String[]{"x", "", ""}, reader.readRecord());
+        assertNull(reader.readRecord());
+    }
+
+    @Test
+    public void readRecord_skipsBlankLines() throws IOException {
+        UnitCsvReader reader = new UnitCsvReader(new StringReader("\r\na\r\n\n\nb\r"));
+        assertArrayEquals(new String[]{"a"}, reader.readRecord());
+        assertArrayEquals(new String[]{"b"}, reader.readRecord());
+        assertNull(reader.readRecord());
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.amosh.inventoryapp.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for {@link UnitMetrics}.
+ */
+public class UnitMetricsTest {
+
+    @Test
+    public void bucketOf_groupsLatenciesByPowersOfTwoMicroseconds() {
+        assertEquals(0, UnitMetrics.bucketOf(999));
+        assertEquals(1, UnitMetrics.bucketOf(1000));
+        assertEquals(2, UnitMetrics.bucketOf(2000));
+        assertEquals(2, UnitMetrics.bucketOf(3999));
+        assertEquals(11, UnitMetrics.bucketOf(1024 * 1000));
+        assertEquals(UnitMetrics.HISTOGRAM_BUCKETS - 1, UnitMetrics.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void record_countsRowsAndErrorsPerOperation() {
+        UnitMetrics metrics = new UnitMetrics();
+        long start = System.nanoTime();
+        metrics.record(UnitMetrics.QUERY, start, 50);
+        metrics.record(UnitMetrics.QUERY, start, 10);
+        metrics.record(UnitMetrics.QUERY, start, -1);
+        metrics.record(UnitMetrics.DELETE, start, 3);
+
+        assertEquals(3, metrics.getCount(UnitMetrics.QUERY));
+        assertEquals(1, metrics.getErrors(UnitMetrics.QUERY));
+        assertEquals(60, metrics.getRows(UnitMetrics.QUERY));
+        assertEquals(1, metrics.getCount(UnitMetrics.DELETE));
+        assertEquals(0, metrics.getCount(UnitMetrics.INSERT));
+        assertTrue(metrics.getMaxNanos(UnitMetrics.QUERY) <= metrics.getTotalNanos(UnitMetrics.QUERY));
+
+        long histogramTotal = 0;
+        for (long bucket : metrics.getHistogram(UnitMetrics.QUERY)) {
+            histogramTotal += bucket;
+        }
+        assertEquals(3, histogramTotal);
+    }
+
+    @Test
+    public void reset_clearsEveryCounter() {
+        UnitMetrics metrics = new UnitMetrics();
+        metrics.record(UnitMetrics.BATCH, System.nanoTime(), 100);
+        metrics.reset();
+
+        assertEquals(0, metrics.getCount(UnitMetrics.BATCH));
+        assertEquals(0, metrics.getRows(UnitMetrics.BATCH));
+        assertEquals(0, metrics.getMaxNanos(UnitMetrics.BATCH));
+        assertArrayEquals(new long[UnitMetrics.HISTOGRAM_BUCKETS],
+                metrics.getHistogram(UnitMetrics.BATCH));
+    }
+}
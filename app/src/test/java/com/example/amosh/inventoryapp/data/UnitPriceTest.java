@@ -0,0 +1,42 @@
+package com.example.amosh.inventoryapp.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local unit tests for {@link UnitPrice}.
+ */
+public class UnitPriceTest {
+
+    @Test
+    public void parseCents_acceptsWholeAndDecimalPrices() {
+        assertEquals(1200, UnitPrice.parseCents("12"));
+        assertEquals(1250, UnitPrice.parseCents("12.5"));
+        assertEquals(1250, UnitPrice.parseCents(" 12.50 "));
+        assertEquals(7, UnitPrice.parseCents("0.07"));
+        assertEquals(0, UnitPrice.parseCents("0"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseCents_rejectsFractionsOfACent() {
+        UnitPrice.parseCents("0.125");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseCents_rejectsNegativePrices() {
+        UnitPrice.parseCents("-1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseCents_rejectsText() {
+        UnitPrice.parseCents("twelve");
+    }
+
+    @Test
+    public void format_alwaysShowsTwoDecimals() {
+        assertEquals("12.50", UnitPrice.format(1250));
+        assertEquals("0.07", UnitPrice.format(7));
+        assertEquals("0.00", UnitPrice.format(0));
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.amosh.inventoryapp.sync;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Local unit tests for {@link UnitSyncEngine}, syncing in-memory devices with an in-process server.
+ */
+public class UnitSyncEngineTest {
+
+    private final FakeServer mServer = new FakeServer();
+
+    @Test
+    public void sync_copiesUnitsBetweenDevices() throws Exception {
+        FakeDevice a = new FakeDevice();
+        FakeDevice b = new FakeDevice();
+        a.insert("cheese", 10);
+        a.insert("milk", 4);
+
+        assertEquals(2, sync(a).getPushed());
+        UnitSyncEngine.Result result = sync(b);
+
+        assertEquals(0, result.getPushed());
+        assertEquals(2, result.getPulled());
+        assertEquals(10, b.get("cheese").getQuantity());
+        assertEquals(4, b.get("milk").getQuantity());
+    }
+
+    @Test
+    public void sync_exchangesOnlyChangesSinceTheWatermarks() throws Exception {
+        FakeDevice a = new FakeDevice();
+        for (int i = 0; i < 5; i++) {
+            a.insert("unit" + i, i);
+        }
+        new UnitSyncEngine(a, mServer, new MergingConflictResolver(), 2).sync();
+        assertEquals(3, mServer.mPushRequests);
+
+        a.setQuantity("unit3", 30);
+        UnitSyncEngine.Result result = sync(a);
+
+        assertEquals(1, result.getPushed());
+        // Only its own change comes back
+        assertEquals(1, result.getPulled());
+        assertEquals(0, sync(a).getPushed());
+    }
+
+    @Test
+    public void sync_mergesConcurrentSales() throws Exception {
+        FakeDevice a = new FakeDevice();
+        FakeDevice b = new FakeDevice();
+        a.insert("cheese", 10);
+        sync(a);
+        sync(b);
+
+        a.setQuantity("cheese", 8);
+        b.setQuantity("cheese", 7);
+        sync(a);
+        UnitSyncEngine.Result result = sync(b);
+        sync(a);
+
+        assertEquals(1, result.getConflicts());
+        assertEquals(5, a.get("cheese").getQuantity());
+        assertEquals(5, b.get("cheese").getQuantity());
+        assertEquals(5, mServer.mUnits.get("cheese").getQuantity());
+    }
+
+    @Test
+    public void sync_propagatesDeletions() throws Exception {
+        FakeDevice a = new FakeDevice();
+        FakeDevice b = new FakeDevice();
+        a.insert("cheese", 10);
+        sync(a);
+        sync(b);
+
+        a.delete("cheese");
+        sync(a);
+        sync(b);
+
+        assertNull(b.get("cheese"));
+        assertFalse(a.mTombstones.containsKey("cheese"));
+    }
+
+    @Test
+    public void sync_keepsAnEditOverAConcurrentDeletion() throws Exception {
+        FakeDevice a = new FakeDevice();
+        FakeDevice b = new FakeDevice();
+        a.insert("cheese", 10);
+        sync(a);
+        sync(b);
+
+        a.delete("cheese");
+        b.setQuantity("cheese", 12);
+        sync(b);
+        UnitSyncEngine.Result result = sync(a);
+
+        assertEquals(1, result.getConflicts());
+        assertNotNull(a.get("cheese"));
+        assertEquals(12, a.get("cheese").getQuantity());
+    }
+
+    private UnitSyncEngine.Result sync(FakeDevice device) throws Exception {
+        return new UnitSyncEngine(device, mServer).sync();
+    }
+
+    /**
+     * Server holding the latest change of every unit, deletions included.
+     */
+    private static class FakeServer implements SyncServer {
+
+        final Map<String, UnitChange> mUnits = new HashMap<>();
+        long mVersion;
+        int mPushRequests;
+
+        @Override
+        public List<PushOutcome> push(List<UnitChange> changes) {
+            mPushRequests++;
+            List<PushOutcome> outcomes = new ArrayList<>();
+            for (UnitChange change : changes) {
+                UnitChange current = mUnits.get(change.getSyncId());
+                if (current != null && current.getServerVersion() != change.getServerVersion()) {
+                    outcomes.add(PushOutcome.conflict(current));
+                    continue;
+                }
+                mVersion++;
+                mUnits.put(change.getSyncId(), change.atServerVersion(mVersion).withVersion(0));
+                outcomes.add(PushOutcome.accepted(mVersion));
+            }
+            return outcomes;
+        }
+
+        @Override
+        public List<UnitChange> pull(long afterServerVersion, int limit) {
+            List<UnitChange> changes = new ArrayList<>();
+            for (UnitChange change : mUnits.values()) {
+                if (change.getServerVersion() > afterServerVersion) {
+                    changes.add(change);
+                }
+            }
+            Collections.sort(changes, new Comparator<UnitChange>() {
+                @Override
+                public int compare(UnitChange a, UnitChange b) {
+                    return Long.compare(a.getServerVersion(), b.getServerVersion());
+                }
+            });
+            return changes.subList(0, Math.min(limit, changes.size()));
+        }
+    }
+
+    /**
+     * Device tracking its changes the way the units database does: local edits take the next
+     * version, deletions leave tombstones, and server changes never replace unpushed edits. The
+     * sync id doubles as the unit's name.
+     */
+    private static class FakeDevice implements SyncStore {
+
+        final Map<String, UnitChange> mUnits = new HashMap<>();
+        final Map<String, UnitChange> mTombstones = new HashMap<>();
+        long mChangeCounter;
+        long mPushWatermark;
+        long mPullWatermark;
+
+        UnitChange get(String syncId) {
+            return mUnits.get(syncId);
+        }
+
+        void insert(String syncId, int quantity) {
+            mUnits.put(syncId, UnitChange.unit(syncId, ++mChangeCounter, 0, 0, syncId, quantity,
+                    100, null, 5));
+        }
+
+        void setQuantity(String syncId, int quantity) {
+            mUnits.put(syncId, mUnits.get(syncId).withQuantity(quantity).withVersion(++mChangeCounter));
+        }
+
+        void delete(String syncId) {
+            UnitChange unit = mUnits.remove(syncId);
+            mTombstones.put(syncId, UnitChange.deletion(syncId, ++mChangeCounter,
+                    unit.getServerVersion()));
+        }
+
+        @Override
+        public List<UnitChange> readLocalChanges(long afterVersion, int limit) {
+            List<UnitChange> changes = new ArrayList<>();
+            for (UnitChange change : mUnits.values()) {
+                if (change.getVersion() > afterVersion) {
+                    changes.add(change);
+                }
+            }
+            for (UnitChange change : mTombstones.values()) {
+                if (change.getVersion() > afterVersion) {
+                    changes.add(change);
+                }
+            }
+            Collections.sort(changes, new Comparator<UnitChange>() {
+                @Override
+                public int compare(UnitChange a, UnitChange b) {
+                    return Long.compare(a.getVersion(), b.getVersion());
+                }
+            });
+            return changes.subList(0, Math.min(limit, changes.size()));
+        }
+
+        @Override
+        public long getPushWatermark() {
+            return mPushWatermark;
+        }
+
+        @Override
+        public void setPushWatermark(long version) {
+            mPushWatermark = Math.max(mPushWatermark, version);
+        }
+
+        @Override
+        public long getPullWatermark() {
+            return mPullWatermark;
+        }
+
+        @Override
+        public void applyPulledChanges(List<UnitChange> changes, long pullWatermark) {
+            for (UnitChange change : changes) {
+                apply(change, null);
+            }
+            mPullWatermark = pullWatermark;
+        }
+
+        @Override
+        public void applyPushResults(List<UnitChange> changes) {
+            for (UnitChange change : changes) {
+                apply(change, change.getVersion());
+            }
+        }
+
+        private void apply(UnitChange change, Long pushedVersion) {
+            String syncId = change.getSyncId();
+            UnitChange unit = mUnits.get(syncId);
+            if (pushedVersion != null && !change.isDeleted() && unit != null) {
+                unit = UnitChange.unit(syncId, unit.getVersion(), change.getServerVersion(),
+                        change.getSyncedQuantity(), unit.getName(), unit.getQuantity(),
+                        unit.getPriceCents(), unit.getImageUri(), unit.getReorderLevel());
+                mUnits.put(syncId, unit);
+            }
+            UnitChange tombstone = mTombstones.get(syncId);
+            if (tombstone != null) {
+                if (!isCurrent(tombstone, pushedVersion)) {
+                    return;
+                }
+                mTombstones.remove(syncId);
+            }
+            if (unit != null) {
+                if (isCurrent(unit, pushedVersion)) {
+                    if (change.isDeleted()) {
+                        mUnits.remove(syncId);
+                    } else {
+                        mUnits.put(syncId, change.withVersion(unit.getVersion()));
+                    }
+                }
+            } else if (!change.isDeleted()) {
+                mUnits.put(syncId, change.withVersion(0));
+            }
+        }
+
+        private boolean isCurrent(UnitChange local, Long pushedVersion) {
+            return pushedVersion != null ? local.getVersion() == pushedVersion
+                    : local.getVersion() <= mPushWatermark;
+        }
+    }
+}
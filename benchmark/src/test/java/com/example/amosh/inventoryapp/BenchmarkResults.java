@@ -0,0 +1,101 @@
+package com.example.amosh.inventoryapp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Times operations of one benchmark class and writes the results as JSON to the directory given
+ * by the "benchmark.outputDir" system property, so the results of two commits can be diffed.
+ */
+final class BenchmarkResults {
+
+    /** Timed runs per measurement, the median and the fastest are reported */
+    private static final int RUNS = 5;
+
+    private final String mSuite;
+
+    private final List<String> mResults = new ArrayList<>();
+
+    /**
+     * One timed operation. {@link #run(int)} gets a different index on every call of a measurement,
+     * e.g. to touch a different row each time.
+     */
+    abstract static class Operation {
+
+        /** Called once before every timed run, not timed */
+        void setUp() {
+        }
+
+        abstract void run(int index);
+    }
+
+    BenchmarkResults(String suite) {
+        mSuite = suite;
+    }
+
+    /**
+     * Run the operation {@code iterations} times per run after one untimed warm-up run, and record
+     * the time per operation.
+     *
+     * @return the median time per operation, in nanoseconds
+     */
+    long measure(String name, int rows, int iterations, Operation operation) {
+        int index = 0;
+        operation.setUp();
+        for (int i = 0; i < iterations; i++) {
+            operation.run(index++);
+        }
+
+        long[] nanosPerOperation = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            operation.setUp();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                operation.run(index++);
+            }
+            nanosPerOperation[run] = (System.nanoTime() - start) / iterations;
+        }
+        Arrays.sort(nanosPerOperation);
+        long median = nanosPerOperation[RUNS / 2];
+
+        String result = "{\"name\": \"" + name + "\", \"rows\": " + rows
+                + ", \"iterations\": " + iterations
+                + ", \"median_ns_per_op\": " + median
+                + ", \"min_ns_per_op\": " + nanosPerOperation[0] + "}";
+        mResults.add(result);
+        System.out.println(mSuite + " " + result);
+        return median;
+    }
+
+    /**
+     * Write every result recorded so far to "&lt;suite&gt;.json" in the output directory, or
+     * nowhere if it isn't set.
+     */
+    void write() throws IOException {
+        String outputDir = System.getProperty("benchmark.outputDir");
+        if (outputDir == null) {
+            return;
+        }
+        File dir = new File(outputDir);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(new File(dir, mSuite + ".json")),
+                "UTF-8");
+        try {
+            writer.write("{\"suite\": \"" + mSuite + "\", \"results\": [\n");
+            for (int i = 0; i < mResults.size(); i++) {
+                writer.write("  " + mResults.get(i) + (i < mResults.size() - 1 ? ",\n" : "\n"));
+            }
+            writer.write("]}\n");
+        } finally {
+            writer.close();
+        }
+    }
+}
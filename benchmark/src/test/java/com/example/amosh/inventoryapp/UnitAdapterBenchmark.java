@@ -0,0 +1,64 @@
+package com.example.amosh.inventoryapp;
+
+import android.database.MatrixCursor;
+import android.support.v7.widget.RecyclerView;
+
+import com.example.amosh.inventoryapp.data.UnitContract;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+import com.example.amosh.inventoryapp.data.UnitProvider;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+
+/**
+ * Per-row cost of binding a unit to a list row with {@link UnitAdapter}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class UnitAdapterBenchmark {
+
+    private static final int ROWS = 1000;
+
+    /** View holders the rows are bound to in turn, about one screen of them */
+    private static final int HOLDERS = 12;
+
+    private static final BenchmarkResults sResults =
+            new BenchmarkResults(UnitAdapterBenchmark.class.getSimpleName());
+
+    @AfterClass
+    public static void writeResults() throws IOException {
+        sResults.write();
+    }
+
+    @Test
+    public void bindRow() {
+        Robolectric.buildContentProvider(UnitProvider.class).create(UnitContract.CONTENT_AUTHORITY);
+        InventoryActivity activity = Robolectric.buildActivity(InventoryActivity.class).create().get();
+        RecyclerView parent = (RecyclerView) activity.findViewById(R.id.list);
+
+        MatrixCursor cursor = new MatrixCursor(UnitEntry.PROJECTION, ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            cursor.addRow(new Object[]{(long) i + 1, "Unit " + i, i % 100, 100L + i, null, null});
+        }
+        final UnitAdapter adapter = new UnitAdapter(activity);
+        adapter.swapCursor(cursor);
+        final UnitAdapter.UnitViewHolder[] holders = new UnitAdapter.UnitViewHolder[HOLDERS];
+        for (int i = 0; i < HOLDERS; i++) {
+            holders[i] = adapter.onCreateViewHolder(parent, 0);
+        }
+
+        sResults.measure("adapter_bind_row", ROWS, ROWS, new BenchmarkResults.Operation() {
+            @Override
+            void run(int index) {
+                adapter.onBindViewHolder(holders[index % HOLDERS], index % ROWS);
+            }
+        });
+        cursor.close();
+    }
+}
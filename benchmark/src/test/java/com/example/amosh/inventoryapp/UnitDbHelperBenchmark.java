@@ -0,0 +1,115 @@
+package com.example.amosh.inventoryapp;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+import com.example.amosh.inventoryapp.data.UnitDbHelper;
+import com.example.amosh.inventoryapp.data.UnitRowReader;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * Cost of {@link UnitDbHelper#buyOne(long, int)} and of reading the whole table with
+ * {@link UnitDbHelper#readStock()} at growing table sizes.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(sdk = 28)
+public class UnitDbHelperBenchmark {
+
+    private static final String DATABASE_NAME = "benchmark.db";
+
+    private static final BenchmarkResults sResults =
+            new BenchmarkResults(UnitDbHelperBenchmark.class.getSimpleName());
+
+    private final int mRows;
+
+    private UnitDbHelper mDbHelper;
+
+    private final Random mRandom = new Random(42);
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0} rows")
+    public static Collection<Object[]> sizes() {
+        return Arrays.asList(new Object[][]{{1000}, {10000}, {100000}});
+    }
+
+    public UnitDbHelperBenchmark(int rows) {
+        mRows = rows;
+    }
+
+    @Before
+    public void setUp() {
+        mDbHelper = new UnitDbHelper(RuntimeEnvironment.application, DATABASE_NAME);
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < mRows; i++) {
+                ContentValues values = UnitProviderBenchmark.unit(i);
+                // Enough stock that no sale runs out during the benchmark
+                values.put(UnitEntry.COLUMN_UNIT_QUANTITY, 1000000);
+                db.insert(UnitEntry.TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        RuntimeEnvironment.application.deleteDatabase(DATABASE_NAME);
+    }
+
+    @AfterClass
+    public static void writeResults() throws IOException {
+        sResults.write();
+    }
+
+    @Test
+    public void buyOne() {
+        sResults.measure("helper_buy_one", mRows, 200, new BenchmarkResults.Operation() {
+            @Override
+            void run(int index) {
+                mDbHelper.buyOne(1 + mRandom.nextInt(mRows), 1);
+            }
+        });
+    }
+
+    @Test
+    public void readStock() {
+        // About a million rows read per timed run
+        int iterations = Math.max(1, 1000000 / mRows);
+        sResults.measure("helper_read_stock", mRows, iterations, new BenchmarkResults.Operation() {
+            @Override
+            void run(int index) {
+                Cursor cursor = mDbHelper.readStock();
+                try {
+                    UnitRowReader row = new UnitRowReader(cursor);
+                    long total = 0;
+                    while (cursor.moveToNext()) {
+                        total += row.getQuantity() * row.getPriceCents();
+                    }
+                    if (total < 0) {
+                        throw new AssertionError();
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+    }
+}
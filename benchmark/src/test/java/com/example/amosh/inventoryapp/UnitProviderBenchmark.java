@@ -0,0 +1,180 @@
+package com.example.amosh.inventoryapp;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.amosh.inventoryapp.data.UnitContract;
+import com.example.amosh.inventoryapp.data.UnitContract.UnitEntry;
+import com.example.amosh.inventoryapp.data.UnitProvider;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * Cost of single inserts, queries, updates and deletes through {@link UnitProvider} at growing
+ * table sizes.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(sdk = 28)
+public class UnitProviderBenchmark {
+
+    /** Operations per timed run */
+    private static final int OPERATIONS = 200;
+
+    /** Rows per page query, the same as the inventory list */
+    private static final int PAGE_SIZE = 50;
+
+    private static final BenchmarkResults sResults =
+            new BenchmarkResults(UnitProviderBenchmark.class.getSimpleName());
+
+    private final int mRows;
+
+    private ContentResolver mResolver;
+
+    private final Random mRandom = new Random(42);
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0} rows")
+    public static Collection<Object[]> sizes() {
+        return Arrays.asList(new Object[][]{{1000}, {10000}, {100000}});
+    }
+
+    public UnitProviderBenchmark(int rows) {
+        mRows = rows;
+    }
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(UnitProvider.class).create(UnitContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+
+        // Fill the table in chunks, so the ids are 1 to mRows
+        ContentValues[] chunk = new ContentValues[1000];
+        for (int start = 0; start < mRows; start += chunk.length) {
+            for (int i = 0; i < chunk.length; i++) {
+                chunk[i] = unit(start + i);
+            }
+            mResolver.bulkInsert(UnitEntry.CONTENT_URI, chunk);
+        }
+    }
+
+    @AfterClass
+    public static void writeResults() throws IOException {
+        sResults.write();
+    }
+
+    @Test
+    public void insert() {
+        sResults.measure("provider_insert", mRows, OPERATIONS, new BenchmarkResults.Operation() {
+            @Override
+            void run(int index) {
+                mResolver.insert(UnitEntry.CONTENT_URI, unit(mRows + index));
+            }
+        });
+    }
+
+    @Test
+    public void queryById() {
+        sResults.measure("provider_query_id", mRows, OPERATIONS, new BenchmarkResults.Operation() {
+            @Override
+            void run(int index) {
+                readAll(mResolver.query(ContentUris.withAppendedId(UnitEntry.CONTENT_URI, randomId()),
+                        UnitEntry.PROJECTION, null, null, null));
+            }
+        });
+    }
+
+    @Test
+    public void queryPage() {
+        sResults.measure("provider_query_page", mRows, OPERATIONS, new BenchmarkResults.Operation() {
+            @Override
+            void run(int index) {
+                Uri page = UnitEntry.CONTENT_URI.buildUpon()
+                        .appendQueryParameter(UnitContract.QUERY_PARAMETER_AFTER_ID,
+                                String.valueOf(randomId()))
+                        .appendQueryParameter(UnitContract.QUERY_PARAMETER_LIMIT,
+                                String.valueOf(PAGE_SIZE))
+                        .build();
+                readAll(mResolver.query(page, UnitEntry.PROJECTION, null, null, null));
+            }
+        });
+    }
+
+    @Test
+    public void querySortedPage() {
+        sResults.measure("provider_query_sorted_page", mRows, OPERATIONS,
+                new BenchmarkResults.Operation() {
+                    @Override
+                    void run(int index) {
+                        Uri page = UnitEntry.CONTENT_URI.buildUpon()
+                                .appendQueryParameter(UnitContract.QUERY_PARAMETER_SORT,
+                                        UnitContract.SORT_PRICE)
+                                .appendQueryParameter(UnitContract.QUERY_PARAMETER_LIMIT,
+                                        String.valueOf(PAGE_SIZE))
+                                .build();
+                        readAll(mResolver.query(page, UnitEntry.PROJECTION, null, null, null));
+                    }
+                });
+    }
+
+    @Test
+    public void update() {
+        sResults.measure("provider_update", mRows, OPERATIONS, new BenchmarkResults.Operation() {
+            @Override
+            void run(int index) {
+                ContentValues values = new ContentValues();
+                values.put(UnitEntry.COLUMN_UNIT_QUANTITY, index % 100);
+                mResolver.update(ContentUris.withAppendedId(UnitEntry.CONTENT_URI, randomId()),
+                        values, null, null);
+            }
+        });
+    }
+
+    @Test
+    public void delete() {
+        // Every call deletes a different unit that still exists, so stay well below the row count
+        int operations = Math.min(OPERATIONS, mRows / 10);
+        sResults.measure("provider_delete", mRows, operations, new BenchmarkResults.Operation() {
+            @Override
+            void run(int index) {
+                mResolver.delete(ContentUris.withAppendedId(UnitEntry.CONTENT_URI, index + 1),
+                        null, null);
+            }
+        });
+    }
+
+    private long randomId() {
+        return 1 + mRandom.nextInt(mRows);
+    }
+
+    private static void readAll(Cursor cursor) {
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    static ContentValues unit(int i) {
+        ContentValues values = new ContentValues();
+        values.put(UnitEntry.COLUMN_UNIT_NAME, "Unit " + i);
+        values.put(UnitEntry.COLUMN_UNIT_PRICE, 100 + i % 10000);
+        values.put(UnitEntry.COLUMN_UNIT_QUANTITY, i % 100);
+        return values;
+    }
+}